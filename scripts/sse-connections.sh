@@ -0,0 +1,40 @@
+#!/usr/bin/env bash
+# Cuántas conexiones SSE sostiene cada modo y cómo responde /slots mientras tanto.
+#
+#   servlet:   mvn spring-boot:run
+#   reactive:  mvn -Preactive spring-boot:run -Dspring-boot.run.profiles=reactive
+#
+#   scripts/sse-connections.sh [conexiones=2000] [espera_s=30]   (BASE=http://host:puerto, PRO=<professionalId>)
+#
+# Abre N suscripciones a /api/notifications/stream, espera (más que app.sse.heartbeat-ms) y cuenta
+# cuántas siguen vivas y cuántas recibieron al menos un heartbeat; después mide 20 GET de slots.
+set -euo pipefail
+
+BASE=${BASE:-http://localhost:8080}
+N=${1:-2000}
+WAIT=${2:-30}
+PRO=${PRO:-1}
+
+ulimit -n $((N + 512)) 2>/dev/null || echo "ulimit -n $((N + 512)) no permitido; el cliente puede quedarse corto" >&2
+out=$(mktemp -d)
+trap 'kill $(jobs -p) 2>/dev/null; rm -rf "$out"' EXIT
+
+# sin --max-time: lanzar miles de curl tarda segundos y los primeros vencerían antes de contar; el trap los corta
+for i in $(seq 1 "$N"); do
+  curl -sN "$BASE/api/notifications/stream?patientId=load-$i" > "$out/$i" 2>/dev/null &
+done
+sleep "$WAIT"
+
+alive=$(jobs -rp | wc -l)
+beating=$(grep -l '^:hb' "$out"/* 2>/dev/null | wc -l)
+
+from=$(date -u +%Y-%m-%dT00:00:00Z)
+to=$(date -u -d '+7 days' +%Y-%m-%dT00:00:00Z)
+times=$(for _ in $(seq 1 20); do
+  curl -s -o /dev/null -w '%{time_total}\n' "$BASE/api/professionals/$PRO/slots?from=$from&to=$to&slotMinutes=30"
+done | sort -n)
+
+echo "conexiones abiertas: $N"
+echo "vivas tras ${WAIT}s:  $alive"
+echo "con heartbeat:       $beating"
+echo "slots p50/max (s):   $(echo "$times" | sed -n 10p) / $(echo "$times" | tail -1)"
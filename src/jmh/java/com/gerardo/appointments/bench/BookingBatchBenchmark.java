@@ -0,0 +1,101 @@
+// src/jmh/java/com/gerardo/appointments/bench/BookingBatchBenchmark.java
+package com.gerardo.appointments.bench;
+
+import com.gerardo.appointments.Application;
+import com.gerardo.appointments.dto.BatchItemResult;
+import com.gerardo.appointments.dto.BookRequest;
+import com.gerardo.appointments.service.AppointmentService;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code n} bookings one by one ({@code book}: claim + insert per item) against one {@code bookAll} (a claims bulk
+ * and an insert bulk). Unlike the other benchmarks this one needs Mongo, since what batching saves is round trips:
+ * the in-memory mongo-java-server by default, a real one with {@code -Dbench.mongo-uri=mongodb://...}
+ * (pass it through {@code -Djmh.args="-jvmArgs -Dbench.mongo-uri=..."}). Every item is a free 30-minute slot of a
+ * fresh professional per call, so nothing conflicts. Every collection is emptied (indexes kept) before
+ * each call (Level.Invocation is fine at milliseconds per call): the in-memory server has no secondary indexes and
+ * its reads would grow with them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 8, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BookingBatchBenchmark {
+
+  @Param({"10", "100"})
+  int n;
+
+  MongoServer server;
+  ConfigurableApplicationContext context;
+  AppointmentService service;
+  MongoTemplate mongo;
+  String proId;
+  OffsetDateTime next;
+
+  @Setup
+  public void setup(){
+    var uri = System.getProperty("bench.mongo-uri");
+    if (uri == null) {
+      server = new MongoServer(new MemoryBackend());
+      uri = server.bindAndGetConnectionString() + "/appointments_bench";
+    }
+    // como argumentos: pisan application.yml (properties() sólo da defaults)
+    context = new SpringApplicationBuilder(Application.class).web(WebApplicationType.NONE)
+        .run("--spring.data.mongodb.uri=" + uri, "--app.booking.backfill-claims-on-startup=false",
+             "--logging.level.root=WARN", "--logging.level.de.bwaldvogel.mongo=ERROR");
+    service = context.getBean(AppointmentService.class);
+    mongo = context.getBean(MongoTemplate.class);
+  }
+
+  @Setup(Level.Invocation)
+  public void agenda(){
+    for (var c : mongo.getCollectionNames()) mongo.remove(new Query(), c);
+    proId = new ObjectId().toHexString();
+    next = OffsetDateTime.now(ZoneOffset.UTC).plusDays(30).withMinute(0).withSecond(0).withNano(0);
+  }
+
+  @TearDown
+  public void stop(){
+    context.close();
+    if (server != null) server.shutdownNow();
+  }
+
+  @Benchmark
+  public void single(Blackhole bh){
+    for (var r : requests()) bh.consume(service.book(r.getProfessionalId(), r.getPatientId(), r.getStartTs(), r.getEndTs()));
+  }
+
+  @Benchmark
+  public List<BatchItemResult> batch(){
+    return service.bookAll(requests());
+  }
+
+  private List<BookRequest> requests(){
+    var out = new ArrayList<BookRequest>(n);
+    for (int i = 0; i < n; i++) {
+      var r = new BookRequest();
+      r.setProfessionalId(proId); r.setPatientId("bench-" + i);
+      r.setStartTs(next); r.setEndTs(next.plusMinutes(30));
+      next = next.plusMinutes(30);
+      out.add(r);
+    }
+    return out;
+  }
+}
@@ -0,0 +1,195 @@
+// src/jmh/java/com/gerardo/appointments/bench/Fixtures.java
+package com.gerardo.appointments.bench;
+
+import com.gerardo.appointments.config.TimeConfig;
+import com.gerardo.appointments.domain.*;
+import com.gerardo.appointments.repo.AppointmentRepo;
+import com.gerardo.appointments.repo.AvailabilityBlockRepo;
+import com.gerardo.appointments.repo.ProfessionalRepo;
+import com.gerardo.appointments.service.AgendaIndex;
+import com.gerardo.appointments.service.AgendaVersions;
+import com.gerardo.appointments.service.AppointmentArchive;
+import com.gerardo.appointments.service.AvailabilityWindows;
+import com.gerardo.appointments.service.Capacities;
+import com.gerardo.appointments.service.NameLookup;
+import com.gerardo.appointments.service.OccupancyBitmaps;
+import com.gerardo.appointments.service.SlotCache;
+import com.gerardo.appointments.service.SlotClaims;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/** Synthetic agendas and in-memory repository stubs (no Mongo, no Spring context). */
+final class Fixtures {
+  static final String PRO = "pro-1";
+  static final Instant FROM = Instant.parse("2025-09-01T00:00:00Z");
+
+  private Fixtures() {}
+
+  /** One agenda: {@code blocksPerDay} OPEN windows of 4h per day, {@code apptsPerDay} 30-min appointments inside them. */
+  static final class Agenda {
+    final List<AvailabilityBlock> blocks = new ArrayList<>();
+    final List<Appointment> appts = new ArrayList<>();
+    final List<Patient> patients = new ArrayList<>();
+
+    Agenda(int days, int blocksPerDay, int apptsPerDay, long seed){
+      var rnd = new Random(seed);
+      for (int d = 0; d < days; d++) {
+        var day = FROM.plus(Duration.ofDays(d));
+        for (int b = 0; b < blocksPerDay; b++) {
+          var blk = new AvailabilityBlock();
+          blk.setId("b-" + d + "-" + b);
+          blk.setProfessionalId(PRO);
+          blk.setStartTs(day.plus(Duration.ofHours(8 + 4L * b)));
+          blk.setEndTs(blk.getStartTs().plus(Duration.ofHours(4)));
+          blk.setLocationType(b % 2 == 0 ? LocationType.HOSPITAL : LocationType.PRIVATE);
+          blocks.add(blk);
+        }
+        int halfHours = blocksPerDay * 8;
+        for (int a = 0; a < apptsPerDay && halfHours > 0; a++) {
+          var ap = new Appointment();
+          ap.setId("a-" + d + "-" + a);
+          ap.setProfessionalId(PRO);
+          ap.setPatientId("pat-" + rnd.nextInt(500));
+          ap.setStartTs(day.plus(Duration.ofHours(8)).plus(Duration.ofMinutes(30L * rnd.nextInt(halfHours))));
+          ap.setEndTs(ap.getStartTs().plus(Duration.ofMinutes(30)));
+          appts.add(ap);
+        }
+      }
+      for (int i = 0; i < 500; i++) {
+        var p = new Patient();
+        p.setId("pat-" + i);
+        p.setFullName("Patient " + i);
+        patients.add(p);
+      }
+    }
+
+    AppointmentRepo appointmentRepo(){
+      return stub(AppointmentRepo.class, Map.of(
+          "findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore", args -> overlapping(appts, args)));
+    }
+
+    AvailabilityBlockRepo blockRepo(){
+      return stub(AvailabilityBlockRepo.class, Map.of(
+          "findByProfessionalId", args -> blocks,
+          "findByProfessionalIdAndEndTsAfterAndStartTsBefore", args -> overlappingBlocks(blocks, args)));
+    }
+
+    ProfessionalRepo professionalRepo(){
+      var pro = new Professional();
+      pro.setId(PRO);
+      pro.setFullName("Dr. Bench");
+      return stub(ProfessionalRepo.class, Map.of(
+          "findById", args -> Optional.of(pro),
+          "findAllById", args -> List.of(pro)));
+    }
+
+    AgendaIndex index(){
+      // la agenda sintética arranca en FROM, ya pasada: entera en memoria
+      return new AgendaIndex(appointmentRepo(), blockRepo(), professionalRepo(), 1000, Duration.between(FROM, Instant.now()).plusDays(1));
+    }
+
+    AvailabilityWindows windows(AgendaIndex index){
+      var tc = new TimeConfig();
+      tc.availabilityZone = "America/Argentina/Buenos_Aires";
+      return new AvailabilityWindows(index, tc);
+    }
+
+    /** Every lookup answered with all the fixture people. */
+    NameLookup names(){
+      return new NameLookup(mongo(), 100_000, Duration.ofHours(1));
+    }
+
+    /** Every occupancy read comes back empty (capacity 1 everywhere). */
+    SlotClaims claims(){
+      return new SlotClaims(mongo(), appointmentRepo(), slotCache(), null, 5, false, 1000, Duration.ofMinutes(5), Duration.ofDays(7), Duration.ofDays(366));
+    }
+
+    /** Patient reads are not benchmarked; only here to build {@code SlotsService}. */
+    AppointmentArchive archive(){
+      return new AppointmentArchive(mongo(), null, null, null, null, Duration.ofDays(90), Duration.ofDays(7), 1000, 1);
+    }
+
+    Capacities capacities(AgendaIndex index, AvailabilityWindows windows){
+      return new Capacities(index, windows, 3);
+    }
+
+    /** Off: the benchmarks measure the computation, not the materialized days. */
+    SlotCache slotCache(){
+      return new SlotCache(false, 14, 1, Duration.ZERO, 1);
+    }
+
+    /** Bitmaps over the same index; nothing stored to load, the persisted copy is dropped (inline, no writer thread). */
+    OccupancyBitmaps bitmaps(AgendaIndex index, AvailabilityWindows windows, int granuleMinutes){
+      var mongo = mongo();
+      ExecutorService inline = stub(ExecutorService.class, Map.of("execute", args -> { ((Runnable) args[0]).run(); return null; }));
+      return new OccupancyBitmaps(index, windows, mongo, professionalRepo(), new AgendaVersions(mongo), inline, granuleMinutes, 100_000, 0, 0);
+    }
+
+    FixtureMongo mongo(){
+      return new FixtureMongo(Map.of(Patient.class, patients, Professional.class, List.of(professionalRepo().findById(PRO).orElseThrow())));
+    }
+  }
+
+  /**
+   * MongoTemplate over the fixture lists for the few calls the benchmarked paths make: {@code find} by type
+   * (anything not listed comes back empty), {@code findById} (nothing), bulks (dropped). Any other call reaches
+   * the database factory stub and fails.
+   */
+  static final class FixtureMongo extends MongoTemplate {
+    private final Map<Class<?>, List<?>> rows;
+
+    FixtureMongo(Map<Class<?>, List<?>> rows){
+      super(stub(MongoDatabaseFactory.class, Map.of("getExceptionTranslator", args -> new MongoExceptionTranslator())));
+      this.rows = rows;
+    }
+
+    @Override @SuppressWarnings("unchecked")
+    public <T> List<T> find(Query query, Class<T> type){ return (List<T>) rows.getOrDefault(type, List.of()); }
+
+    @Override
+    public <T> T findById(Object id, Class<T> type){ return null; }
+
+    @Override
+    public BulkOperations bulkOps(BulkOperations.BulkMode mode, Class<?> type){
+      return (BulkOperations) Proxy.newProxyInstance(BulkOperations.class.getClassLoader(), new Class<?>[]{BulkOperations.class},
+          (proxy, m, args) -> m.getReturnType() == BulkOperations.class ? proxy : null);
+    }
+  }
+
+  private static List<Appointment> overlapping(List<Appointment> xs, Object[] args){
+    var f = (Instant) args[2]; var t = (Instant) args[3];
+    return xs.stream().filter(a -> a.getEndTs().isAfter(f) && a.getStartTs().isBefore(t)).toList();
+  }
+
+  private static List<AvailabilityBlock> overlappingBlocks(List<AvailabilityBlock> xs, Object[] args){
+    var f = (Instant) args[1]; var t = (Instant) args[2];
+    return xs.stream().filter(b -> b.getEndTs().isAfter(f) && b.getStartTs().isBefore(t)).toList();
+  }
+
+  /** Repository proxy answering only the named methods; anything else fails loudly. */
+  @SuppressWarnings("unchecked")
+  static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers){
+    return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, m, args) -> {
+      if (m.getDeclaringClass() == Object.class) {
+        return switch (m.getName()) {
+          case "hashCode" -> System.identityHashCode(proxy);
+          case "equals" -> proxy == args[0];
+          default -> type.getSimpleName() + "Stub";
+        };
+      }
+      var a = answers.get(m.getName());
+      if (a == null) throw new UnsupportedOperationException(type.getSimpleName() + "." + m.getName());
+      return a.apply(args);
+    });
+  }
+}
@@ -0,0 +1,46 @@
+// src/jmh/java/com/gerardo/appointments/bench/OverlapCheckBenchmark.java
+package com.gerardo.appointments.bench;
+
+import com.gerardo.appointments.service.AgendaIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/** The in-memory overlap check {@code AppointmentService.book} runs before claiming the slot. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverlapCheckBenchmark {
+
+  @Param({"30", "365"})
+  int agendaDays;
+
+  @Param({"8", "24"})
+  int apptsPerDay;
+
+  AgendaIndex index;
+  Instant[] probes;
+  int i;
+
+  @Setup
+  public void setup(){
+    index = new Fixtures.Agenda(agendaDays, 3, apptsPerDay, 7).index();
+    probes = new Instant[1024];
+    var rnd = new java.util.Random(1);
+    for (int k = 0; k < probes.length; k++) {
+      probes[k] = Fixtures.FROM.plus(Duration.ofDays(rnd.nextInt(agendaDays))).plus(Duration.ofMinutes(480 + 5L * rnd.nextInt(144)));
+    }
+    index.hasOverlap(Fixtures.PRO, probes[0], probes[0].plusSeconds(1800));
+  }
+
+  @Benchmark
+  public boolean hasOverlap(){
+    var s = probes[i++ & (probes.length - 1)];
+    return index.hasOverlap(Fixtures.PRO, s, s.plusSeconds(1800));
+  }
+}
@@ -0,0 +1,70 @@
+// src/jmh/java/com/gerardo/appointments/bench/SlotComputationBenchmark.java
+package com.gerardo.appointments.bench;
+
+import com.gerardo.appointments.dto.SlotDTO;
+import com.gerardo.appointments.dto.SlotViewDTO;
+import com.gerardo.appointments.service.AvailabilityService;
+import com.gerardo.appointments.service.SlotsService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** computeSlots / professionalSlots over synthetic agendas; repos are in-memory stubs, agenda index and bitmaps warm. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlotComputationBenchmark {
+
+  @Param({"7", "31", "92"})
+  int rangeDays;
+
+  @Param({"1", "3"})
+  int blocksPerDay;
+
+  @Param({"4", "16"})
+  int apptsPerDay;
+
+  @Param({"5", "30"})
+  int slotMinutes;
+
+  /** bitmap: 5-min grid; interval: a 1-day grid no slot fits, so every read takes the SlotEngine sweep. */
+  @Param({"bitmap", "interval"})
+  String engine;
+
+  AvailabilityService availability;
+  SlotsService slots;
+  OffsetDateTime from, to;
+
+  @Setup
+  public void setup(){
+    var agenda = new Fixtures.Agenda(rangeDays, blocksPerDay, apptsPerDay, 42);
+    var index = agenda.index();
+    var windows = agenda.windows(index);
+    var bitmaps = agenda.bitmaps(index, windows, "bitmap".equals(engine) ? 5 : 1440);
+    var claims = agenda.claims();
+    var capacities = agenda.capacities(index, windows);
+    availability = new AvailabilityService(null, index, windows, null, null, bitmaps, claims, capacities, agenda.slotCache(), null);
+    slots = new SlotsService(agenda.archive(), agenda.names(), index, windows,
+        bitmaps, claims, capacities, agenda.slotCache());
+    from = OffsetDateTime.ofInstant(Fixtures.FROM, ZoneOffset.UTC);
+    to = from.plusDays(rangeDays);
+    availability.computeSlots(Fixtures.PRO, from, to, Duration.ofMinutes(slotMinutes)); // carga el índice y los bitmaps
+  }
+
+  @Benchmark
+  public List<SlotDTO> computeSlots(){
+    return availability.computeSlots(Fixtures.PRO, from, to, Duration.ofMinutes(slotMinutes));
+  }
+
+  @Benchmark
+  public List<SlotViewDTO> professionalSlots(){
+    return slots.professionalSlots(Fixtures.PRO, from, to, slotMinutes, null);
+  }
+}
@@ -0,0 +1,87 @@
+// src/jmh/java/com/gerardo/appointments/bench/SlotViewSerializationBenchmark.java
+package com.gerardo.appointments.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.gerardo.appointments.dto.SlotColumnsDTO;
+import com.gerardo.appointments.dto.SlotViewDTO;
+import com.gerardo.appointments.service.SlotsService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a slot view response: the object-per-slot JSON against the columnar view in JSON, CBOR and Smile,
+ * with the same Jackson setup Spring Boot applies. Response sizes are printed once per setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlotViewSerializationBenchmark {
+
+  @Param({"7", "31"})
+  int rangeDays;
+
+  @Param({"10", "30"})
+  int slotMinutes;
+
+  ObjectMapper om, cbor, smile;
+  List<SlotViewDTO> view;
+  SlotColumnsDTO columns;
+
+  @Setup
+  public void setup() throws Exception {
+    om = new ObjectMapper().registerModule(new JavaTimeModule()).disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    cbor = CBORMapper.builder().addModule(new JavaTimeModule()).build();
+    smile = SmileMapper.builder().addModule(new JavaTimeModule()).build();
+    var agenda = new Fixtures.Agenda(rangeDays, 2, 8, 3);
+    var index = agenda.index();
+    var windows = agenda.windows(index);
+    var slots = new SlotsService(agenda.archive(), agenda.names(),
+        index, windows, agenda.bitmaps(index, windows, 5), agenda.claims(), agenda.capacities(index, windows),
+        agenda.slotCache());
+    var from = OffsetDateTime.ofInstant(Fixtures.FROM, ZoneOffset.UTC);
+    view = slots.professionalSlots(Fixtures.PRO, from, from.plusDays(rangeDays), slotMinutes, null);
+    columns = columns();
+    System.out.printf("bytes (%d slots): json=%d columnar-json=%d columnar-cbor=%d columnar-smile=%d%n", view.size(),
+        om.writeValueAsBytes(view).length, om.writeValueAsBytes(columns).length,
+        cbor.writeValueAsBytes(columns).length, smile.writeValueAsBytes(columns).length);
+  }
+
+  @Benchmark
+  public byte[] json() throws Exception {
+    return om.writeValueAsBytes(view);
+  }
+
+  /** What the columnar endpoints add before serializing: one pass over the generated slots. */
+  @Benchmark
+  public SlotColumnsDTO columns(){
+    var b = new SlotColumnsDTO.Builder(Fixtures.PRO, slotMinutes, Fixtures.FROM);
+    view.forEach(b);
+    return b.build();
+  }
+
+  @Benchmark
+  public byte[] columnarJson() throws Exception {
+    return om.writeValueAsBytes(columns);
+  }
+
+  @Benchmark
+  public byte[] columnarCbor() throws Exception {
+    return cbor.writeValueAsBytes(columns);
+  }
+
+  @Benchmark
+  public byte[] columnarSmile() throws Exception {
+    return smile.writeValueAsBytes(columns);
+  }
+}
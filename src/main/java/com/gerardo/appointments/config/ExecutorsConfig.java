@@ -0,0 +1,56 @@
+package com.gerardo.appointments.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ExecutorsConfig {
+
+  /** Bounded pool for per-professional fan-out; when saturated the caller runs the task itself. */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService slotSearchExecutor(@Value("${app.slot-search.threads:8}") int threads,
+                                            @Value("${app.slot-search.queue:256}") int queue){
+    return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queue), named("slot-search-"), new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /** Parallel delivery of a claimed outbox batch. */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService outboxExecutor(@Value("${app.outbox.threads:4}") int threads){
+    return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), named("outbox-"));
+  }
+
+  /** Drains SSE subscriber queues; each subscriber has at most one drain task queued at a time. */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService sseExecutor(@Value("${app.sse.threads:4}") int threads){
+    return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), named("sse-"));
+  }
+
+  /** One thread for the slot cache warmer, so a long refill never holds Spring's scheduler threads. */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService slotCacheWarmExecutor(){
+    return Executors.newSingleThreadExecutor(named("slot-cache-warm-"));
+  }
+
+  /** Persists bitmaps built on the read path; when the queue is full the copy is dropped (it is only a cache). */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService bitmapsExecutor(@Value("${app.bitmaps.write-queue:64}") int queue){
+    return new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queue), named("bitmaps-"), new ThreadPoolExecutor.DiscardPolicy());
+  }
+
+  static ThreadFactory named(String prefix){
+    var n = new AtomicInteger();
+    return r -> {
+      var t = new Thread(r, prefix + n.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+}
@@ -0,0 +1,97 @@
+package com.gerardo.appointments.config;
+
+import com.gerardo.appointments.service.AgendaIndex;
+import com.gerardo.appointments.service.AppointmentArchive;
+import com.gerardo.appointments.service.NameLookup;
+import com.gerardo.appointments.service.NotificationHub;
+import com.gerardo.appointments.service.OccupancyBitmaps;
+import com.gerardo.appointments.service.OutboxPump;
+import com.gerardo.appointments.service.SlotCache;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+  /** Enables {@code @Timed} on service methods. */
+  @Bean
+  public TimedAspect timedAspect(MeterRegistry registry){
+    return new TimedAspect(registry);
+  }
+
+  @Bean
+  public MeterBinder sseMetrics(NotificationHub hub){
+    return r -> {
+      Gauge.builder("sse.subscribers", hub, h -> h.stats().subscribers()).description("active SSE connections").register(r);
+      FunctionCounter.builder("sse.events.dropped", hub, h -> h.stats().dropped()).register(r);
+      FunctionCounter.builder("sse.disconnects", hub, h -> h.stats().disconnected()).register(r);
+      FunctionCounter.builder("sse.slow.writes", hub, h -> h.stats().slowWrites()).description("disconnects by write timeout").register(r);
+    };
+  }
+
+  @Bean
+  public MeterBinder outboxMetrics(OutboxPump pump){
+    return r -> {
+      Gauge.builder("outbox.backlog", pump, OutboxPump::backlog).description("unprocessed outbox events").register(r);
+      Gauge.builder("outbox.oldest.age", pump, p -> p.lag().toMillis() / 1000.0).baseUnit("seconds")
+           .description("age of the oldest unprocessed outbox event").register(r);
+      FunctionCounter.builder("outbox.dispatched", pump, OutboxPump::dispatched).register(r);
+      FunctionCounter.builder("outbox.failed", pump, OutboxPump::failed).register(r);
+      FunctionCounter.builder("outbox.dead.lettered", pump, OutboxPump::deadLettered).register(r);
+      FunctionCounter.builder("outbox.lease.lost", pump, OutboxPump::leaseLost).description("closing updates that found the lease taken").register(r);
+      Gauge.builder("outbox.dead", pump, OutboxPump::dead).description("dead-lettered outbox events awaiting a retry").register(r);
+    };
+  }
+
+  @Bean
+  public MeterBinder archiveMetrics(AppointmentArchive archive){
+    return r -> FunctionCounter.builder("appointments.archived", archive, AppointmentArchive::moved)
+                               .description("appointments moved to appointments_archive").register(r);
+  }
+
+  @Bean
+  public MeterBinder agendaIndexMetrics(AgendaIndex index){
+    return r -> {
+      Gauge.builder("agenda.index.size", index, i -> i.stats().size()).register(r);
+      FunctionCounter.builder("agenda.index.requests", index, i -> i.stats().hits()).tag("result", "hit").register(r);
+      FunctionCounter.builder("agenda.index.requests", index, i -> i.stats().misses()).tag("result", "miss").register(r);
+      FunctionCounter.builder("agenda.index.requests", index, i -> i.stats().bypasses()).tag("result", "bypass")
+                     .description("scan reads served from Mongo without loading the agenda").register(r);
+      FunctionCounter.builder("agenda.index.evictions", index, i -> i.stats().evictions()).register(r);
+    };
+  }
+
+  @Bean
+  public MeterBinder bitmapMetrics(OccupancyBitmaps bitmaps){
+    return r -> {
+      Gauge.builder("agenda.bitmaps.days", bitmaps, b -> b.stats().size()).description("professional-days cached in memory").register(r);
+      FunctionCounter.builder("agenda.bitmaps.builds", bitmaps, b -> b.stats().builds()).register(r);
+      FunctionCounter.builder("agenda.bitmaps.fallbacks", bitmaps, b -> b.stats().fallbacks())
+                     .description("slot reads answered by interval scan instead").register(r);
+    };
+  }
+
+  @Bean
+  public MeterBinder slotCacheMetrics(SlotCache cache){
+    return r -> {
+      Gauge.builder("slots.cache.days", cache, c -> c.stats().size()).description("professional-days of slots materialized").register(r);
+      FunctionCounter.builder("slots.cache.requests", cache, c -> c.stats().hits()).tag("result", "hit").register(r);
+      FunctionCounter.builder("slots.cache.requests", cache, c -> c.stats().misses()).tag("result", "miss").register(r);
+      Gauge.builder("slots.cache.warmup.last", cache, c -> c.stats().lastWarmupMs() / 1000.0).baseUnit("seconds")
+           .description("duration of the last warm-up run").register(r);
+    };
+  }
+
+  @Bean
+  public MeterBinder nameLookupMetrics(NameLookup names){
+    return r -> {
+      FunctionCounter.builder("names.lookups", names, n -> n.stats().hits()).tag("result", "hit").register(r);
+      FunctionCounter.builder("names.lookups", names, n -> n.stats().misses()).tag("result", "miss").register(r);
+    };
+  }
+}
@@ -0,0 +1,36 @@
+// src/main/java/com/gerardo/appointments/domain/AgendaBitmap.java
+package com.gerardo.appointments.domain;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Occupancy of one professional for one UTC day in fixed granules ({@code _id = professionalId:yyyy-MM-dd}).
+ * Bit {@code g} of {@code open[location]} is set when the granule is fully inside an OPEN window of that
+ * location; bit {@code g} of {@code booked} when any SCHEDULED appointment touches it.
+ * Stamped with the professional's agenda version it was built under; a stored copy is only used while it matches.
+ */
+@Getter @Setter
+@Document("agenda_bitmaps")
+@CompoundIndex(name = "pro_day", def = "{'professionalId': 1, 'day': 1}")
+public class AgendaBitmap {
+  @Id private String id;
+  private String professionalId;
+  private String day;                         // ISO local date, UTC
+  private int granuleMinutes;
+  private Map<LocationType, long[]> open;
+  private long[] booked;
+  private Set<LocationType> carried;          // ubicaciones con una ventana que viene del día anterior
+  private boolean exact;                      // false: bordes fuera de la grilla o ventanas superpuestas -> usar intervalos
+  private Instant builtAt;
+  private long agendaVersion;                 // AgendaVersions al construirlo: si ya no coincide, se reconstruye
+
+  public static String key(String professionalId, String day){ return professionalId + ":" + day; }
+}
@@ -0,0 +1,47 @@
+// src/main/java/com/gerardo/appointments/domain/AgendaChange.java
+package com.gerardo.appointments.domain;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One entry of the agenda change log. {@code _id} is a global sequence number handed out after the
+ * appointment / block write, so the feeds read {@code _id > since} by range over the per-owner indexes.
+ * Carries the entity's state after the change: clients apply entries as upserts (repeats are harmless).
+ * An entry with no kind is a filler for a number whose writer never showed up (see {@code ChangeLog}).
+ */
+@Getter @Setter @NoArgsConstructor
+@Document("agenda_changes")
+@CompoundIndexes({
+  @CompoundIndex(name = "pro_seq", def = "{ 'professionalId': 1, '_id': 1 }"),
+  @CompoundIndex(name = "patient_seq", def = "{ 'patientId': 1, '_id': 1 }", partialFilter = "{ 'patientId': { '$exists': true } }")
+})
+public class AgendaChange {
+  public enum Kind { APPOINTMENT, BLOCK, PROFESSIONAL }
+  public enum Op { BOOKED, CANCELLED, CREATED, RESIZED, UPDATED, REMOVED }
+
+  @Id private long seq;
+  @Indexed(name = "at_ttl", expireAfter = "30d")   // TTL: un token más viejo que esto recibe 410 y resincroniza
+  private Instant at;
+  private Kind kind;
+  private Op op;
+  private String entityId;
+  private String professionalId;
+  private String patientId;          // sólo citas
+  private Instant startTs;           // null en un REMOVED del que sólo se conoce el id
+  private Instant endTs;
+  private Boolean open;              // sólo bloques
+  private LocationType locationType; // sólo bloques
+  private List<AvailabilitySlot> availability; // sólo profesional: reglas semanales
+  private Map<LocationType, Integer> capacity; // sólo profesional
+}
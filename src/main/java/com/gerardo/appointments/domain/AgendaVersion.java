@@ -0,0 +1,15 @@
+// src/main/java/com/gerardo/appointments/domain/AgendaVersion.java
+package com.gerardo.appointments.domain;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/** Monotonic change counter of a professional's agenda ({@code _id} = professionalId); drives slot ETags. */
+@Getter @Setter
+@Document("agenda_versions")
+public class AgendaVersion {
+  @Id private String id;
+  private long version;
+}
@@ -11,8 +11,11 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.Instant;
 
 @Document("appointments")
+// igualdades primero, después el rango (startTs < to) y endTs para filtrar desde el índice
 @CompoundIndexes({
-  @CompoundIndex(name="pro_start_end_status", def="{ 'professionalId':1, 'startTs':1, 'endTs':1, 'status':1 }")
+  @CompoundIndex(name="pro_status_start_end", def="{ 'professionalId':1, 'status':1, 'startTs':1, 'endTs':1 }"),
+  @CompoundIndex(name="patient_status_start_end", def="{ 'patientId':1, 'status':1, 'startTs':1, 'endTs':1 }"),
+  @CompoundIndex(name="status_end", def="{ 'status':1, 'endTs':1 }")
 })
 public class Appointment {
   @Setter
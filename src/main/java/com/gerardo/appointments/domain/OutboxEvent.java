@@ -2,18 +2,39 @@
 package com.gerardo.appointments.domain;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
 
 @Document("outbox_events")
+@CompoundIndexes({
+  @CompoundIndex(name="recipient_id", def="{ 'recipientId':1, '_id':1 }"),
+  // sólo los pendientes (pending: true; procesados y dead letters lo pierden): sirve el claim entero, tipo + vencimiento.
+  // Un filtro parcial { processedAt: null } no lo acepta Mongo ($eq null); tampoco { $exists: false }
+  @CompoundIndex(name="pending_type_due", def="{ 'type':1, 'dueAt':1 }", partialFilter="{ 'pending': true }"),
+  @CompoundIndex(name="claimed_by", def="{ 'claimedBy':1 }", partialFilter="{ 'claimedBy': { '$exists': true } }"),
+  // dead letters: pocos, se listan y se reintentan desde admin
+  @CompoundIndex(name="dead", def="{ 'deadAt':1 }", partialFilter="{ 'deadAt': { '$exists': true } }")
+})
 public class OutboxEvent {
   @Id private String id;
   private String type;
   private Long aggregateId;
+  private String recipientId;      // paciente destinatario (replay SSE por Last-Event-ID)
   private String payloadJson;
   private Instant createdAt = Instant.now();
+  @Indexed(name = "processed_ttl", expireAfter = "7d")   // TTL: lo ya entregado se borra a los 7 días
   private Instant processedAt;
+  private boolean pending = true;  // por despachar; pasa a false al procesarse o al pasar a dead letter
+  // dispatcher (OutboxPump): cuándo se puede tomar = alta, fin del lease mientras está tomado, o fin del backoff
+  private Instant dueAt = createdAt;
+  private String claimedBy;
+  private int attempts;
+  private String lastError;
+  private Instant deadAt;          // agotó app.outbox.max-attempts: fuera de los pendientes, sin TTL hasta que se reintente
 
   public String getId() { return id; }
   public void setId(String id) { this.id = id; }
@@ -21,10 +42,24 @@ public class OutboxEvent {
   public void setType(String type) { this.type = type; }
   public Long getAggregateId() { return aggregateId; }
   public void setAggregateId(Long aggregateId) { this.aggregateId = aggregateId; }
+  public String getRecipientId() { return recipientId; }
+  public void setRecipientId(String recipientId) { this.recipientId = recipientId; }
   public String getPayloadJson() { return payloadJson; }
   public void setPayloadJson(String payloadJson) { this.payloadJson = payloadJson; }
   public Instant getCreatedAt() { return createdAt; }
   public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
   public Instant getProcessedAt() { return processedAt; }
   public void setProcessedAt(Instant processedAt) { this.processedAt = processedAt; }
+  public String getClaimedBy() { return claimedBy; }
+  public void setClaimedBy(String claimedBy) { this.claimedBy = claimedBy; }
+  public int getAttempts() { return attempts; }
+  public void setAttempts(int attempts) { this.attempts = attempts; }
+  public boolean isPending() { return pending; }
+  public void setPending(boolean pending) { this.pending = pending; }
+  public Instant getDueAt() { return dueAt; }
+  public void setDueAt(Instant dueAt) { this.dueAt = dueAt; }
+  public String getLastError() { return lastError; }
+  public void setLastError(String lastError) { this.lastError = lastError; }
+  public Instant getDeadAt() { return deadAt; }
+  public void setDeadAt(Instant deadAt) { this.deadAt = deadAt; }
 }
@@ -1,13 +1,16 @@
 package com.gerardo.appointments.domain;
 
 import lombok.*;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.List;
+import java.util.Map;
 
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 @Document("professionals")
 public class Professional extends Person {
-  private String specialty;
+  @Indexed(name = "specialty") private String specialty;
   private List<AvailabilitySlot> availability; // weekly recurring
+  private Map<LocationType, Integer> capacity;  // turnos simultáneos por sede; sin valor = 1, tope app.overbook-limit
 }
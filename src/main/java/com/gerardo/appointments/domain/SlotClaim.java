@@ -0,0 +1,36 @@
+// src/main/java/com/gerardo/appointments/domain/SlotClaim.java
+package com.gerardo.appointments.domain;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Seats taken in one granule of a professional's agenda. The {@code _id} is {@code professionalId:granule};
+ * {@code count} only moves through conditional {@code $inc} ({@code count < capacity}), so with capacity 1
+ * the primary-key unique index is still what makes two overlapping bookings impossible.
+ * {@code updatedAt} (server time of the last seat taken) drives the sweep of orphaned seats.
+ */
+@Getter @Setter @NoArgsConstructor
+@Document("slot_claims")
+@CompoundIndexes({
+  @CompoundIndex(name = "pro_granule", def = "{ 'professionalId': 1, 'granule': 1 }"),
+  @CompoundIndex(name = "updated", def = "{ 'updatedAt': 1 }")
+})
+public class SlotClaim {
+  @Id private String id;
+  private String professionalId;
+  private long granule;              // epochMinute / granuleMinutes
+  private int count;                 // == appointmentIds.size()
+  private Set<String> appointmentIds;
+  private Instant updatedAt;
+
+  public static String key(String professionalId, long granule){ return professionalId + ":" + granule; }
+}
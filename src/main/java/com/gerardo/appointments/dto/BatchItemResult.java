@@ -0,0 +1,13 @@
+// src/main/java/com/gerardo/appointments/dto/BatchItemResult.java
+package com.gerardo.appointments.dto;
+
+/** Outcome of one item of a batch request; {@code index} is its position in the request body. */
+public record BatchItemResult(int index, String status, String id, String message) {
+  public static final String CREATED = "CREATED";
+  public static final String CONFLICT = "CONFLICT";
+  public static final String INVALID = "INVALID";
+
+  public static BatchItemResult created(int index, String id){ return new BatchItemResult(index, CREATED, id, null); }
+  public static BatchItemResult conflict(int index, String message){ return new BatchItemResult(index, CONFLICT, null, message); }
+  public static BatchItemResult invalid(int index, String message){ return new BatchItemResult(index, INVALID, null, message); }
+}
@@ -0,0 +1,9 @@
+// src/main/java/com/gerardo/appointments/dto/ChangePage.java
+package com.gerardo.appointments.dto;
+
+import com.gerardo.appointments.domain.AgendaChange;
+
+import java.util.List;
+
+/** Changes after a sync token, oldest first; {@code token} is the {@code since} of the next call, {@code more} = call again now. */
+public record ChangePage(List<AgendaChange> changes, String token, boolean more) {}
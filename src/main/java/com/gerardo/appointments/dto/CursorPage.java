@@ -0,0 +1,7 @@
+// src/main/java/com/gerardo/appointments/dto/CursorPage.java
+package com.gerardo.appointments.dto;
+
+import java.util.List;
+
+/** One page of a keyset listing; {@code next} is the {@code after} of the following page (null on the last one). */
+public record CursorPage<T>(List<T> items, String next) {}
@@ -0,0 +1,16 @@
+// src/main/java/com/gerardo/appointments/dto/MonthSummaryDTO.java
+package com.gerardo.appointments.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/** Month view of a professional's agenda: one row per local day of {@code zone}, no slots listed. */
+public record MonthSummaryDTO(String professionalId, String month, String zone, int slotMinutes, List<Day> days) {
+
+  /**
+   * {@code slots} = slots the day's view would list, {@code free} = with a seat left, {@code booked} = with at least one
+   * booking; {@code bookedMinutes} counts seats (two overbooked appointments = twice the minutes);
+   * {@code utilization} = booked / offered seat-minutes (0 when nothing is open).
+   */
+  public record Day(LocalDate date, int slots, int free, int booked, long openMinutes, long bookedMinutes, double utilization) {}
+}
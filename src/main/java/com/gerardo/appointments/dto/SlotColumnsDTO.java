@@ -0,0 +1,70 @@
+// src/main/java/com/gerardo/appointments/dto/SlotColumnsDTO.java
+package com.gerardo.appointments.dto;
+
+import com.gerardo.appointments.domain.LocationType;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Columnar form of a professional's slot view: what every {@link SlotViewDTO} repeats goes once in the header,
+ * slot {@code i} is column[i]. Times are seconds from {@code baseEpochSec}; {@code location} indexes
+ * {@code locations}; {@code status} is 0 = AVAILABLE, 1 = BOOKED. Bookings are listed apart with their slot index.
+ */
+public record SlotColumnsDTO(String professionalId, String professionalName, int slotMinutes, long baseEpochSec,
+                             List<LocationType> locations, int[] start, int[] end, int[] location, int[] status,
+                             int[] overlap, int[] capacity, int[] remaining, List<Booking> bookings) {
+
+  public record Booking(int slot, String appointmentId, String patientId, String patientName) {}
+
+  /** Collects slots as they are generated (it is a {@code SlotsService} sink). */
+  public static final class Builder implements Consumer<SlotViewDTO> {
+    private final String professionalId;
+    private final int slotMinutes;
+    private final long base;
+    private String professionalName;
+    private final List<LocationType> locations = new ArrayList<>(2);
+    private final List<Booking> bookings = new ArrayList<>();
+    private int[] start = new int[64], end = new int[64], location = new int[64], status = new int[64],
+                  overlap = new int[64], capacity = new int[64], remaining = new int[64];
+    private int n;
+
+    public Builder(String professionalId, int slotMinutes, Instant base){
+      this.professionalId = professionalId; this.slotMinutes = slotMinutes; this.base = base.getEpochSecond();
+    }
+
+    @Override public void accept(SlotViewDTO v){
+      if (n == start.length) grow();
+      if (professionalName == null) professionalName = v.getProfessionalName();
+      int lt = locations.indexOf(v.getLocationType());
+      if (lt < 0) { lt = locations.size(); locations.add(v.getLocationType()); }
+      start[n] = (int) (v.getStartTs().toEpochSecond() - base);
+      end[n] = (int) (v.getEndTs().toEpochSecond() - base);
+      location[n] = lt;
+      status[n] = "BOOKED".equals(v.getStatus()) ? 1 : 0;
+      overlap[n] = v.getOverlapCount();
+      capacity[n] = v.getCapacity();
+      remaining[n] = v.getRemaining();
+      if (v.getBookings() != null) {
+        for (var b : v.getBookings()) bookings.add(new Booking(n, b.getAppointmentId(), b.getPatientId(), b.getPatientName()));
+      }
+      n++;
+    }
+
+    public SlotColumnsDTO build(){
+      return new SlotColumnsDTO(professionalId, professionalName, slotMinutes, base, locations,
+          Arrays.copyOf(start, n), Arrays.copyOf(end, n), Arrays.copyOf(location, n), Arrays.copyOf(status, n),
+          Arrays.copyOf(overlap, n), Arrays.copyOf(capacity, n), Arrays.copyOf(remaining, n), bookings);
+    }
+
+    private void grow(){
+      int c = start.length * 2;
+      start = Arrays.copyOf(start, c); end = Arrays.copyOf(end, c); location = Arrays.copyOf(location, c);
+      status = Arrays.copyOf(status, c); overlap = Arrays.copyOf(overlap, c); capacity = Arrays.copyOf(capacity, c);
+      remaining = Arrays.copyOf(remaining, c);
+    }
+  }
+}
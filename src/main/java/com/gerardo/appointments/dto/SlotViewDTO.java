@@ -15,6 +15,8 @@ public class SlotViewDTO {
   private LocationType locationType;               // PRIVATE | HOSPITAL
   private String status;                           // "AVAILABLE" | "BOOKED"
   private int overlapCount;                        // 0..3
+  private int capacity;                            // turnos simultáneos en la sede (1 = sin sobreturno)
+  private int remaining;                           // lugares libres según los contadores de slot_claims
   private List<BookingItemDTO> bookings;           // cada item: { appointmentId, patientId, patientName }
 
 }
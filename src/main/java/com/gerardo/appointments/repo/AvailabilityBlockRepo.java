@@ -6,7 +6,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import java.time.Instant;
 import java.util.List;
 
-public interface AvailabilityBlockRepo extends MongoRepository<AvailabilityBlock, String> {
+public interface AvailabilityBlockRepo extends MongoRepository<AvailabilityBlock, String>, AvailabilityBlockRepoCustom {
 
   List<AvailabilityBlock> findByProfessionalId(String professionalId);
 
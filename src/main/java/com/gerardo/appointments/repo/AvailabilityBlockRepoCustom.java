@@ -0,0 +1,17 @@
+// src/main/java/com/gerardo/appointments/repo/AvailabilityBlockRepoCustom.java
+package com.gerardo.appointments.repo;
+
+import com.gerardo.appointments.domain.AvailabilityBlock;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface AvailabilityBlockRepoCustom {
+
+  /** One (professional, range) pair of a batched overlap lookup. */
+  record ProRange(String professionalId, Instant from, Instant to) {}
+
+  // blocks (OPEN or closed) overlapping any of the pairs, in a single $or query (sorted by professionalId, startTs)
+  List<AvailabilityBlock> findOverlappingAny(Collection<ProRange> ranges);
+}
@@ -0,0 +1,32 @@
+// src/main/java/com/gerardo/appointments/repo/AvailabilityBlockRepoCustomImpl.java
+package com.gerardo.appointments.repo;
+
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/** Fragment picked up by Spring Data for {@link AvailabilityBlockRepo} (name = fragment + "Impl"). */
+public class AvailabilityBlockRepoCustomImpl implements AvailabilityBlockRepoCustom {
+  private final MongoTemplate mongo;
+  public AvailabilityBlockRepoCustomImpl(MongoTemplate mongo){ this.mongo = mongo; }
+
+  @Override
+  public List<AvailabilityBlock> findOverlappingAny(Collection<ProRange> ranges){
+    var distinct = new LinkedHashSet<>(ranges);
+    if (distinct.isEmpty()) return List.of();
+    var clauses = distinct.stream()
+        .map(r -> Criteria.where("professionalId").is(r.professionalId())
+                          .and("endTs").gt(r.from())
+                          .and("startTs").lt(r.to()))
+        .toArray(Criteria[]::new);
+    // cada rama del $or usa pro_start_end; los cerrados también: recortan las reglas semanales
+    var q = Query.query(new Criteria().orOperator(clauses)).with(Sort.by("professionalId", "startTs"));
+    return mongo.find(q, AvailabilityBlock.class);
+  }
+}
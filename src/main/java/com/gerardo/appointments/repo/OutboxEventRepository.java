@@ -7,5 +7,6 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import java.util.List;
 
 public interface OutboxEventRepository extends MongoRepository<OutboxEvent, String> {
-  List<OutboxEvent> findByProcessedAtIsNullAndType(String type);
+  // pendientes de un tipo (pending: true; dead letters también tienen processedAt null): índice parcial pending_type_due
+  List<OutboxEvent> findByPendingTrueAndType(String type);
 }
@@ -2,4 +2,7 @@
 package com.gerardo.appointments.repo;
 import com.gerardo.appointments.domain.Professional;
 import org.springframework.data.mongodb.repository.MongoRepository;
-public interface ProfessionalRepo extends MongoRepository<Professional, String> {}
+import java.util.List;
+public interface ProfessionalRepo extends MongoRepository<Professional, String> {
+  List<Professional> findBySpecialty(String specialty);
+}
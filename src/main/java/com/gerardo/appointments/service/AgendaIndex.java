@@ -0,0 +1,300 @@
+// src/main/java/com/gerardo/appointments/service/AgendaIndex.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AppointmentStatus;
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.domain.AvailabilitySlot;
+import com.gerardo.appointments.domain.LocationType;
+import com.gerardo.appointments.domain.Professional;
+import com.gerardo.appointments.repo.AppointmentRepo;
+import com.gerardo.appointments.repo.AvailabilityBlockRepo;
+import com.gerardo.appointments.repo.AvailabilityBlockRepoCustom.ProRange;
+import com.gerardo.appointments.repo.ProfessionalRepo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * In-memory per-professional agenda: SCHEDULED appointments and availability blocks kept
+ * sorted by start, plus the weekly recurring rules and the per-location capacity. Loaded lazily from Mongo
+ * from {@code app.agenda-index.history} back (reads that start earlier go to Mongo for just their range),
+ * bounded by LRU, and updated in place by the write paths so overlap checks and slot views don't go
+ * to the database. Per instance: writes made by another instance are only seen after an eviction or
+ * {@link #invalidate}, so with several instances the fast rejects can be stale (see docs/design.md).
+ */
+@Component
+public class AgendaIndex {
+
+  private static final Instant END_OF_TIME = Instant.parse("9999-12-31T00:00:00Z");
+
+  public record Stats(int size, int maxSize, long hits, long misses, long evictions, long bypasses) {}
+
+  /** What a one-off scan needs from one agenda over {@code [from, to)}; see {@link #range}. */
+  public record Range(List<Appointment> scheduled, List<AvailabilityBlock> blocks, List<AvailabilitySlot> weekly,
+                      Map<LocationType, Integer> capacity) {}
+
+  /** Blocks of one professional overlapping any of the asked ranges, plus its weekly rules; see {@link #windows}. */
+  public record Windows(List<AvailabilityBlock> blocks, List<AvailabilitySlot> weekly) {}
+
+  private final AppointmentRepo appts;
+  private final AvailabilityBlockRepo blocks;
+  private final ProfessionalRepo pros;
+  private final int maxProfessionals;
+  private final Duration history;
+  private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong(), bypasses = new AtomicLong();
+  private final LinkedHashMap<String, Agenda> agendas;   // guarded by itself
+
+  public AgendaIndex(AppointmentRepo appts, AvailabilityBlockRepo blocks, ProfessionalRepo pros,
+                     @Value("${app.agenda-index.max-professionals:500}") int maxProfessionals,
+                     @Value("${app.agenda-index.history:P30D}") Duration history){
+    this.appts = appts; this.blocks = blocks; this.pros = pros; this.maxProfessionals = maxProfessionals; this.history = history;
+    this.agendas = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<String, Agenda> eldest){
+        if (size() <= AgendaIndex.this.maxProfessionals) return false;
+        evictions.incrementAndGet();
+        return true;
+      }
+    };
+  }
+
+  // ---------- lecturas ----------
+
+  /** Same contract as {@code findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(pro, SCHEDULED, from, to)}. */
+  public List<Appointment> scheduled(String proId, Instant from, Instant to){
+    var ag = covering(proId, from);
+    return ag != null ? ag.appointments.overlapping(from, to)
+                      : appts.findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(proId, AppointmentStatus.SCHEDULED, from, to);
+  }
+
+  /** Same contract as {@code findByProfessionalIdAndEndTsAfterAndStartTsBefore(pro, from, to)}. */
+  public List<AvailabilityBlock> blocks(String proId, Instant from, Instant to){
+    var ag = covering(proId, from);
+    return ag != null ? ag.blocks.overlapping(from, to) : blocks.findByProfessionalIdAndEndTsAfterAndStartTsBefore(proId, from, to);
+  }
+
+  /** Weekly recurring rules ({@code Professional.availability}); refreshed through {@link #invalidate}. */
+  public List<AvailabilitySlot> weekly(String proId){
+    return agenda(proId).weekly;
+  }
+
+  /** {@code Professional.capacity} as stored (may be empty); see {@link Capacities}. */
+  public Map<LocationType, Integer> capacity(String proId){
+    return agenda(proId).capacity;
+  }
+
+  public boolean hasOverlap(String proId, Instant from, Instant to){
+    var ag = covering(proId, from);
+    return ag != null ? ag.appointments.anyOverlapping(from, to)
+                      : appts.countByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(proId, AppointmentStatus.SCHEDULED, from, to) > 0;
+  }
+
+  /**
+   * For scans over many professionals (specialty search): served from the agenda when it is already loaded,
+   * otherwise read from Mongo for just that range and not admitted, so one wide search does not evict the
+   * agendas the booking and slot paths keep hot.
+   */
+  public Range range(String proId, Instant from, Instant to){
+    var ag = loaded(proId);
+    if (ag != null && ag.ensureLoaded(proId).covers(from)) {
+      hits.incrementAndGet();
+      return new Range(ag.appointments.overlapping(from, to), ag.blocks.overlapping(from, to), ag.weekly, ag.capacity);
+    }
+    bypasses.incrementAndGet();
+    var pro = pros.findById(proId);
+    var weekly = pro.map(Professional::getAvailability).map(List::copyOf).orElse(List.<AvailabilitySlot>of());
+    var capacity = pro.map(Professional::getCapacity).<Map<LocationType, Integer>>map(c -> Collections.unmodifiableMap(new HashMap<>(c))).orElse(Map.of());
+    return new Range(appts.findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(proId, AppointmentStatus.SCHEDULED, from, to),
+                     blocks.findByProfessionalIdAndEndTsAfterAndStartTsBefore(proId, from, to), weekly, capacity);
+  }
+
+  /**
+   * Blocks + weekly rules for many (professional, range) pairs, by professional: loaded agendas answer from memory,
+   * the rest with one {@code $or} block query and one professional query whatever the number of pairs, not admitted
+   * (the patient view touches many agendas once).
+   */
+  public Map<String, Windows> windows(Collection<ProRange> ranges){
+    var out = new HashMap<String, Windows>();
+    var missing = new ArrayList<ProRange>();
+    for (var r : ranges) {
+      var ag = loaded(r.professionalId());
+      if (ag == null || !ag.ensureLoaded(r.professionalId()).covers(r.from())) { missing.add(r); continue; }
+      out.computeIfAbsent(r.professionalId(), k -> { hits.incrementAndGet(); return new Windows(new ArrayList<>(), ag.weekly); })
+         .blocks().addAll(ag.blocks.overlapping(r.from(), r.to()));
+    }
+    if (missing.isEmpty()) return out;
+
+    var ids = new LinkedHashSet<String>();
+    missing.forEach(r -> ids.add(r.professionalId()));
+    bypasses.addAndGet(ids.size());
+    out.putAll(windows(pros.findAllById(ids), blocks.findOverlappingAny(missing)));
+    return out;
+  }
+
+  /** Groups professionals (weekly rules) and blocks read elsewhere, e.g. by the reactive repositories. */
+  public static Map<String, Windows> windows(Iterable<Professional> professionals, Iterable<AvailabilityBlock> blocks){
+    var out = new HashMap<String, Windows>();
+    for (var p : professionals) out.put(p.getId(), new Windows(new ArrayList<>(), p.getAvailability() == null ? List.of() : List.copyOf(p.getAvailability())));
+    for (var b : blocks) out.computeIfAbsent(b.getProfessionalId(), k -> new Windows(new ArrayList<>(), List.of())).blocks().add(b);
+    return out;
+  }
+
+  public Stats stats(){
+    synchronized (agendas) {
+      return new Stats(agendas.size(), maxProfessionals, hits.get(), misses.get(), evictions.get(), bypasses.get());
+    }
+  }
+
+  // ---------- escrituras (sólo si la agenda ya está cargada; si no, se leerá fresca de Mongo) ----------
+
+  public void onBooked(Appointment a){
+    var ag = loaded(a.getProfessionalId());
+    if (ag != null && a.getStatus() == AppointmentStatus.SCHEDULED) synchronized (ag) { ag.appointments.put(a); }
+  }
+
+  public void onCancelled(Appointment a){
+    var ag = loaded(a.getProfessionalId());
+    if (ag != null) synchronized (ag) { ag.appointments.remove(a.getId()); }
+  }
+
+  public void onBlockSaved(AvailabilityBlock b){
+    var ag = loaded(b.getProfessionalId());
+    if (ag != null) synchronized (ag) { ag.blocks.put(b); }
+  }
+
+  public void onBlockRemoved(String proId, String blockId){
+    var ag = loaded(proId);
+    if (ag != null) synchronized (ag) { ag.blocks.remove(blockId); }
+  }
+
+  public void invalidate(String proId){
+    synchronized (agendas) { agendas.remove(proId); }
+  }
+
+  // ---------- internals ----------
+
+  private Agenda loaded(String proId){
+    synchronized (agendas) { return agendas.get(proId); }
+  }
+
+  private Agenda agenda(String proId){
+    Agenda ag;
+    synchronized (agendas) {
+      ag = agendas.get(proId);
+      if (ag != null) hits.incrementAndGet();
+      else {
+        misses.incrementAndGet();
+        ag = new Agenda();
+        agendas.put(proId, ag);
+      }
+    }
+    ag.ensureLoaded(proId);
+    return ag;
+  }
+
+  /**
+   * The agenda, if it holds {@code from} onwards; null (a bypass) if the read starts before it. A read older than
+   * what a load would bring does not load one.
+   */
+  private Agenda covering(String proId, Instant from){
+    if (!from.isBefore(Instant.now().minus(history))) return agenda(proId);
+    var ag = loaded(proId);
+    if (ag != null && ag.ensureLoaded(proId).covers(from)) { hits.incrementAndGet(); return ag; }
+    bypasses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Registered in the map before it is loaded, so writes that land while Mongo is being read
+   * wait on the agenda lock (every write hook takes it) and are then applied on top (idempotent by id):
+   * a cancel or block removal is never overwritten by the older read.
+   */
+  private final class Agenda {
+    final Intervals<Appointment> appointments = new Intervals<>(Appointment::getId, Appointment::getStartTs, Appointment::getEndTs);
+    final Intervals<AvailabilityBlock> blocks = new Intervals<>(AvailabilityBlock::getId, AvailabilityBlock::getStartTs, AvailabilityBlock::getEndTs);
+    volatile List<AvailabilitySlot> weekly = List.of();
+    volatile Map<LocationType, Integer> capacity = Map.of();
+    private Instant since;   // lo anterior no se cargó
+    private boolean loaded;
+
+    synchronized Agenda ensureLoaded(String proId){
+      if (loaded) return this;
+      var pro = pros.findById(proId);
+      weekly = pro.map(Professional::getAvailability).map(List::copyOf).orElse(List.of());
+      capacity = pro.map(Professional::getCapacity).<Map<LocationType, Integer>>map(c -> Collections.unmodifiableMap(new HashMap<>(c))).orElse(Map.of());
+      since = Instant.now().minus(history);
+      appointments.putAll(appts.findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(proId, AppointmentStatus.SCHEDULED, since, END_OF_TIME));
+      blocks.putAll(AgendaIndex.this.blocks.findByProfessionalIdAndEndTsAfterAndStartTsBefore(proId, since, END_OF_TIME));
+      loaded = true;
+      return this;
+    }
+
+    /** Whether a read from {@code from} finds everything here; call after {@link #ensureLoaded}. */
+    synchronized boolean covers(Instant from){ return !from.isBefore(since); }
+  }
+
+  /**
+   * Intervals sorted by start. Overlap lookups binary-search {@code start >= from - maxLength}
+   * and scan forward while {@code start < to}, so the cost is proportional to the hits.
+   */
+  static final class Intervals<T> {
+    private final Function<T, String> id;
+    private final Function<T, Instant> start, end;
+    private final ArrayList<T> items = new ArrayList<>();
+    private long maxLengthMs;
+
+    Intervals(Function<T, String> id, Function<T, Instant> start, Function<T, Instant> end){
+      this.id = id; this.start = start; this.end = end;
+    }
+
+    synchronized void putAll(Collection<T> xs){ xs.forEach(this::put); }
+
+    synchronized void put(T x){
+      remove(id.apply(x));
+      long s = start.apply(x).toEpochMilli();
+      maxLengthMs = Math.max(maxLengthMs, end.apply(x).toEpochMilli() - s);
+      items.add(lowerBound(s + 1), x);   // después de los que arrancan en el mismo instante
+    }
+
+    synchronized void remove(String xId){
+      if (xId == null) return;
+      items.removeIf(x -> xId.equals(id.apply(x)));
+    }
+
+    synchronized List<T> overlapping(Instant from, Instant to){
+      var out = new ArrayList<T>();
+      long f = from.toEpochMilli(), t = to.toEpochMilli();
+      for (int i = lowerBound(f - maxLengthMs); i < items.size(); i++) {
+        var x = items.get(i);
+        if (start.apply(x).toEpochMilli() >= t) break;
+        if (end.apply(x).toEpochMilli() > f) out.add(x);
+      }
+      return out;
+    }
+
+    synchronized boolean anyOverlapping(Instant from, Instant to){
+      long f = from.toEpochMilli(), t = to.toEpochMilli();
+      for (int i = lowerBound(f - maxLengthMs); i < items.size(); i++) {
+        var x = items.get(i);
+        if (start.apply(x).toEpochMilli() >= t) return false;
+        if (end.apply(x).toEpochMilli() > f) return true;
+      }
+      return false;
+    }
+
+    /** first index whose start >= t */
+    private int lowerBound(long t){
+      int lo = 0, hi = items.size();
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (start.apply(items.get(mid)).toEpochMilli() < t) lo = mid + 1; else hi = mid;
+      }
+      return lo;
+    }
+  }
+}
@@ -0,0 +1,32 @@
+// src/main/java/com/gerardo/appointments/service/AgendaVersions.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.AgendaVersion;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-professional agenda version, kept in its own tiny collection so a conditional GET can be
+ * answered with one primary-key read, without touching appointments or blocks.
+ * Every agenda write bumps it with an atomic {@code $inc} (upsert), which also works across instances.
+ */
+@Component
+public class AgendaVersions {
+  private final MongoTemplate mongo;
+  public AgendaVersions(MongoTemplate mongo){ this.mongo = mongo; }
+
+  public long current(String proId){
+    var v = mongo.findById(proId, AgendaVersion.class);
+    return v == null ? 0L : v.getVersion();
+  }
+
+  public long bump(String proId){
+    var v = mongo.findAndModify(Query.query(Criteria.where("_id").is(proId)), new Update().inc("version", 1),
+        FindAndModifyOptions.options().upsert(true).returnNew(true), AgendaVersion.class);
+    return v == null ? 0L : v.getVersion();
+  }
+}
@@ -0,0 +1,150 @@
+// src/main/java/com/gerardo/appointments/service/AppointmentArchive.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AppointmentStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Keeps {@code appointments} hot: a nightly job moves appointments that ended more than
+ * {@code app.archive.retention} ago (CANCELLED ones after {@code app.archive.cancelled-retention})
+ * to {@code appointments_archive} in bounded batches (bulk insert, then one delete by id).
+ * In the same job, per professional of each batch: the agenda index is reloaded without it, the days it leaves are
+ * rebuilt in the occupancy bitmaps, the slot claims before the horizon are dropped and the agenda version is bumped.
+ * Patient reads that start before the horizon also query the archive and merge by id.
+ */
+@Component
+public class AppointmentArchive {
+  private static final Logger log = LoggerFactory.getLogger(AppointmentArchive.class);
+  public static final String COLLECTION = "appointments_archive";
+
+  private final MongoTemplate mongo;
+  private final AgendaIndex index;
+  private final OccupancyBitmaps bitmaps;
+  private final SlotClaims claims;
+  private final AgendaVersions versions;
+  private final Duration retention, cancelledRetention;
+  private final int batchSize, maxBatchesPerRun;
+  private final AtomicLong moved = new AtomicLong();
+
+  public AppointmentArchive(MongoTemplate mongo, AgendaIndex index, OccupancyBitmaps bitmaps, SlotClaims claims, AgendaVersions versions,
+                            @Value("${app.archive.retention:P90D}") Duration retention,
+                            @Value("${app.archive.cancelled-retention:P7D}") Duration cancelledRetention,
+                            @Value("${app.archive.batch-size:1000}") int batchSize,
+                            @Value("${app.archive.max-batches-per-run:100}") int maxBatchesPerRun){
+    this.mongo = mongo; this.index = index; this.bitmaps = bitmaps; this.claims = claims; this.versions = versions;
+    this.retention = retention; this.cancelledRetention = cancelledRetention;
+    this.batchSize = batchSize; this.maxBatchesPerRun = maxBatchesPerRun;
+  }
+
+  /** Not a {@code @Document}, so auto-index-creation doesn't see it. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void ensureIndexes(){
+    var ops = mongo.indexOps(COLLECTION);
+    ops.ensureIndex(new Index().on("patientId", Sort.Direction.ASC).on("startTs", Sort.Direction.ASC).named("patient_start"));
+    ops.ensureIndex(new Index().on("professionalId", Sort.Direction.ASC).on("startTs", Sort.Direction.ASC).named("pro_start"));
+  }
+
+  @Scheduled(cron = "${app.archive.cron:0 15 4 * * *}")
+  public void run(){
+    long t0 = System.nanoTime();
+    int n = archive(Instant.now());
+    if (n > 0) log.info("archive: {} appointments moved in {} ms", n, (System.nanoTime() - t0) / 1_000_000);
+  }
+
+  /** Moves up to {@code max-batches-per-run} batches; a batch copied but not deleted is simply copied again next time. */
+  public int archive(Instant now){
+    var due = Query.query(new Criteria().orOperator(
+        where("status").is(AppointmentStatus.SCHEDULED).and("endTs").lt(now.minus(retention)),
+        where("status").is(AppointmentStatus.CANCELLED).and("endTs").lt(now.minus(cancelledRetention)))).limit(batchSize);
+    int total = 0;
+    for (int i = 0; i < maxBatchesPerRun; i++) {
+      var batch = mongo.find(due, Appointment.class);
+      if (batch.isEmpty()) break;
+      copy(batch);
+      mongo.remove(Query.query(where("_id").in(batch.stream().map(Appointment::getId).toList())), Appointment.class);
+      changed(batch, now.minus(retention));
+      total += batch.size();
+      moved.addAndGet(batch.size());
+      if (batch.size() < batchSize) break;
+    }
+    return total;
+  }
+
+  public long moved(){ return moved.get(); }
+
+  /** True if {@code [from, …)} can reach appointments of {@code status} (null = any) already archived. */
+  public boolean crosses(AppointmentStatus status, Instant from){
+    var keep = status == AppointmentStatus.SCHEDULED ? retention
+             : status == AppointmentStatus.CANCELLED ? cancelledRetention
+             : retention.compareTo(cancelledRetention) < 0 ? retention : cancelledRetention;
+    return from.isBefore(Instant.now().minus(keep));
+  }
+
+  /** Patient appointments overlapping {@code [from, to)} ({@code status} null = any), hot and archived, by start. */
+  public List<Appointment> patient(String patientId, AppointmentStatus status, Instant from, Instant to){
+    var hot = mongo.find(patientQuery(patientId, status, from, to), Appointment.class);
+    if (!crosses(status, from)) return hot;
+    // durante una corrida del job una cita puede estar en las dos colecciones
+    var byId = new LinkedHashMap<String, Appointment>();
+    archived(patientId, status, from, to).forEach(a -> byId.put(a.getId(), a));
+    hot.forEach(a -> byId.put(a.getId(), a));
+    var out = new ArrayList<>(byId.values());
+    out.sort(Comparator.comparing(Appointment::getStartTs));
+    return out;
+  }
+
+  public List<Appointment> archived(String patientId, AppointmentStatus status, Instant from, Instant to){
+    return mongo.find(patientQuery(patientId, status, from, to), Appointment.class, COLLECTION);
+  }
+
+  private static Query patientQuery(String patientId, AppointmentStatus status, Instant from, Instant to){
+    var c = where("patientId").is(patientId);
+    if (status != null) c = c.and("status").is(status);
+    return Query.query(c.and("endTs").gt(from).and("startTs").lt(to)).with(Sort.by("startTs"));
+  }
+
+  /**
+   * The index still holds the moved appointments: reload it, rebuild the days they were on, drop the seats
+   * they (and anything else before the horizon) still hold, and bump the version so cached views and ETags go.
+   */
+  private void changed(List<Appointment> batch, Instant horizon){
+    var byPro = new HashMap<String, List<Appointment>>();
+    for (var a : batch) byPro.computeIfAbsent(a.getProfessionalId(), k -> new ArrayList<>()).add(a);
+    byPro.forEach((proId, as) -> {
+      index.invalidate(proId);
+      var days = bitmaps.onChanged(proId, as);
+      claims.dropBefore(proId, horizon);
+      bitmaps.store(proId, days, versions.bump(proId));
+    });
+  }
+
+  /** Unordered bulk insert; ids already in the archive (a previous run died before its delete) are fine. */
+  private void copy(List<Appointment> batch){
+    try {
+      mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, Appointment.class, COLLECTION).insert(batch).execute();
+    } catch (BulkOperationException ex) {
+      if (ex.getErrors().stream().anyMatch(err -> err.getCode() != 11000)) throw ex;
+    }
+  }
+}
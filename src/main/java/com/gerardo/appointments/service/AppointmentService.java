@@ -2,43 +2,237 @@
 package com.gerardo.appointments.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gerardo.appointments.domain.AgendaBitmap;
+import com.gerardo.appointments.domain.AgendaChange;
 import com.gerardo.appointments.domain.Appointment;
 import com.gerardo.appointments.domain.AppointmentStatus;
 import com.gerardo.appointments.domain.OutboxEvent;
+import com.gerardo.appointments.dto.BatchItemResult;
+import com.gerardo.appointments.dto.BookRequest;
 import com.gerardo.appointments.repo.AppointmentRepository;
 import com.gerardo.appointments.repo.OutboxEventRepository;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Instant;
 import java.time.OffsetDateTime;
-import java.util.Map;
+import java.util.*;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 @Service
 public class AppointmentService {
   private final AppointmentRepository repo;
   private final OutboxEventRepository outbox;
+  private final AgendaIndex index;
+  private final SlotClaims claims;
+  private final MongoTemplate mongo;
+  private final NotificationHub hub;
+  private final AgendaVersions versions;
+  private final OccupancyBitmaps bitmaps;
+  private final Capacities capacities;
+  private final SlotCache slotCache;
+  private final ChangeLog changes;
+  private final Counter indexConflicts, claimConflicts, batchConflicts;   // 409s por origen
   private final ObjectMapper om = new ObjectMapper();
 
-  public AppointmentService(AppointmentRepository r, OutboxEventRepository o){ this.repo=r; this.outbox=o; }
+  public AppointmentService(AppointmentRepository r, OutboxEventRepository o, AgendaIndex i, SlotClaims c, MongoTemplate m,
+                            NotificationHub h, AgendaVersions v, OccupancyBitmaps b, Capacities k, SlotCache sc, ChangeLog l, MeterRegistry metrics){
+    this.repo=r; this.outbox=o; this.index=i; this.claims=c; this.mongo=m; this.hub=h; this.versions=v; this.bitmaps=b; this.capacities=k;
+    this.slotCache=sc; this.changes=l;
+    this.indexConflicts = conflicts(metrics, "index");
+    this.claimConflicts = conflicts(metrics, "claim");
+    this.batchConflicts = conflicts(metrics, "batch");
+  }
 
+  private static Counter conflicts(MeterRegistry metrics, String source){
+    return Counter.builder("appointments.book.conflicts").tag("source", source)
+                  .description("bookings rejected with 409").register(metrics);
+  }
+
+  @Timed(value = "appointments.book", percentiles = {0.5, 0.99}, histogram = true)
   public Appointment book(String proId, String patientId, OffsetDateTime start, OffsetDateTime end){
+    var invalid = invalid(proId, patientId, start, end);
+    if (invalid != null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, invalid);
     var s = start.toInstant(); var e = end.toInstant();
-    if (repo.existsByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(proId, AppointmentStatus.SCHEDULED, s, e))
-      throw new IllegalStateException("slot not available");
+    int cap = capacities.at(proId, s, e);
+    // rechazo rápido desde memoria; la garantía la da el claim condicional
+    if (full(proId, s, e, cap)) {
+      indexConflicts.increment();
+      throw new SlotConflictException("slot not available");
+    }
 
     var a = new Appointment();
+    a.setId(new ObjectId().toHexString());
     a.setProfessionalId(proId);
     a.setPatientId(patientId);
     a.setStartTs(s);
     a.setEndTs(e);
     a.setStatus(AppointmentStatus.SCHEDULED);
-    return repo.save(a);
+    try {
+      claims.claim(proId, a.getId(), s, e, cap);
+    } catch (SlotConflictException ex) {
+      claimConflicts.increment();
+      throw ex;
+    }
+    try {
+      a = repo.insert(a);
+    } catch (RuntimeException ex) {
+      claims.release(proId, a.getId(), s, e);
+      throw ex;
+    }
+    index.onBooked(a);
+    var days = bitmaps.onChanged(proId, s, e);
+    slotCache.invalidate(proId, s, e);
+    bitmaps.store(proId, days, versions.bump(proId));
+    changes.appointments(AgendaChange.Op.BOOKED, List.of(a));
+    return a;
+  }
+
+  /** Why a booking cannot even be tried (400 / INVALID), or null: the same checks for one booking and for a batch. */
+  private String invalid(String proId, String patientId, OffsetDateTime start, OffsetDateTime end){
+    if (proId == null || patientId == null || start == null || end == null)
+      return "professionalId, patientId, startTs and endTs are required";
+    if (!start.isBefore(end)) return "startTs must be before endTs";
+    if (!claims.aligned(start.toInstant(), end.toInstant()))
+      return "startTs and endTs must be on a " + claims.granuleMinutes() + "-minute boundary (app.booking.claim-granule-minutes)";
+    if (!claims.fits(start.toInstant(), end.toInstant())) return "longer than app.booking.max-claim-span";
+    return null;
+  }
+
+  /** Capacity 1: any overlap (bitmap of the day if loaded, else the index). Overbooking: concurrent appointments in the index. */
+  private boolean full(String proId, Instant s, Instant e, int cap){
+    if (cap == 1) {
+      var booked = bitmaps.bookedBetween(proId, s, e);
+      return booked != null ? booked : index.hasOverlap(proId, s, e);
+    }
+    return depth(index.scheduled(proId, s, e), s, e) >= cap;
+  }
+
+  /** Most appointments running at once inside [s, e): sweep over the clipped starts and ends. */
+  static int depth(List<Appointment> xs, Instant s, Instant e){
+    var starts = xs.stream().mapToLong(a -> Math.max(a.getStartTs().toEpochMilli(), s.toEpochMilli())).toArray();
+    var ends = xs.stream().mapToLong(a -> Math.min(a.getEndTs().toEpochMilli(), e.toEpochMilli())).toArray();
+    return SlotEngine.depth(starts, ends, xs.size());
   }
 
+  /**
+   * Books a series in one go: items are validated in memory against the agenda of each professional
+   * (and, without overbooking, against each other), claimed with one unordered bulk insert and persisted with another.
+   * Every item gets its own CREATED / CONFLICT / INVALID result.
+   */
+  @Timed(value = "appointments.book.batch", percentiles = {0.5, 0.99}, histogram = true)
+  public List<BatchItemResult> bookAll(List<BookRequest> reqs){
+    var results = new BatchItemResult[reqs.size()];
+    var accepted = new ArrayList<Appointment>();
+    var capacity = new HashMap<String, Integer>();   // appointmentId -> lugares por gránulo
+    var position = new HashMap<String, Integer>();   // appointmentId -> índice en el request
+
+    var byPro = new LinkedHashMap<String, List<Integer>>();
+    for (int i = 0; i < reqs.size(); i++) {
+      var r = reqs.get(i);
+      var invalid = invalid(r.getProfessionalId(), r.getPatientId(), r.getStartTs(), r.getEndTs());
+      if (invalid != null)
+        results[i] = BatchItemResult.invalid(i, invalid);
+      else
+        byPro.computeIfAbsent(r.getProfessionalId(), k -> new ArrayList<>()).add(i);
+    }
+
+    byPro.forEach((proId, idxs) -> {
+      idxs.sort(Comparator.comparing(i -> reqs.get(i).getStartTs()));
+      Instant lastEnd = Instant.MIN;
+      for (int i : idxs) {
+        var r = reqs.get(i);
+        var s = r.getStartTs().toInstant(); var e = r.getEndTs().toInstant();
+        int cap = capacities.at(proId, s, e);
+        if (cap == 1 && s.isBefore(lastEnd)) { results[i] = BatchItemResult.conflict(i, "overlaps another item of the batch"); continue; }
+        if (full(proId, s, e, cap)) { results[i] = BatchItemResult.conflict(i, "slot not available"); continue; }
+        var a = new Appointment();
+        a.setId(new ObjectId().toHexString());
+        a.setProfessionalId(proId);
+        a.setPatientId(r.getPatientId());
+        a.setStartTs(s);
+        a.setEndTs(e);
+        a.setStatus(AppointmentStatus.SCHEDULED);
+        accepted.add(a);
+        capacity.put(a.getId(), cap);
+        position.put(a.getId(), i);
+        if (e.isAfter(lastEnd)) lastEnd = e;
+      }
+    });
+
+    var lost = claims.claimAll(accepted, capacity);
+    var toInsert = accepted.stream().filter(a -> !lost.contains(a.getId())).toList();
+    lost.forEach(id -> results[position.get(id)] = BatchItemResult.conflict(position.get(id), "slot not available"));
+
+    var failed = new HashSet<Integer>();
+    if (!toInsert.isEmpty()) {
+      try {
+        mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, Appointment.class).insert(toInsert).execute();
+      } catch (BulkOperationException ex) {
+        ex.getErrors().forEach(err -> failed.add(err.getIndex()));
+      } catch (RuntimeException ex) {
+        // sin resultado por item (red, timeout): igual que book, se sueltan los lugares de todo el lote
+        for (var a : toInsert) {
+          try { claims.release(a); } catch (RuntimeException r) { ex.addSuppressed(r); }
+        }
+        throw ex;
+      }
+    }
+    var touched = new HashMap<String, List<AgendaBitmap>>();
+    var stored = new ArrayList<Appointment>();
+    for (int k = 0; k < toInsert.size(); k++) {
+      var a = toInsert.get(k);
+      int i = position.get(a.getId());
+      if (failed.contains(k)) {
+        claims.release(a);
+        results[i] = BatchItemResult.conflict(i, "could not be stored");
+      } else {
+        index.onBooked(a);
+        var days = bitmaps.onChanged(a.getProfessionalId(), a.getStartTs(), a.getEndTs());
+        slotCache.invalidate(a.getProfessionalId(), a.getStartTs(), a.getEndTs());
+        touched.computeIfAbsent(a.getProfessionalId(), p -> new ArrayList<>()).addAll(days);
+        stored.add(a);
+        results[i] = BatchItemResult.created(i, a.getId());
+      }
+    }
+    touched.forEach((p, days) -> bitmaps.store(p, days, versions.bump(p)));
+    changes.appointments(AgendaChange.Op.BOOKED, stored);
+    batchConflicts.increment(Arrays.stream(results).filter(r -> BatchItemResult.CONFLICT.equals(r.status())).count());
+    return Arrays.asList(results);
+  }
+
+  @Timed(value = "appointments.cancel", percentiles = {0.5, 0.99}, histogram = true)
   public void cancel(String id, String reason){
     var a = repo.findById(id).orElseThrow();
-    if (a.isCancelled()) return;
+    if (a.isCancelled()) {
+      // un cancel anterior pudo morir antes de soltar los lugares: el reintento los suelta y termina su trabajo
+      if (claims.release(a) > 0) cancelled(a, a.getCancelReason());
+      return;
+    }
+    claims.touch(a);   // si el release de abajo falla, el barrido ve los claims en su próxima ventana
     a.cancel(reason);
     repo.save(a);
+    claims.release(a);
+    cancelled(a, reason);
+  }
+
+  /** After the cancel is stored and its seats released: caches, version, change feed and the patient's notification. */
+  private void cancelled(Appointment a, String reason){
+    index.onCancelled(a);
+    var days = bitmaps.onChanged(a.getProfessionalId(), a.getStartTs(), a.getEndTs());
+    slotCache.invalidate(a.getProfessionalId(), a.getStartTs(), a.getEndTs());
+    bitmaps.store(a.getProfessionalId(), days, versions.bump(a.getProfessionalId()));
+    changes.appointments(AgendaChange.Op.CANCELLED, List.of(a));
 
     var payload = Map.of(
       "appointmentId", a.getId(),
@@ -51,10 +245,23 @@ public class AppointmentService {
     var e = new OutboxEvent();
     e.setType("AppointmentCancelled");
     e.setAggregateId(Long.valueOf(a.getId().hashCode())); // optional; or keep null
+    e.setRecipientId(a.getPatientId());
     e.setPayloadJson(writeJson(payload));
-    outbox.save(e);
+    e = outbox.save(e);
+
+    hub.broadcastToPatient(a.getPatientId(), "AppointmentCancelled", e.getId(), e.getPayloadJson());
+  }
 
-    NotificationHub.broadcastToPatient(a.getPatientId(), "AppointmentCancelled", e.getPayloadJson());
+  /**
+   * Slot views embed the patient's name: after a patient write, drop the cached views and move the version (ETags)
+   * of every professional the patient has a SCHEDULED appointment with.
+   */
+  public void patientChanged(String patientId){
+    var q = Query.query(where("patientId").is(patientId).and("status").is(AppointmentStatus.SCHEDULED));
+    for (var proId : mongo.findDistinct(q, "professionalId", Appointment.class, String.class)) {
+      slotCache.invalidate(proId);
+      versions.bump(proId);
+    }
   }
 
   private String writeJson(Object x){
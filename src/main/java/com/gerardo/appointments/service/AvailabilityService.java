@@ -2,60 +2,268 @@
 package com.gerardo.appointments.service;
 
 import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.domain.LocationType;
+import com.gerardo.appointments.dto.BatchItemResult;
+import com.gerardo.appointments.dto.BlockDTO;
 import com.gerardo.appointments.dto.SlotDTO;
-import com.gerardo.appointments.repo.AppointmentRepository;
 import com.gerardo.appointments.repo.AvailabilityBlockRepository;
+import org.bson.types.ObjectId;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 public class AvailabilityService {
   private final AvailabilityBlockRepository blocks;
-  private final AppointmentRepository appts;
+  private final AgendaIndex index;
+  private final AvailabilityWindows windows;
+  private final MongoTemplate mongo;
+  private final AgendaVersions versions;
+  private final OccupancyBitmaps bitmaps;
+  private final SlotClaims claims;
+  private final Capacities capacities;
+  private final SlotCache slotCache;
+  private final ChangeLog changes;
+  private final Object[] locks = new Object[64];   // escrituras de bloques, por profesional (sólo esta instancia)
+  private static final int WRITE_ATTEMPTS = 3;
 
-  public AvailabilityService(AvailabilityBlockRepository b, AppointmentRepository a){
-    this.blocks=b; this.appts=a;
+  public AvailabilityService(AvailabilityBlockRepository b, AgendaIndex i, AvailabilityWindows w, MongoTemplate m, AgendaVersions v,
+                             OccupancyBitmaps o, SlotClaims c, Capacities k, SlotCache sc, ChangeLog l){
+    this.blocks=b; this.index=i; this.windows=w; this.mongo=m; this.versions=v; this.bitmaps=o; this.claims=c; this.capacities=k;
+    this.slotCache=sc; this.changes=l;
+    for (int x = 0; x < locks.length; x++) locks[x] = new Object();
   }
 
   public AvailabilityBlock addOpenBlock(String proId, OffsetDateTime start, OffsetDateTime end, String reason){
-    var b = new AvailabilityBlock();
-    b.setProfessionalId(proId);
-    b.setStartTs(start.toInstant());
-    b.setEndTs(end.toInstant());
-    b.setReason(reason);
-    b.setOpen(true);
-    return blocks.save(b);
+    return addOpenBlock(proId, start, end, reason, LocationType.HOSPITAL);
   }
 
-  public void removeBlock(String blockId){ blocks.deleteById(blockId); }
+  /** Stores the window folded into the OPEN blocks of the same location it overlaps or touches; returns the block that covers it. */
+  public AvailabilityBlock addOpenBlock(String proId, OffsetDateTime start, OffsetDateTime end, String reason, LocationType locationType){
+    var b = block(proId, start.toInstant(), end.toInstant(), reason, true, locationType);
+    return fold(proId, List.of(b)).coveredBy().get(b.getId());
+  }
 
-  /** Available slots = OPEN windows − scheduled appointments */
-  public List<SlotDTO> computeSlots(String proId, OffsetDateTime from, OffsetDateTime to, Duration slot){
-    var f = from.toInstant(); var t = to.toInstant();
-    var open = blocks.findByProfessionalIdAndEndTsAfterAndStartTsBefore(proId, f, t)
-                     .stream().filter(AvailabilityBlock::isOpen).toList();
-    var busy = appts.findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(
-        proId, com.gerardo.appointments.domain.AppointmentStatus.SCHEDULED, f, t);
+  /**
+   * Opens many windows at once: folded with each other and with the stored blocks they touch in one pass,
+   * and written with one unordered bulk. Each item gets the id of the block that ends up covering it.
+   */
+  public List<BatchItemResult> addOpenBlocks(String proId, List<BlockDTO> reqs){
+    var results = new BatchItemResult[reqs.size()];
+    var incoming = new ArrayList<AvailabilityBlock>();
+    var position = new ArrayList<Integer>();
+    for (int i = 0; i < reqs.size(); i++) {
+      var r = reqs.get(i);
+      if (r.getStartTs() == null || r.getEndTs() == null) { results[i] = BatchItemResult.invalid(i, "startTs and endTs are required"); continue; }
+      if (!r.getStartTs().isBefore(r.getEndTs())) { results[i] = BatchItemResult.invalid(i, "startTs must be before endTs"); continue; }
+      incoming.add(block(proId, r.getStartTs().toInstant(), r.getEndTs().toInstant(), r.getReason(), true, r.getLocationType()));
+      position.add(i);
+    }
+    if (incoming.isEmpty()) return Arrays.asList(results);
 
-    var out = new ArrayList<SlotDTO>();
-    for (var w : open) {
-      var ws = w.getStartTs().isBefore(f) ? f : w.getStartTs();
-      var we = w.getEndTs().isAfter(t) ? t : w.getEndTs();
-      for (var cur = ws; cur.plus(slot).compareTo(we) <= 0; cur = cur.plus(slot)) {
-        var s = cur; var e = cur.plus(slot);
-        boolean overlaps = busy.stream().anyMatch(a ->
-            a.getEndTs().isAfter(s) && a.getStartTs().isBefore(e));
-        if (!overlaps) {
-          out.add(new SlotDTO(
-              OffsetDateTime.ofInstant(s, ZoneOffset.UTC),
-              OffsetDateTime.ofInstant(e, ZoneOffset.UTC)
-          ));
+    var m = fold(proId, incoming);
+    for (int k = 0; k < incoming.size(); k++) {
+      int i = position.get(k);
+      results[i] = BatchItemResult.created(i, m.coveredBy().get(incoming.get(k).getId()).getId());
+    }
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Closes [start, end): OPEN blocks are trimmed, split or dropped around it, and a closed block
+   * (folded with the closed ones it touches) keeps the weekly recurring hours out of the range.
+   */
+  public AvailabilityBlock closeRange(String proId, OffsetDateTime start, OffsetDateTime end, String reason){
+    var s = start.toInstant(); var e = end.toInstant();
+    synchronized (lock(proId)) {
+      for (int attempt = 1; ; attempt++) {
+        var m = new BlockRuns.Merge(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new HashMap<>());
+        for (var b : blocks.findByProfessionalIdAndEndTsAfterAndStartTsBefore(proId, s, e)) {
+          if (!b.isOpen()) continue;
+          if (b.getStartTs().isBefore(s) && b.getEndTs().isAfter(e)) {
+            var tail = BlockRuns.copy(b);
+            tail.setId(new ObjectId().toHexString());
+            tail.setStartTs(e);
+            m.inserted().add(tail);
+          }
+          if (b.getStartTs().isBefore(s)) { b.setEndTs(s); m.resized().add(b); }
+          else if (b.getEndTs().isAfter(e)) { b.setStartTs(e); m.resized().add(b); }
+          else m.removed().add(b.getId());
         }
+        if (write(proId, m, s, e) || attempt == WRITE_ATTEMPTS) break;
+      }
+      var closed = block(proId, s, e, reason, false, null);
+      return fold(proId, List.of(closed)).coveredBy().get(closed.getId());
+    }
+  }
+
+  /**
+   * One-off clean-up for blocks stored before they were folded on write: reads the professional's blocks
+   * from Mongo, folds them and writes only the difference. Returns how many blocks were absorbed.
+   */
+  public int compact(String proId){
+    synchronized (lock(proId)) {
+      int absorbed = 0;
+      for (int attempt = 1; attempt <= WRITE_ATTEMPTS; attempt++) {
+        var m = BlockRuns.merge(blocks.findByProfessionalId(proId), List.of());
+        if (m.isEmpty()) break;
+        absorbed += m.removed().size();
+        if (write(proId, m, null, null)) break;
       }
+      return absorbed;
+    }
+  }
+
+  public Map<String, Integer> compactAll(){
+    int pros = 0, absorbed = 0;
+    for (var proId : mongo.findDistinct(new Query(), "professionalId", AvailabilityBlock.class, String.class)) {
+      absorbed += compact(proId);
+      pros++;
+    }
+    return Map.of("professionals", pros, "absorbed", absorbed);
+  }
+
+  /** Deletes the block only if it belongs to {@code proId}: someone else's block (or none) is a 404, and nothing is touched. */
+  public void removeBlock(String proId, String blockId){
+    synchronized (lock(proId)) {
+      var b = mongo.findAndRemove(Query.query(Criteria.where("_id").is(blockId).and("professionalId").is(proId)), AvailabilityBlock.class);
+      if (b == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "block " + blockId + " not found for professional " + proId);
+      var owner = b.getProfessionalId();
+      index.onBlockRemoved(owner, blockId);
+      var days = bitmaps.onChanged(owner, b.getStartTs(), b.getEndTs());
+      slotCache.invalidate(owner, b.getStartTs(), b.getEndTs());
+      bitmaps.store(owner, days, versions.bump(owner));
+      changes.blockRemoved(b);
+    }
+  }
+
+  /**
+   * Folds {@code incoming} into the stored blocks it overlaps or touches and writes the difference.
+   * The blocks come from Mongo, not from the index: another instance may have written them.
+   */
+  private BlockRuns.Merge fold(String proId, List<AvailabilityBlock> incoming){
+    var from = incoming.stream().map(AvailabilityBlock::getStartTs).min(Comparator.naturalOrder()).orElseThrow();
+    var to = incoming.stream().map(AvailabilityBlock::getEndTs).max(Comparator.naturalOrder()).orElseThrow();
+    synchronized (lock(proId)) {
+      for (int attempt = 1; ; attempt++) {
+        // ±1 ms: también los bloques que sólo se tocan con el rango
+        var stored = blocks.findByProfessionalIdAndEndTsAfterAndStartTsBefore(proId, from.minusMillis(1), to.plusMillis(1));
+        var persisted = new HashSet<String>();
+        stored.forEach(b -> persisted.add(b.getId()));
+        // en un reintento, lo nuevo que ya quedó insertado vuelve como guardado
+        var m = BlockRuns.merge(stored, incoming.stream().filter(b -> !persisted.contains(b.getId())).toList());
+        // la cobertura sólo cambia dentro de lo nuevo
+        if (write(proId, m, from, to) || attempt == WRITE_ATTEMPTS) return m;
+      }
+    }
+  }
+
+  /**
+   * One unordered bulk, then index / bitmaps for [from, to) (null: the whole agenda is reloaded), the agenda version
+   * and the change log. Returns false when a resize or delete missed its block (another instance changed the
+   * blocks after they were read): the caches are dropped and the caller reads again and retries.
+   */
+  private boolean write(String proId, BlockRuns.Merge m, Instant from, Instant to){
+    if (m.isEmpty()) return true;
+    var ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, AvailabilityBlock.class);
+    if (!m.inserted().isEmpty()) ops.insert(m.inserted());
+    for (var b : m.resized()) {
+      ops.updateOne(Query.query(Criteria.where("_id").is(b.getId())), new Update().set("startTs", b.getStartTs()).set("endTs", b.getEndTs()));
     }
+    if (!m.removed().isEmpty()) ops.remove(Query.query(Criteria.where("_id").in(m.removed())));
+    var r = ops.execute();
+    boolean matched = r.getMatchedCount() == m.resized().size() && r.getDeletedCount() == m.removed().size();
+    if (from == null || !matched) {
+      index.invalidate(proId);
+      bitmaps.invalidate(proId);
+      slotCache.invalidate(proId);
+      versions.bump(proId);
+    } else {
+      m.removed().forEach(id -> index.onBlockRemoved(proId, id));
+      m.inserted().forEach(index::onBlockSaved);
+      m.resized().forEach(index::onBlockSaved);
+      var days = bitmaps.onChanged(proId, from, to);
+      slotCache.invalidate(proId, from, to);
+      bitmaps.store(proId, days, versions.bump(proId));
+    }
+    changes.blocks(proId, matched ? m : applied(m));
+    return matched;
+  }
+
+  /** What a bulk that missed blocks really left: its inserts, plus its resized / removed ids as Mongo has them now. */
+  private BlockRuns.Merge applied(BlockRuns.Merge m){
+    var ids = new ArrayList<String>(m.removed());
+    m.resized().forEach(b -> ids.add(b.getId()));
+    var now = new HashMap<String, AvailabilityBlock>();
+    mongo.find(Query.query(Criteria.where("_id").in(ids)), AvailabilityBlock.class).forEach(b -> now.put(b.getId(), b));
+    var out = new BlockRuns.Merge(m.inserted(), new ArrayList<>(), new ArrayList<>(), m.coveredBy());
+    for (var id : ids) {
+      var b = now.get(id);
+      if (b == null) out.removed().add(id); else out.resized().add(b);
+    }
+    return out;
+  }
+
+  private Object lock(String proId){
+    return locks[(proId.hashCode() & 0x7fffffff) % locks.length];
+  }
+
+  private static AvailabilityBlock block(String proId, Instant s, Instant e, String reason, boolean open, LocationType lt){
+    var b = new AvailabilityBlock();
+    b.setId(new ObjectId().toHexString());
+    b.setProfessionalId(proId);
+    b.setStartTs(s);
+    b.setEndTs(e);
+    b.setReason(reason);
+    b.setOpen(open);
+    b.setLocationType(lt == null ? LocationType.HOSPITAL : lt);
+    return b;
+  }
+
+  /** Available slots = OPEN windows (explicit + weekly recurring) − scheduled appointments (− full ones, with overbooking) */
+  @Timed(value = "appointments.slots.compute", percentiles = {0.5, 0.99}, histogram = true, extraTags = {"mode", "list"})
+  public List<SlotDTO> computeSlots(String proId, OffsetDateTime from, OffsetDateTime to, Duration slot){
+    var out = new ArrayList<SlotDTO>();
+    forEachSlot(proId, from, to, slot, out::add);
     return out;
   }
+
+  /** Same as {@link #computeSlots} but hands each slot to {@code sink} as it is generated. */
+  @Timed(value = "appointments.slots.compute", percentiles = {0.5, 0.99}, histogram = true, extraTags = {"mode", "stream"})
+  public void forEachSlot(String proId, OffsetDateTime from, OffsetDateTime to, Duration slot, Consumer<SlotDTO> sink){
+    var f = from.toInstant(); var t = to.toInstant();
+    // sin sobreturnos libre = sin reservas; con sobreturnos un slot ocupado sigue libre mientras los contadores dejen lugar
+    var seats = capacities.overbooks(proId) ? claims.seats(proId, f, t) : null;
+    // grilla alineada: sale de los bitmaps del día; si no, barrido por intervalos
+    if (bitmaps.forEachSlot(proId, f, t, slot.toMillis(), (s, e, lt, booked) -> {
+      if (free(proId, seats, s, e, lt, booked)) sink.accept(slot(s, e));
+    })) return;
+
+    var open = windows.blocks(proId, f, t);
+    var busy = index.scheduled(proId, f, t);
+    SlotEngine.of(open, busy, f, t).forEachSlot(slot.toMillis(), (s, e, lt, hits, n) -> {
+      if (free(proId, seats, s, e, lt, n > 0)) sink.accept(slot(s, e));
+    });
+  }
+
+  private boolean free(String proId, SlotClaims.Seats seats, long s, long e, LocationType lt, boolean booked){
+    return !booked || seats != null && SlotsService.remaining(capacities.of(proId, lt), seats, s, e, true) > 0;
+  }
+
+  private static SlotDTO slot(long s, long e){
+    return new SlotDTO(
+        OffsetDateTime.ofInstant(Instant.ofEpochMilli(s), ZoneOffset.UTC),
+        OffsetDateTime.ofInstant(Instant.ofEpochMilli(e), ZoneOffset.UTC)
+    );
+  }
 }
@@ -0,0 +1,140 @@
+// src/main/java/com/gerardo/appointments/service/AvailabilitySummary.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.config.TimeConfig;
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.dto.MonthSummaryDTO;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.stereotype.Service;
+
+import java.time.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Per-local-day counts for a month, by interval arithmetic over the effective windows and the booked
+ * appointments (both from memory). Slots sit on the grid anchored at the window start (clipped to the month),
+ * as in {@code /slots}, and count on the local day they start in; every busy interval marks the slot index
+ * range it touches. No slot is generated.
+ */
+@Service
+public class AvailabilitySummary {
+  private final AgendaIndex index;
+  private final AvailabilityWindows windows;
+  private final Capacities capacities;
+  private final ZoneId zone;
+
+  public AvailabilitySummary(AgendaIndex index, AvailabilityWindows windows, Capacities capacities, TimeConfig time){
+    this.index = index; this.windows = windows; this.capacities = capacities; this.zone = ZoneId.of(time.availabilityZone);
+  }
+
+  @Timed(value = "appointments.slots.summary", percentiles = {0.5, 0.99}, histogram = true)
+  public MonthSummaryDTO month(String proId, YearMonth month, int slotMinutes){
+    if (slotMinutes <= 0) throw new IllegalArgumentException("slotMinutes must be positive");
+    long slotMs = Duration.ofMinutes(slotMinutes).toMillis();
+    var from = month.atDay(1).atStartOfDay(zone).toInstant();
+    var to = month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant();
+
+    var open = windows.blocks(proId, from, to).stream().filter(AvailabilityBlock::isOpen)
+                      .sorted(Comparator.comparing(AvailabilityBlock::getStartTs)).toList();
+    var busy = index.scheduled(proId, from, to).stream().sorted(Comparator.comparing(Appointment::getStartTs)).toList();
+
+    var days = new ArrayList<MonthSummaryDTO.Day>(month.lengthOfMonth());
+    for (var d = month.atDay(1); !d.isAfter(month.atEndOfMonth()); d = d.plusDays(1)) {
+      // el día local puede durar 23 o 25 horas (cambio de horario)
+      long ds = d.atStartOfDay(zone).toInstant().toEpochMilli(), de = d.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+      var c = new Counts();
+      for (var w : open) {
+        // la grilla arranca en el inicio de la ventana (o del mes), no en la medianoche: igual que /slots
+        long anchor = Math.max(w.getStartTs().toEpochMilli(), from.toEpochMilli());
+        long end = Math.min(w.getEndTs().toEpochMilli(), to.toEpochMilli());
+        if (anchor >= de || end <= ds) continue;
+        piece(c, anchor, end, ds, de, slotMs, capacities.of(proId, w.getLocationType()), busy);
+      }
+      double util = c.offered == 0 ? 0 : (double) c.bookedSeatMs / c.offered;
+      days.add(new MonthSummaryDTO.Day(d, c.slots, c.slots - c.full, c.booked, c.openMs / 60_000, c.bookedSeatMs / 60_000, util));
+    }
+    return new MonthSummaryDTO(proId, month.toString(), zone.getId(), slotMinutes, days);
+  }
+
+  static final class Counts {
+    int slots, full, booked;
+    long openMs, offered, bookedSeatMs;
+  }
+
+  /**
+   * The part of window {@code [anchor, end)} that falls on day {@code [ds, de)}: open and booked time clipped to
+   * the day, and the slots of the window grid that start on the day (the last one may end on the next day).
+   * A sweep over the bookings gives the depth of every stretch.
+   */
+  static void piece(Counts c, long anchor, long end, long ds, long de, long slotMs, int capacity, List<Appointment> busy){
+    long cs = Math.max(anchor, ds), ce = Math.min(end, de);    // tiempo del día
+    if (cs < ce) {
+      c.openMs += ce - cs;
+      c.offered += (ce - cs) * capacity;
+    }
+    // slots i = anchor + i*slot que entran en la ventana y empiezan en el día
+    long total = (end - anchor) / slotMs;
+    long first = ds <= anchor ? 0 : ceilDiv(ds - anchor, slotMs);
+    long last = Math.min(total, ceilDiv(de - anchor, slotMs)) - 1;
+    int n = (int) Math.max(0, last - first + 1);
+    c.slots += n;
+    long ss = anchor + first * slotMs, se = ss + n * slotMs;     // tramo que cubren esos slots
+
+    long lo = Math.min(cs, ss), hi = Math.max(ce, se);
+    // +1 al empezar, -1 al terminar (el fin va antes que un inicio en el mismo instante)
+    var events = new ArrayList<long[]>();
+    for (var a : busy) {
+      long s = a.getStartTs().toEpochMilli(), e = a.getEndTs().toEpochMilli();
+      if (s >= hi) break;
+      if (e <= lo) continue;
+      events.add(new long[]{Math.max(s, lo), 1});
+      events.add(new long[]{Math.min(e, hi), -1});
+    }
+    if (events.isEmpty()) return;
+    events.sort(Comparator.<long[]>comparingLong(x -> x[0]).thenComparingLong(x -> x[1]));
+
+    var bookedSlots = new Marks(ss, slotMs, n);
+    var fullSlots = new Marks(ss, slotMs, n);
+    int depth = 0;
+    long prev = lo;
+    for (var ev : events) {
+      if (ev[0] > prev && depth > 0) {
+        long bs = Math.max(prev, cs), be = Math.min(ev[0], ce);
+        if (bs < be) c.bookedSeatMs += (be - bs) * Math.min(depth, capacity);
+        long ms = Math.max(prev, ss), me = Math.min(ev[0], se);
+        if (ms < me) {
+          bookedSlots.mark(ms, me);
+          if (depth >= capacity) fullSlots.mark(ms, me);
+        }
+      }
+      depth += (int) ev[1];
+      prev = Math.max(prev, ev[0]);
+    }
+    c.booked += bookedSlots.count;
+    c.full += fullSlots.count;
+  }
+
+  /** x, d > 0 (Math.ceilDiv es de Java 18). */
+  private static long ceilDiv(long x, long d){ return (x + d - 1) / d; }
+
+  /** Slot indexes {@code [0, n)} from {@code base} touched by increasing, non-overlapping intervals inside them, each counted once. */
+  static final class Marks {
+    private final long base, slotMs;
+    private final int n;
+    private int next;      // primer índice todavía sin contar
+    int count;
+
+    Marks(long base, long slotMs, int n){ this.base = base; this.slotMs = slotMs; this.n = n; }
+
+    void mark(long s, long e){
+      int first = (int) Math.max(next, (s - base) / slotMs);
+      int last = (int) Math.min(n - 1, (e - 1 - base) / slotMs);
+      if (first > last) return;
+      count += last - first + 1;
+      next = last + 1;
+    }
+  }
+}
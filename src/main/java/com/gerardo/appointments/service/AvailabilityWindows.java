@@ -0,0 +1,137 @@
+// src/main/java/com/gerardo/appointments/service/AvailabilityWindows.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.config.TimeConfig;
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.domain.AvailabilitySlot;
+import com.gerardo.appointments.domain.LocationType;
+import com.gerardo.appointments.repo.AvailabilityBlockRepoCustom.ProRange;
+import org.springframework.stereotype.Component;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Effective availability of a professional for a range: the explicit blocks plus the weekly
+ * rules of {@code Professional.availability} expanded on the fly in {@code app.tz-availability}.
+ * Explicit blocks (OPEN or closed) are exceptions: recurring hours are cut wherever one exists.
+ */
+@Component
+public class AvailabilityWindows {
+  static final String RECURRING = "RECURRING";
+
+  private final AgendaIndex index;
+  private final ZoneId zone;
+
+  public AvailabilityWindows(AgendaIndex index, TimeConfig time){
+    this.index = index; this.zone = ZoneId.of(time.availabilityZone);
+  }
+
+  /** Same shape as the block repository query; synthetic recurring blocks have no id. */
+  public List<AvailabilityBlock> blocks(String proId, Instant from, Instant to){
+    return blocks(proId, index.blocks(proId, from, to), index.weekly(proId), from, to);
+  }
+
+  /** Same, over an agenda read elsewhere ({@link AgendaIndex#range}). */
+  public List<AvailabilityBlock> blocks(String proId, List<AvailabilityBlock> explicit, List<AvailabilitySlot> weekly,
+                                        Instant from, Instant to){
+    if (weekly.isEmpty()) return explicit;
+
+    var cuts = explicit.stream().sorted(Comparator.comparing(AvailabilityBlock::getStartTs)).toList();
+    var out = new ArrayList<>(explicit);
+    for (var w : expand(proId, weekly, from, to)) subtract(w, cuts, out);
+    // los recortes de una regla pueden quedar fuera del rango (08-20 menos 09-11 pedido a las 10 deja 08-09)
+    out.removeIf(b -> !b.getEndTs().isAfter(from) || !b.getStartTs().isBefore(to));
+    return out;
+  }
+
+  /** Location of {@code [from, to)}: the first OPEN window it touches (explicit or weekly), HOSPITAL if none. */
+  public LocationType location(String proId, Instant from, Instant to){
+    return first(blocks(proId, from, to));
+  }
+
+  /** {@link #location} of many ranges with a fixed number of reads ({@link AgendaIndex#windows}), e.g. a patient's appointments. */
+  public Map<ProRange, LocationType> locations(Collection<ProRange> ranges){
+    return locations(ranges, index.windows(ranges));
+  }
+
+  /** Same, over windows read elsewhere ({@link AgendaIndex#windows(Iterable, Iterable)}); no reads here. */
+  public Map<ProRange, LocationType> locations(Collection<ProRange> ranges, Map<String, AgendaIndex.Windows> byPro){
+    var out = new HashMap<ProRange, LocationType>();
+    for (var r : ranges) {
+      var w = byPro.get(r.professionalId());
+      if (w == null) { out.put(r, LocationType.HOSPITAL); continue; }
+      // los bloques vienen de todos los rangos del profesional: sólo los que tocan éste
+      var explicit = w.blocks().stream().filter(b -> b.getEndTs().isAfter(r.from()) && b.getStartTs().isBefore(r.to())).toList();
+      out.put(r, first(blocks(r.professionalId(), explicit, w.weekly(), r.from(), r.to())));
+    }
+    return out;
+  }
+
+  private static LocationType first(List<AvailabilityBlock> blocks){
+    return blocks.stream().filter(AvailabilityBlock::isOpen)
+                 .min(Comparator.comparing(AvailabilityBlock::getStartTs))
+                 .map(AvailabilityBlock::getLocationType).orElse(LocationType.HOSPITAL);
+  }
+
+  /**
+   * UTC midnights inside (from, to) that no OPEN window reaches: slots are phased from the start of each
+   * open run, so the range can be generated piece by piece between these cuts with the same result.
+   */
+  public List<Instant> cuts(String proId, Instant from, Instant to){
+    var open = blocks(proId, from, to).stream().filter(AvailabilityBlock::isOpen).toList();
+    var out = new ArrayList<Instant>();
+    for (var d = from.truncatedTo(ChronoUnit.DAYS).plus(1, ChronoUnit.DAYS); d.isBefore(to); d = d.plus(1, ChronoUnit.DAYS)) {
+      var at = d;
+      // una ventana que termina justo en la medianoche puede empalmar con la siguiente: tampoco se corta ahí
+      if (open.stream().noneMatch(b -> !b.getStartTs().isAfter(at) && !b.getEndTs().isBefore(at))) out.add(at);
+    }
+    return out;
+  }
+
+  /** Weekly rules as concrete windows overlapping [from, to). ZonedDateTime.of resolves DST gaps/overlaps. */
+  List<AvailabilityBlock> expand(String proId, List<AvailabilitySlot> weekly, Instant from, Instant to){
+    var out = new ArrayList<AvailabilityBlock>();
+    // un día antes por reglas que cruzan la medianoche
+    for (var d = LocalDate.ofInstant(from, zone).minusDays(1); !d.atStartOfDay(zone).toInstant().isAfter(to); d = d.plusDays(1)) {
+      for (var r : weekly) {
+        if (r.getDayOfWeek() != d.getDayOfWeek() || r.getStartLocalTime() == null || r.getEndLocalTime() == null) continue;
+        var endDate = r.getEndLocalTime().isAfter(r.getStartLocalTime()) ? d : d.plusDays(1);
+        var s = ZonedDateTime.of(d, r.getStartLocalTime(), zone).toInstant();
+        var e = ZonedDateTime.of(endDate, r.getEndLocalTime(), zone).toInstant();
+        if (!e.isAfter(from) || !s.isBefore(to) || !e.isAfter(s)) continue;
+        out.add(window(proId, s, e, r.getLocationType()));
+      }
+    }
+    return out;
+  }
+
+  private static void subtract(AvailabilityBlock w, List<AvailabilityBlock> cuts, List<AvailabilityBlock> out){
+    var cur = w.getStartTs();
+    for (var c : cuts) {
+      if (!c.getEndTs().isAfter(cur)) continue;
+      if (!c.getStartTs().isBefore(w.getEndTs())) break;
+      if (c.getStartTs().isAfter(cur)) out.add(window(w.getProfessionalId(), cur, c.getStartTs(), w.getLocationType()));
+      if (c.getEndTs().isAfter(cur)) cur = c.getEndTs();
+      if (!cur.isBefore(w.getEndTs())) return;
+    }
+    out.add(window(w.getProfessionalId(), cur, w.getEndTs(), w.getLocationType()));
+  }
+
+  private static AvailabilityBlock window(String proId, Instant s, Instant e, LocationType lt){
+    var b = new AvailabilityBlock();
+    b.setProfessionalId(proId);
+    b.setStartTs(s);
+    b.setEndTs(e);
+    b.setReason(RECURRING);
+    b.setOpen(true);
+    b.setLocationType(lt == null ? LocationType.HOSPITAL : lt);
+    return b;
+  }
+}
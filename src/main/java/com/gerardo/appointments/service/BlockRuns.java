@@ -0,0 +1,79 @@
+// src/main/java/com/gerardo/appointments/service/BlockRuns.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.domain.LocationType;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Folds availability blocks into maximal runs: OPEN blocks of the same {@code LocationType} (and closed
+ * blocks among themselves) that overlap or touch become one. The stored block that starts first survives
+ * with the run's bounds; the rest are absorbed. Works on copies, never on the index's own instances.
+ */
+final class BlockRuns {
+
+  /** Writes needed to reach the folded state, plus which block now covers each input id. */
+  record Merge(List<AvailabilityBlock> inserted, List<AvailabilityBlock> resized, List<String> removed,
+               Map<String, AvailabilityBlock> coveredBy) {
+    boolean isEmpty(){ return inserted.isEmpty() && resized.isEmpty() && removed.isEmpty(); }
+  }
+
+  private BlockRuns() {}
+
+  /** {@code stored} are persisted blocks (already folded among themselves or not); {@code incoming} are new, with ids assigned. */
+  static Merge merge(List<AvailabilityBlock> stored, List<AvailabilityBlock> incoming){
+    var persisted = new HashSet<String>();
+    var all = new ArrayList<AvailabilityBlock>(stored.size() + incoming.size());
+    for (var b : stored) { persisted.add(b.getId()); all.add(copy(b)); }
+    all.addAll(incoming);
+    // a igual inicio, primero los guardados: son los que sobreviven
+    all.sort(Comparator.comparing(AvailabilityBlock::getStartTs).thenComparing(b -> persisted.contains(b.getId()) ? 0 : 1));
+
+    var m = new Merge(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new HashMap<>());
+    var byKind = new LinkedHashMap<String, List<AvailabilityBlock>>();
+    for (var b : all) byKind.computeIfAbsent(kind(b), k -> new ArrayList<>()).add(b);
+    for (var group : byKind.values()) {
+      var run = new ArrayList<AvailabilityBlock>();
+      Instant runEnd = null;
+      for (var b : group) {
+        if (runEnd != null && b.getStartTs().isAfter(runEnd)) { close(run, runEnd, persisted, m); run.clear(); runEnd = null; }
+        run.add(b);
+        runEnd = runEnd == null || b.getEndTs().isAfter(runEnd) ? b.getEndTs() : runEnd;
+      }
+      if (!run.isEmpty()) close(run, runEnd, persisted, m);
+    }
+    return m;
+  }
+
+  private static void close(List<AvailabilityBlock> run, Instant end, Set<String> persisted, Merge m){
+    var start = run.get(0).getStartTs();
+    var survivor = run.stream().filter(b -> persisted.contains(b.getId())).findFirst().orElse(run.get(0));
+    boolean resized = !survivor.getStartTs().equals(start) || !survivor.getEndTs().equals(end);
+    survivor.setStartTs(start);
+    survivor.setEndTs(end);
+    if (!persisted.contains(survivor.getId())) m.inserted().add(survivor);
+    else if (resized) m.resized().add(survivor);
+    for (var b : run) {
+      if (b != survivor && persisted.contains(b.getId())) m.removed().add(b.getId());
+      m.coveredBy().put(b.getId(), survivor);
+    }
+  }
+
+  private static String kind(AvailabilityBlock b){
+    return b.isOpen() ? "OPEN:" + (b.getLocationType() == null ? LocationType.HOSPITAL : b.getLocationType()) : "CLOSED";
+  }
+
+  static AvailabilityBlock copy(AvailabilityBlock b){
+    var c = new AvailabilityBlock();
+    c.setId(b.getId());
+    c.setProfessionalId(b.getProfessionalId());
+    c.setStartTs(b.getStartTs());
+    c.setEndTs(b.getEndTs());
+    c.setReason(b.getReason());
+    c.setOpen(b.isOpen());
+    c.setLocationType(b.getLocationType());
+    return c;
+  }
+}
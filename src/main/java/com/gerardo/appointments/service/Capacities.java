@@ -0,0 +1,47 @@
+// src/main/java/com/gerardo/appointments/service/Capacities.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.LocationType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * How many appointments a professional takes at the same time, per location: {@code Professional.capacity},
+ * 1 (no overbooking) when unset, never above {@code app.overbook-limit}. Read from the agenda index.
+ */
+@Component
+public class Capacities {
+  private final AgendaIndex index;
+  private final AvailabilityWindows windows;
+  private final int limit;
+
+  public Capacities(AgendaIndex index, AvailabilityWindows windows, @Value("${app.overbook-limit:3}") int limit){
+    this.index = index; this.windows = windows; this.limit = Math.max(1, limit);
+  }
+
+  public int of(String proId, LocationType lt){
+    return of(index.capacity(proId), lt);
+  }
+
+  /** Same rule over a capacity map read elsewhere (e.g. {@link AgendaIndex.Range}), without touching the index. */
+  public int of(Map<LocationType, Integer> capacity, LocationType lt){
+    var c = capacity.get(lt == null ? LocationType.HOSPITAL : lt);
+    return c == null ? 1 : Math.max(1, Math.min(c, limit));
+  }
+
+  /** True if some location takes more than one appointment; otherwise every caller keeps the one-booking fast paths. */
+  public boolean overbooks(String proId){
+    if (limit == 1) return false;
+    for (var c : index.capacity(proId).values()) if (c != null && c > 1) return true;
+    return false;
+  }
+
+  /** Capacity where {@code [from, to)} falls: see {@link AvailabilityWindows#location} (as the patient view). */
+  public int at(String proId, Instant from, Instant to){
+    if (!overbooks(proId)) return 1;
+    return of(proId, windows.location(proId, from, to));
+  }
+}
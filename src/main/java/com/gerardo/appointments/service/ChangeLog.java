@@ -0,0 +1,208 @@
+// src/main/java/com/gerardo/appointments/service/ChangeLog.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.AgendaChange;
+import com.gerardo.appointments.domain.AgendaChange.Kind;
+import com.gerardo.appointments.domain.AgendaChange.Op;
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.domain.Professional;
+import com.gerardo.appointments.dto.ChangePage;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Sequence-numbered log of appointment, block and professional changes ({@code agenda_changes}), behind the
+ * {@code /changes?since=<token>} feeds. Writers append after their own write; a batch takes its
+ * numbers with one {@code $inc}. The token is the last sequence number the client has seen, and never
+ * moves past a number that is not in the log yet (see {@link #committed}).
+ */
+@Component
+public class ChangeLog {
+  static final String SEQUENCES = "sequences";
+  private static final String SEQ_ID = "agenda_changes";
+  private static final int SCAN = 1000;
+
+  private final MongoTemplate mongo;
+  private final Duration gapTimeout;
+  private final int maxLimit;
+  private long committed;            // guarded by this; hasta acá no hay huecos (cache, se recalcula desde Mongo)
+
+  public ChangeLog(MongoTemplate mongo, @Value("${app.changes.gap-timeout:PT1M}") Duration gapTimeout,
+                   @Value("${app.changes.max-limit:1000}") int maxLimit){
+    this.mongo = mongo; this.gapTimeout = gapTimeout; this.maxLimit = maxLimit;
+  }
+
+  public void appointments(Op op, List<Appointment> as){
+    var out = new ArrayList<AgendaChange>(as.size());
+    for (var a : as) {
+      var c = change(Kind.APPOINTMENT, op, a.getId(), a.getProfessionalId(), a.getStartTs(), a.getEndTs());
+      c.setPatientId(a.getPatientId());
+      out.add(c);
+    }
+    append(out);
+  }
+
+  /** What a fold / close wrote: inserted blocks are CREATED, resized ones RESIZED, absorbed ones REMOVED (id only). */
+  void blocks(String proId, BlockRuns.Merge m){
+    var out = new ArrayList<AgendaChange>();
+    m.inserted().forEach(b -> out.add(block(Op.CREATED, b)));
+    m.resized().forEach(b -> out.add(block(Op.RESIZED, b)));
+    m.removed().forEach(id -> out.add(change(Kind.BLOCK, Op.REMOVED, id, proId, null, null)));
+    append(out);
+  }
+
+  public void blockRemoved(AvailabilityBlock b){
+    append(List.of(block(Op.REMOVED, b)));
+  }
+
+  /** Weekly hours and capacity after a professional write ({@code p} null for REMOVED). */
+  public void professionalChanged(Op op, String proId, Professional p){
+    var c = change(Kind.PROFESSIONAL, op, proId, proId, null, null);
+    if (p != null) { c.setAvailability(p.getAvailability()); c.setCapacity(p.getCapacity()); }
+    append(List.of(c));
+  }
+
+  public ChangePage professional(String proId, String since, int limit){
+    return read(where("professionalId").is(proId), since, limit);
+  }
+
+  public ChangePage patient(String patientId, String since, int limit){
+    return read(where("patientId").is(patientId), since, limit);
+  }
+
+  /**
+   * Without {@code since}: no changes, just the current token (take it before the full download).
+   * Only entries up to {@link #committed} are served: a smaller number may still be in flight, so
+   * the token stops before it and the next call picks it up.
+   */
+  private ChangePage read(Criteria owner, String since, int limit){
+    if (since == null || since.isBlank()) return new ChangePage(List.of(), Long.toString(committed()), false);
+    long from = parse(since);
+    // lo anterior al primer cambio que queda ya lo borró el TTL: el cliente tiene que resincronizar
+    // (si el primero es reciente, lo de abajo todavía puede estar en vuelo)
+    var first = first();
+    if (first == null ? from < head() : from + 1 < first.getSeq() && settled(first)) {
+      throw new ResponseStatusException(HttpStatus.GONE, "sync token expired, resync");
+    }
+
+    long top = committed();
+    int n = Math.max(1, Math.min(limit, maxLimit));
+    var found = mongo.find(Query.query(owner.and("_id").gt(from).lte(top)).with(Sort.by("_id")).limit(n + 1), AgendaChange.class);
+    boolean more = found.size() > n;
+    if (more) found = found.subList(0, n);
+    long token = more ? found.get(n - 1).getSeq() : Math.max(from, top);
+    return new ChangePage(found, Long.toString(token), more);
+  }
+
+  /**
+   * Highest number with every number below it in the log. A hole means a writer took the number and has
+   * not inserted yet; once the next entry is older than {@code app.changes.gap-timeout} the writer is
+   * taken for dead and the hole is filled with an empty entry. If it was only late, its insert then
+   * collides and {@link #append} takes a new number, so nothing ever lands behind a token already handed out.
+   */
+  synchronized long committed(){
+    long c = committed;
+    var first = first();
+    // log vacío: todo venció o nunca se escribió (un número en vuelo justo en ese momento se pierde, caso que se acepta)
+    if (first == null) c = Math.max(c, head());
+    // por debajo del primero que queda, y ya asentado, todo venció por TTL: se salta sin tapar nada
+    else if (first.getSeq() - 1 > c && settled(first)) c = first.getSeq() - 1;
+    for (List<AgendaChange> page; ; ) {
+      var q = Query.query(where("_id").gt(c)).with(Sort.by("_id")).limit(SCAN);
+      q.fields().include("_id", "at");
+      page = mongo.find(q, AgendaChange.class);
+      for (var e : page) {
+        if (e.getSeq() != c + 1 && !fill(c + 1, e)) return committed = c;
+        c = e.getSeq();
+      }
+      if (page.size() < SCAN) return committed = c;
+    }
+  }
+
+  private boolean fill(long first, AgendaChange next){
+    if (!settled(next)) return false;
+    for (long s = first; s < next.getSeq(); s++) {
+      var hole = new AgendaChange();
+      hole.setSeq(s); hole.setAt(next.getAt());
+      try { mongo.insert(hole); } catch (DuplicateKeyException ignored) { }   // llegó la entrada de verdad
+    }
+    return true;
+  }
+
+  /** Numbers and inserts in one step; entries whose number was given up for dead ({@link #fill}) take a new one. */
+  private void append(List<AgendaChange> cs){
+    while (!cs.isEmpty()) {
+      var seq = mongo.findAndModify(Query.query(where("_id").is(SEQ_ID)), new Update().inc("seq", (long) cs.size()),
+          FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, SEQUENCES);
+      long next = ((Number) seq.get("seq")).longValue() - cs.size() + 1;
+      var now = Instant.now();
+      for (var c : cs) { c.setSeq(next++); c.setAt(now); }
+      try {
+        mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, AgendaChange.class).insert(cs).execute();
+        return;
+      } catch (BulkOperationException ex) {
+        if (ex.getErrors().stream().anyMatch(err -> err.getCode() != 11000)) throw ex;
+        var lost = new ArrayList<AgendaChange>();
+        for (var err : ex.getErrors()) lost.add(cs.get(err.getIndex()));
+        cs = lost;
+      }
+    }
+  }
+
+  private long head(){
+    var seq = mongo.findById(SEQ_ID, Document.class, SEQUENCES);
+    return seq == null ? 0L : ((Number) seq.get("seq")).longValue();
+  }
+
+  private AgendaChange first(){
+    var q = new Query().with(Sort.by("_id")).limit(1);
+    q.fields().include("_id", "at");
+    return mongo.findOne(q, AgendaChange.class);
+  }
+
+  private boolean settled(AgendaChange e){
+    return !e.getAt().isAfter(Instant.now().minus(gapTimeout));
+  }
+
+  private static long parse(String token){
+    try {
+      long v = Long.parseLong(token);
+      if (v >= 0) return v;
+    } catch (NumberFormatException ignored) { }
+    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid sync token: " + token);
+  }
+
+  private static AgendaChange block(Op op, AvailabilityBlock b){
+    var c = change(Kind.BLOCK, op, b.getId(), b.getProfessionalId(), b.getStartTs(), b.getEndTs());
+    c.setOpen(b.isOpen());
+    c.setLocationType(b.isOpen() ? b.getLocationType() : null);
+    return c;
+  }
+
+  private static AgendaChange change(Kind kind, Op op, String id, String proId, Instant start, Instant end){
+    var c = new AgendaChange();
+    c.setKind(kind); c.setOp(op); c.setEntityId(id); c.setProfessionalId(proId);
+    c.setStartTs(start); c.setEndTs(end);
+    return c;
+  }
+}
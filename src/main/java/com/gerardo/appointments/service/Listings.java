@@ -0,0 +1,72 @@
+// src/main/java/com/gerardo/appointments/service/Listings.java
+package com.gerardo.appointments.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gerardo.appointments.domain.Person;
+import com.gerardo.appointments.dto.CursorPage;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Keyset listings over {@code _id} for patients / professionals: {@code _id > after} with the primary-key
+ * index, so a page costs the same at any depth. With {@code fields} only those properties are read
+ * from Mongo and returned (plus {@code id}); {@link #forEach} streams a full dump through a cursor.
+ */
+@Component
+public class Listings {
+  private final MongoTemplate mongo;
+  private final ObjectMapper om;
+  private final int maxLimit;
+
+  public Listings(MongoTemplate mongo, ObjectMapper om, @Value("${app.listings.max-limit:1000}") int maxLimit){
+    this.mongo = mongo; this.om = om; this.maxLimit = maxLimit;
+  }
+
+  public <T extends Person> CursorPage<Object> page(Class<T> type, String after, int limit, List<String> fields){
+    int n = Math.max(1, Math.min(limit, maxLimit));
+    var q = query(type, fields).limit(n);
+    if (after != null && !after.isBlank()) q.addCriteria(where("id").gt(ObjectId.isValid(after) ? new ObjectId(after) : after));
+    var items = mongo.find(q, type);
+    var next = items.size() == n ? items.get(n - 1).getId() : null;
+    return new CursorPage<>(items.stream().map(x -> shape(x, fields)).toList(), next);
+  }
+
+  /** Every document in {@code _id} order, one cursor batch in memory at a time. */
+  public <T extends Person> void forEach(Class<T> type, List<String> fields, Consumer<Object> sink){
+    try (var docs = mongo.stream(query(type, fields).cursorBatchSize(500), type)) {
+      docs.forEach(x -> sink.accept(shape(x, fields)));
+    }
+  }
+
+  private <T> Query query(Class<T> type, List<String> fields){
+    var q = new Query().with(Sort.by("id"));
+    if (fields == null || fields.isEmpty()) return q;
+    var entity = mongo.getConverter().getMappingContext().getRequiredPersistentEntity(type);
+    for (var f : fields) {
+      if (entity.getPersistentProperty(f) == null)
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "unknown field: " + f);
+      q.fields().include(f);
+    }
+    return q;
+  }
+
+  // con proyección: sólo las propiedades pedidas, sin los null del resto de la entidad
+  @SuppressWarnings("unchecked")
+  private Object shape(Object x, List<String> fields){
+    if (fields == null || fields.isEmpty()) return x;
+    Map<String, Object> m = om.convertValue(x, LinkedHashMap.class);
+    m.keySet().removeIf(k -> !k.equals("id") && !fields.contains(k));
+    return m;
+  }
+}
@@ -0,0 +1,18 @@
+// src/main/java/com/gerardo/appointments/service/LoggingNotificationChannel.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.OutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/** Fallback when no {@code app.notifications.webhook-url} is set (local, tests): logs the payload and reports success. */
+@Component
+public class LoggingNotificationChannel implements NotificationChannel {
+  private static final Logger log = LoggerFactory.getLogger(LoggingNotificationChannel.class);
+
+  @Override
+  public void send(OutboxEvent e){
+    log.info("outbox {} {} -> {}", e.getType(), e.getId(), e.getPayloadJson());
+  }
+}
@@ -0,0 +1,124 @@
+// src/main/java/com/gerardo/appointments/service/NameLookup.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.Patient;
+import com.gerardo.appointments.domain.Person;
+import com.gerardo.appointments.domain.Professional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * {@code id -> fullName} for slot views. Misses are read in one {@code $in} query projected to
+ * id + fullName (no clinical free text), then kept in a bounded LRU with a TTL; unknown ids are cached
+ * too. {@code PatientController} / {@code ProfessionalController} evict on write.
+ */
+@Component
+public class NameLookup {
+
+  public record Stats(int patients, int professionals, int maxSize, long hits, long misses) {}
+
+  private final MongoTemplate mongo;
+  private final int maxEntries;
+  private final long ttlMs;
+  private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+  private final Names patients, professionals;
+
+  public NameLookup(MongoTemplate mongo,
+                    @Value("${app.names.max-entries:50000}") int maxEntries,
+                    @Value("${app.names.ttl:PT10M}") Duration ttl){
+    this.mongo = mongo; this.maxEntries = maxEntries; this.ttlMs = ttl.toMillis();
+    this.patients = new Names(Patient.class);
+    this.professionals = new Names(Professional.class);
+  }
+
+  public Map<String, String> patients(Collection<String> ids){ return patients.get(ids); }
+
+  public Map<String, String> professionals(Collection<String> ids){ return professionals.get(ids); }
+
+  public String professional(String id){ return professionals.get(List.of(id)).get(id); }
+
+  /** Professionals of a specialty as {@code id -> fullName}, same projection; also warms the cache. */
+  public Map<String, String> professionalsBySpecialty(String specialty){
+    var out = new LinkedHashMap<String, String>();
+    for (var p : mongo.find(projected(new Query(where("specialty").is(specialty))), Professional.class)) {
+      out.put(p.getId(), p.getFullName());
+    }
+    professionals.putAll(out);
+    return out;
+  }
+
+  public void evictPatient(String id){ patients.evict(id); }
+
+  public void evictProfessional(String id){ professionals.evict(id); }
+
+  public Stats stats(){
+    return new Stats(patients.size(), professionals.size(), maxEntries, hits.get(), misses.get());
+  }
+
+  private static Query projected(Query q){
+    q.fields().include("id", "fullName");
+    return q;
+  }
+
+  private record Entry(String name, long loadedAt) {}   // name null = no existe
+
+  private final class Names {
+    private final Class<? extends Person> type;
+    private final LinkedHashMap<String, Entry> entries;   // guarded by itself
+
+    Names(Class<? extends Person> type){
+      this.type = type;
+      this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest){
+          return size() > maxEntries;
+        }
+      };
+    }
+
+    Map<String, String> get(Collection<String> ids){
+      var out = new HashMap<String, String>();
+      var missing = new HashSet<String>();
+      long now = System.currentTimeMillis();
+      synchronized (entries) {
+        for (var id : ids) {
+          if (id == null) continue;
+          var e = entries.get(id);
+          if (e == null || now - e.loadedAt() > ttlMs) missing.add(id);
+          else if (e.name() != null) out.put(id, e.name());
+        }
+      }
+      hits.addAndGet(ids.size() - missing.size());
+      if (missing.isEmpty()) return out;
+
+      misses.addAndGet(missing.size());
+      var found = new HashMap<String, String>();
+      for (var p : mongo.find(projected(new Query(where("id").in(missing))), type)) found.put(p.getId(), p.getFullName());
+      synchronized (entries) {
+        for (var id : missing) entries.put(id, new Entry(found.get(id), now));
+      }
+      out.putAll(found);
+      return out;
+    }
+
+    void putAll(Map<String, String> names){
+      long now = System.currentTimeMillis();
+      synchronized (entries) { names.forEach((id, name) -> entries.put(id, new Entry(name, now))); }
+    }
+
+    void evict(String id){
+      synchronized (entries) { entries.remove(id); }
+    }
+
+    int size(){
+      synchronized (entries) { return entries.size(); }
+    }
+  }
+}
@@ -0,0 +1,9 @@
+// src/main/java/com/gerardo/appointments/service/NotificationChannel.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.OutboxEvent;
+
+/** External delivery (email/SMS/WhatsApp) used by {@link OutboxPump}; throwing means "retry later". */
+public interface NotificationChannel {
+  void send(OutboxEvent event) throws Exception;
+}
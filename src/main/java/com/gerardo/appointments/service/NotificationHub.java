@@ -1,29 +1,227 @@
 // src/main/java/com/gerardo/app/service/NotificationHub.java
 package com.gerardo.appointments.service;
 
+import com.gerardo.appointments.domain.OutboxEvent;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
 import java.io.IOException;
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SSE fan-out per patient. Publishing only enqueues: every subscriber has a bounded queue drained
+ * serially on the {@code sseExecutor}, so a slow client never blocks the caller (e.g. {@code cancel}).
+ * When a queue is full the overflow policy either drops the oldest event or disconnects the client.
+ * A send still blocked after {@code app.sse.write-timeout} (client not reading, TCP window full) disconnects
+ * the client and interrupts its drain, so a handful of stuck sockets cannot hold every executor thread.
+ * Heartbeats reap dead connections; {@code Last-Event-ID} replays from the outbox.
+ * The transport is a {@link Sink}: an {@code SseEmitter} in servlet mode, a reactive sink in the reactive profile.
+ */
+@Component
+public class NotificationHub {
+  private static final Logger log = LoggerFactory.getLogger(NotificationHub.class);
+
+  public enum Overflow { DROP_OLDEST, DISCONNECT }
 
-public final class NotificationHub {
-  private static final Map<Long, List<SseEmitter>> byPatient = new ConcurrentHashMap<>();
+  public record Stats(int subscribers, long sent, long dropped, long disconnected, long slowWrites) {}
 
-  public static SseEmitter subscribe(Long patientId){
+  /** One SSE frame; a non-null {@code comment} is a heartbeat and carries nothing else. */
+  public record Event(String id, String name, String data, String comment) {
+    static Event of(String id, String name, String data){ return new Event(id, name, data, null); }
+    static Event heartbeat(){ return new Event(null, null, null, "hb"); }
+  }
+
+  /** Where a subscriber's events are written; calls come from one drain task at a time. */
+  public interface Sink {
+    void send(Event e) throws IOException;
+    /** False when the client has no outstanding demand: draining pauses until {@link Subscription#resume()}. */
+    default boolean ready(){ return true; }
+    void complete();
+  }
+
+  public interface Subscription {
+    /** Demand came back; drains whatever queued up meanwhile. */
+    void resume();
+    /** Client went away: unregisters without counting a disconnect. */
+    void cancel();
+  }
+
+  private final Map<String, Set<Subscriber>> byPatient = new ConcurrentHashMap<>();
+  private final MongoTemplate mongo;
+  private final ExecutorService executor;
+  private final int queueCapacity, replayLimit;
+  private final Overflow overflow;
+  private final long writeTimeoutNanos;
+  private final AtomicLong sent = new AtomicLong(), dropped = new AtomicLong(), disconnected = new AtomicLong(), slowWrites = new AtomicLong();
+
+  public NotificationHub(MongoTemplate mongo, @Qualifier("sseExecutor") ExecutorService executor,
+                         @Value("${app.sse.queue-capacity:256}") int queueCapacity,
+                         @Value("${app.sse.overflow:DROP_OLDEST}") Overflow overflow,
+                         @Value("${app.sse.replay-limit:500}") int replayLimit,
+                         @Value("${app.sse.write-timeout:PT10S}") Duration writeTimeout){
+    this.mongo = mongo; this.executor = executor;
+    this.queueCapacity = queueCapacity; this.overflow = overflow; this.replayLimit = replayLimit;
+    this.writeTimeoutNanos = writeTimeout.toNanos();
+  }
+
+  public SseEmitter subscribe(String patientId, String lastEventId){
     var emitter = new SseEmitter(0L);
-    byPatient.computeIfAbsent(patientId, k -> new ArrayList<>()).add(emitter);
+    var sub = subscribe(patientId, lastEventId, new Sink() {
+      @Override public void send(Event e) throws IOException {
+        emitter.send(e.comment() != null ? SseEmitter.event().comment(e.comment())
+                                         : SseEmitter.event().id(e.id()).name(e.name()).data(e.data()));
+      }
+      @Override public void complete(){ emitter.complete(); }
+    });
     emitter.onTimeout(emitter::complete);
-    emitter.onCompletion(() -> byPatient.getOrDefault(patientId, List.of()).remove(emitter));
+    emitter.onCompletion(sub::cancel);
+    emitter.onError(ex -> sub.cancel());
     return emitter;
   }
 
-  public static void broadcastToPatient(String patientId, String event, String json){
-    var list = byPatient.getOrDefault(patientId, List.of());
-    var dead = new ArrayList<SseEmitter>();
-    for (var e : list){
-      try { e.send(SseEmitter.event().name(event).data(json)); }
-      catch (IOException ex){ dead.add(e); }
+  public Subscription subscribe(String patientId, String lastEventId, Sink sink){
+    var sub = new Subscriber(patientId, sink);
+    byPatient.computeIfAbsent(patientId, k -> ConcurrentHashMap.newKeySet()).add(sub);
+    if (lastEventId != null && !lastEventId.isBlank()) replay(sub, lastEventId);
+    return sub;
+  }
+
+  /** Non-blocking: the event is queued for every subscriber of the patient. */
+  public void broadcastToPatient(String patientId, String event, String id, String json){
+    var subs = byPatient.get(patientId);
+    if (subs == null) return;
+    for (var s : subs) s.offer(Event.of(id, event, json));
+  }
+
+  @Scheduled(fixedDelayString = "${app.sse.heartbeat-ms:15000}")
+  public void heartbeat(){
+    byPatient.values().forEach(subs -> subs.forEach(s -> s.offer(Event.heartbeat())));
+  }
+
+  /** Disconnects every subscriber whose current send has been blocked longer than the write timeout. */
+  @Scheduled(fixedDelayString = "${app.sse.write-check-ms:1000}")
+  public void reapSlowWriters(){
+    long now = System.nanoTime();
+    byPatient.values().forEach(subs -> subs.forEach(s -> {
+      long since = s.sendingSince;
+      if (since != 0 && now - since > writeTimeoutNanos) s.abort();
+    }));
+  }
+
+  public Stats stats(){
+    int n = byPatient.values().stream().mapToInt(Set::size).sum();
+    return new Stats(n, sent.get(), dropped.get(), disconnected.get(), slowWrites.get());
+  }
+
+  /** Events of this patient stored after {@code lastEventId} (outbox ids are ObjectIds, i.e. time-ordered). */
+  private void replay(Subscriber sub, String lastEventId){
+    if (!ObjectId.isValid(lastEventId)) return;
+    var q = Query.query(Criteria.where("recipientId").is(sub.patientId).and("_id").gt(new ObjectId(lastEventId)))
+                 .with(Sort.by("_id")).limit(replayLimit);
+    for (var e : mongo.find(q, OutboxEvent.class)) {
+      sub.offer(Event.of(e.getId(), e.getType(), e.getPayloadJson()));
+    }
+  }
+
+  private void remove(Subscriber sub){
+    byPatient.computeIfPresent(sub.patientId, (k, set) -> { set.remove(sub); return set.isEmpty() ? null : set; });
+  }
+
+  private final class Subscriber implements Subscription {
+    final String patientId;
+    final Sink sink;
+    final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(queueCapacity);
+    final AtomicBoolean scheduled = new AtomicBoolean(), aborted = new AtomicBoolean();
+    volatile boolean closed;
+    volatile long sendingSince;   // nanoTime del send en curso, 0 si no hay
+    private Thread drainer;       // bajo el monitor del suscriptor
+
+    Subscriber(String patientId, Sink sink){ this.patientId = patientId; this.sink = sink; }
+
+    void offer(Event ev){
+      if (closed) return;
+      while (!queue.offer(ev)) {
+        if (overflow == Overflow.DISCONNECT) { close(); return; }
+        if (queue.poll() != null) dropped.incrementAndGet();
+      }
+      if (scheduled.compareAndSet(false, true)) executor.execute(this::drain);
+    }
+
+    @Override public void resume(){
+      if (!closed && !queue.isEmpty() && scheduled.compareAndSet(false, true)) executor.execute(this::drain);
+    }
+
+    @Override public void cancel(){
+      closed = true;
+      queue.clear();
+      remove(this);
+    }
+
+    /** Runs on the executor, one drain per subscriber at a time (SseEmitter is not thread-safe). */
+    void drain(){
+      synchronized (this) { drainer = Thread.currentThread(); }
+      try {
+        Event ev;
+        while (!closed && sink.ready() && (ev = queue.poll()) != null) {
+          sendingSince = System.nanoTime();
+          sink.send(ev);
+          sendingSince = 0;
+          sent.incrementAndGet();
+        }
+      } catch (IOException | RuntimeException ex) {
+        close();
+      } finally {
+        synchronized (this) { drainer = null; sendingSince = 0; }
+        // una interrupción de abort() que llegó con el send ya terminado no debe quedar en el hilo del pool
+        Thread.interrupted();
+        // el sink se cierra acá, en el hilo que escribía: cerrarlo desde abort() esperaría al mismo send trabado
+        if (aborted.compareAndSet(true, false)) complete();
+        scheduled.set(false);
+        if (sink.ready()) resume();
+      }
+    }
+
+    /** Write timeout: unregisters now and interrupts the blocked send; the drain completes the sink when it returns. */
+    void abort(){
+      if (closed) return;
+      closed = true;
+      disconnected.incrementAndGet();
+      slowWrites.incrementAndGet();
+      queue.clear();
+      remove(this);
+      aborted.set(true);
+      boolean draining;
+      synchronized (this) { draining = drainer != null; if (draining) drainer.interrupt(); }
+      // el send terminó justo antes: no hay drain que lo cierre
+      if (!draining && aborted.compareAndSet(true, false)) complete();
+    }
+
+    void close(){
+      if (closed) return;
+      closed = true;
+      disconnected.incrementAndGet();
+      queue.clear();
+      remove(this);
+      complete();
+    }
+
+    private void complete(){
+      try { sink.complete(); } catch (RuntimeException ex) { log.debug("sse complete: {}", ex.getMessage()); }
     }
-    list.removeAll(dead);
   }
 }
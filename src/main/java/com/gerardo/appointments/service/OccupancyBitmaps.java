@@ -0,0 +1,445 @@
+// src/main/java/com/gerardo/appointments/service/OccupancyBitmaps.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.AgendaBitmap;
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.LocationType;
+import com.gerardo.appointments.repo.ProfessionalRepo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Per professional and UTC day, "open" (per location) and "booked" bitmaps of {@code app.bitmaps.granule-minutes}
+ * granules, persisted in {@code agenda_bitmaps} and cached in memory (LRU). Writes rebuild only the days they touch
+ * from {@link AgendaIndex} / {@link AvailabilityWindows}; reads turn into word-level scans. Days whose windows don't
+ * sit on the grid (or overlap/touch within a location) are flagged non-exact and callers fall back to {@link SlotEngine}.
+ * A stored day is used only if it carries the current {@link AgendaVersions} value; days rebuilt on a read are
+ * written back in one bulk on the {@code bitmapsExecutor}, off the request thread. Days in memory are checked too:
+ * once the version moves without this instance (another one wrote), what it held from before is rebuilt.
+ */
+@Component
+public class OccupancyBitmaps {
+  private static final Logger log = LoggerFactory.getLogger(OccupancyBitmaps.class);
+  private static final LocationType[] LOCATIONS = LocationType.values();
+
+  public record Stats(int size, int maxSize, long hits, long loads, long builds, long fallbacks) {}
+
+  /** Last agenda version this instance saw for a professional; days in memory from {@code floor} up are good. */
+  private record Seen(long version, long floor) {}
+
+  /** Receives slots in start order; {@code booked} = some SCHEDULED appointment overlaps the slot. */
+  @FunctionalInterface
+  public interface SlotVisitor {
+    void visit(long startMs, long endMs, LocationType locationType, boolean booked);
+  }
+
+  private final AgendaIndex index;
+  private final AvailabilityWindows windows;
+  private final MongoTemplate mongo;
+  private final ProfessionalRepo pros;
+  private final AgendaVersions versions;
+  private final ExecutorService writer;
+  private final int granuleMinutes, perDay, words, maxDays, pastDays, futureDays;
+  private final long granuleMs;
+  private final Object[] locks = new Object[64];
+  private final AtomicLong hits = new AtomicLong(), loads = new AtomicLong(), builds = new AtomicLong(), fallbacks = new AtomicLong();
+  private final LinkedHashMap<String, AgendaBitmap> days;   // guarded by itself
+  private final Map<String, Seen> seen = new ConcurrentHashMap<>();
+
+  public OccupancyBitmaps(AgendaIndex index, AvailabilityWindows windows, MongoTemplate mongo, ProfessionalRepo pros,
+                          AgendaVersions versions, @Qualifier("bitmapsExecutor") ExecutorService writer,
+                          @Value("${app.bitmaps.granule-minutes:5}") int granuleMinutes,
+                          @Value("${app.bitmaps.max-days:20000}") int maxDays,
+                          @Value("${app.bitmaps.rebuild-past-days:7}") int pastDays,
+                          @Value("${app.bitmaps.rebuild-future-days:90}") int futureDays){
+    if (granuleMinutes <= 0 || 1440 % granuleMinutes != 0)
+      throw new IllegalArgumentException("app.bitmaps.granule-minutes must divide a day");
+    this.index = index; this.windows = windows; this.mongo = mongo; this.pros = pros; this.versions = versions; this.writer = writer;
+    this.granuleMinutes = granuleMinutes; this.maxDays = maxDays; this.pastDays = pastDays; this.futureDays = futureDays;
+    this.granuleMs = granuleMinutes * 60_000L;
+    this.perDay = 1440 / granuleMinutes;
+    this.words = (perDay + 63) >>> 6;
+    for (int i = 0; i < locks.length; i++) locks[i] = new Object();
+    this.days = new LinkedHashMap<>(256, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<String, AgendaBitmap> eldest){
+        return size() > OccupancyBitmaps.this.maxDays;
+      }
+    };
+  }
+
+  // ---------- lecturas ----------
+
+  /**
+   * Slots of {@code slotMs} over [from, to) in start order, phased from the start of each open run like
+   * {@link SlotEngine#forEachSlot}. Returns false without emitting anything when the bitmaps can't answer
+   * exactly: bounds or slot off the grid, or some day flagged non-exact.
+   */
+  public boolean forEachSlot(String proId, Instant from, Instant to, long slotMs, SlotVisitor visitor){
+    long f = from.toEpochMilli(), t = to.toEpochMilli();
+    if (slotMs <= 0 || slotMs % granuleMs != 0 || f % granuleMs != 0 || t % granuleMs != 0 || f >= t) {
+      fallbacks.incrementAndGet();
+      return false;
+    }
+    long fg = f / granuleMs, tg = t / granuleMs, k = slotMs / granuleMs;
+    long firstDay = Math.floorDiv(fg, perDay);
+    var bms = load(proId, firstDay, Math.floorDiv(tg - 1, perDay));
+    for (var b : bms) {
+      if (!b.isExact()) { fallbacks.incrementAndGet(); return false; }
+    }
+
+    // corridas abiertas {start, end, location} en granules absolutos; una ventana que cruza la medianoche sigue la corrida
+    var runs = new ArrayList<long[]>();
+    for (var lt : LOCATIONS) {
+      long[] cur = null;
+      for (int d = 0; d < bms.size(); d++) {
+        var bits = bms.get(d).getOpen() == null ? null : bms.get(d).getOpen().get(lt);
+        if (bits == null) continue;
+        long base = (firstDay + d) * perDay;
+        int lo = (int) Math.max(fg - base, 0), hi = (int) Math.min(tg - base, perDay);
+        int s = nextSet(bits, lo, hi);
+        while (s < hi) {
+          int e = nextClear(bits, s, hi);
+          if (s == 0 && cur != null && cur[1] == base && carried(bms.get(d), lt)) cur[1] = base + e;
+          else runs.add(cur = new long[]{base + s, base + e, lt.ordinal()});
+          s = nextSet(bits, e, hi);
+        }
+      }
+    }
+    runs.sort(Comparator.<long[]>comparingLong(r -> r[0]).thenComparingLong(r -> r[2]));
+
+    for (var r : runs) {
+      for (long s = r[0]; s + k <= r[1]; s += k) {
+        visitor.visit(s * granuleMs, (s + k) * granuleMs, LOCATIONS[(int) r[2]], anyBooked(bms, firstDay, s, s + k));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether [from, to) touches a booked granule, answered only from days already in memory.
+   * Null when the range is off the grid or a day isn't cached (the caller asks {@link AgendaIndex}).
+   */
+  public Boolean bookedBetween(String proId, Instant from, Instant to){
+    long f = from.toEpochMilli(), t = to.toEpochMilli();
+    if (f % granuleMs != 0 || t % granuleMs != 0 || f >= t) return null;
+    long fg = f / granuleMs, tg = t / granuleMs;
+    long firstDay = Math.floorDiv(fg, perDay), lastDay = Math.floorDiv(tg - 1, perDay);
+    var bms = new ArrayList<AgendaBitmap>();
+    long floor = floor(proId);
+    synchronized (days) {
+      for (long d = firstDay; d <= lastDay; d++) {
+        var b = days.get(key(proId, d));
+        if (b == null || b.getAgendaVersion() < floor) return null;
+        bms.add(b);
+      }
+    }
+    hits.incrementAndGet();
+    return anyBooked(bms, firstDay, fg, tg);
+  }
+
+  public Stats stats(){
+    synchronized (days) {
+      return new Stats(days.size(), maxDays, hits.get(), loads.get(), builds.get(), fallbacks.get());
+    }
+  }
+
+  // ---------- escrituras ----------
+
+  /**
+   * Rebuilds in memory every UTC day touched by [from, to); call after the index has been updated. The days go to
+   * Mongo through {@link #store} with the version {@link AgendaVersions#bump} returns: rebuilt before the bump, a
+   * reader that sees the new version (and ETag) never gets the old days.
+   */
+  public List<AgendaBitmap> onChanged(String proId, Instant from, Instant to){
+    long first = Math.floorDiv(from.toEpochMilli(), granuleMs * perDay);
+    long last = Math.floorDiv(to.toEpochMilli() - 1, granuleMs * perDay);
+    long v = seenVersion(proId);
+    var built = new ArrayList<AgendaBitmap>();
+    for (long d = first; d <= last; d++) built.add(rebuild(proId, d, v));
+    return built;
+  }
+
+  /** Same for the days of a set of appointments of one professional (each day once), e.g. a batch the archive moved. */
+  public List<AgendaBitmap> onChanged(String proId, Collection<Appointment> as){
+    var touched = new TreeSet<Long>();
+    long dayMs = granuleMs * perDay;
+    for (var a : as) {
+      long last = Math.floorDiv(a.getEndTs().toEpochMilli() - 1, dayMs);
+      for (long d = Math.floorDiv(a.getStartTs().toEpochMilli(), dayMs); d <= last; d++) touched.add(d);
+    }
+    long v = seenVersion(proId);
+    var built = new ArrayList<AgendaBitmap>(touched.size());
+    for (long d : touched) built.add(rebuild(proId, d, v));
+    return built;
+  }
+
+  /**
+   * Stamps the days {@link #onChanged} rebuilt with {@code version}, the one the write got from
+   * {@link AgendaVersions#bump}, and stores them. The write touched nothing else, so the other stored days of the
+   * previous version move to this one instead of being rebuilt on the next read.
+   */
+  public void store(String proId, List<AgendaBitmap> built, long version){
+    var current = new ArrayList<AgendaBitmap>(built.size());
+    synchronized (days) {
+      for (var b : built) {
+        b.setAgendaVersion(version);
+        if (days.get(b.getId()) == b) current.add(b);   // otra escritura lo volvió a construir después: guarda la suya
+      }
+    }
+    wrote(proId, version);
+    persist(current);
+    mongo.updateMulti(query(where("professionalId").is(proId).and("agendaVersion").is(version - 1)),
+                      new Update().set("agendaVersion", version), AgendaBitmap.class);
+  }
+
+  /** Drops every day of the professional (weekly rules changed); they are rebuilt on the next read. */
+  public void invalidate(String proId){
+    var prefix = proId + ":";
+    synchronized (days) { days.keySet().removeIf(k -> k.startsWith(prefix)); }
+    mongo.remove(query(where("professionalId").is(proId)), AgendaBitmap.class);
+  }
+
+  /** Regenerates from the source collections the days in [today - past, today + future] of every professional. */
+  @Scheduled(cron = "${app.bitmaps.rebuild-cron:0 30 3 * * *}")
+  public void rebuildAll(){
+    int n = 0;
+    for (var p : pros.findAll()) n += rebuild(p.getId());
+    log.info("agenda bitmaps rebuilt: {} days", n);
+  }
+
+  public int rebuild(String proId){
+    index.invalidate(proId);   // la agenda se vuelve a leer de appointments / availability_blocks
+    invalidate(proId);
+    long today = LocalDate.now(ZoneOffset.UTC).toEpochDay();
+    long v = versions.current(proId);
+    observed(proId, v);
+    var built = new ArrayList<AgendaBitmap>(pastDays + futureDays + 1);
+    for (long d = today - pastDays; d <= today + futureDays; d++) built.add(rebuild(proId, d, v));
+    persist(built);
+    return built.size();
+  }
+
+  // ---------- internals ----------
+
+  private List<AgendaBitmap> load(String proId, long firstDay, long lastDay){
+    long v = versions.current(proId);   // antes de leer / construir: una escritura que llegue después lo deja viejo
+    observed(proId, v);
+    long floor = floor(proId);
+    var out = new AgendaBitmap[(int) (lastDay - firstDay + 1)];
+    var missing = new ArrayList<String>();
+    synchronized (days) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = days.get(key(proId, firstDay + i));
+        if (out[i] != null && out[i].getAgendaVersion() < floor) out[i] = null;   // de antes de una escritura ajena
+        if (out[i] == null) missing.add(LocalDate.ofEpochDay(firstDay + i).toString());
+      }
+    }
+    if (missing.isEmpty()) { hits.incrementAndGet(); return Arrays.asList(out); }
+
+    loads.incrementAndGet();
+    var stored = mongo.find(query(where("professionalId").is(proId).and("day").in(missing)), AgendaBitmap.class);
+    for (var b : stored) {
+      // grilla vieja o agenda que cambió desde que se guardó (otra instancia, el archivo): se reconstruye
+      if (b.getGranuleMinutes() != granuleMinutes || b.getAgendaVersion() != v) continue;
+      int i = (int) (LocalDate.parse(b.getDay()).toEpochDay() - firstDay);
+      synchronized (days) {
+        var held = days.get(b.getId());   // una escritura concurrente gana
+        if (held == null || held.getAgendaVersion() < floor) days.put(b.getId(), held = b);
+        out[i] = held;
+      }
+    }
+    var built = new ArrayList<AgendaBitmap>();
+    for (int i = 0; i < out.length; i++) {
+      if (out[i] == null) built.add(out[i] = rebuild(proId, firstDay + i, v));
+    }
+    if (!built.isEmpty()) writer.execute(() -> persistQuietly(built));
+    return Arrays.asList(out);
+  }
+
+  // ---------- versiones vistas ----------
+
+  /** A version read from {@link AgendaVersions}: if it moved since the last one seen, nothing older is trusted. */
+  private void observed(String proId, long v){
+    seen.merge(proId, new Seen(v, v), (old, nu) -> v > old.version() ? nu : old);
+  }
+
+  /**
+   * The version this instance's own write got. Right after the last one seen, days of the previous version are
+   * still good (the write rebuilt the ones it touched); with a gap, another instance wrote in between.
+   */
+  private void wrote(String proId, long v){
+    seen.merge(proId, new Seen(v, v - 1), (old, nu) ->
+        v <= old.version() ? old : v - 1 == old.version() ? new Seen(v, old.floor()) : nu);
+  }
+
+  private long seenVersion(String proId){
+    var s = seen.get(proId);
+    return s == null ? Long.MIN_VALUE : s.version();
+  }
+
+  private long floor(String proId){
+    var s = seen.get(proId);
+    return s == null ? Long.MIN_VALUE : s.floor();
+  }
+
+  private AgendaBitmap rebuild(String proId, long epochDay, long version){
+    var key = key(proId, epochDay);
+    synchronized (locks[(key.hashCode() & 0x7fffffff) % locks.length]) {
+      var b = build(proId, epochDay);
+      b.setAgendaVersion(version);
+      synchronized (days) { days.put(key, b); }
+      return b;
+    }
+  }
+
+  /**
+   * One unordered bulk of upserts by id. A stored copy with a newer agenda version is kept: its filter misses,
+   * the upsert collides on {@code _id}, and that is the only error expected.
+   */
+  private void persist(List<AgendaBitmap> bs){
+    if (bs.isEmpty()) return;
+    var ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, AgendaBitmap.class);
+    for (var b : bs) {
+      ops.replaceOne(query(where("_id").is(b.getId()).and("agendaVersion").not().gt(b.getAgendaVersion())), b,
+                     FindAndReplaceOptions.options().upsert());
+    }
+    try {
+      ops.execute();
+    } catch (BulkOperationException ex) {
+      if (ex.getErrors().stream().anyMatch(err -> err.getCode() != 11000)) throw ex;
+    }
+  }
+
+  private void persistQuietly(List<AgendaBitmap> bs){
+    try { persist(bs); }
+    catch (RuntimeException e) { log.warn("agenda bitmaps: could not store {} days", bs.size(), e); }   // sólo se pierde la copia
+  }
+
+  private AgendaBitmap build(String proId, long epochDay){
+    builds.incrementAndGet();
+    long base = epochDay * perDay;
+    long dayStart = base * granuleMs, dayEnd = (base + perDay) * granuleMs;
+    var from = Instant.ofEpochMilli(dayStart); var to = Instant.ofEpochMilli(dayEnd);
+
+    var open = new EnumMap<LocationType, long[]>(LocationType.class);
+    var carried = EnumSet.noneOf(LocationType.class);
+    boolean exact = true;
+    for (var w : windows.blocks(proId, from, to)) {
+      if (!w.isOpen()) continue;
+      var lt = w.getLocationType() == null ? LocationType.HOSPITAL : w.getLocationType();
+      long s = Math.max(w.getStartTs().toEpochMilli(), dayStart), e = Math.min(w.getEndTs().toEpochMilli(), dayEnd);
+      if (s >= e) continue;
+      if (w.getStartTs().toEpochMilli() < dayStart) carried.add(lt);
+      if (s % granuleMs != 0 || e % granuleMs != 0) exact = false;
+      int gs = (int) (ceilDiv(s, granuleMs) - base), ge = (int) (Math.floorDiv(e, granuleMs) - base);
+      var bits = open.computeIfAbsent(lt, x -> new long[words]);
+      // dos ventanas de la misma ubicación que se pisan o se tocan ya no arrancan cada una su propia grilla
+      if (any(bits, Math.max(gs - 1, 0), Math.min(ge + 1, perDay))) exact = false;
+      set(bits, gs, ge);
+    }
+
+    var booked = new long[words];
+    for (var a : index.scheduled(proId, from, to)) {
+      long s = Math.max(a.getStartTs().toEpochMilli(), dayStart), e = Math.min(a.getEndTs().toEpochMilli(), dayEnd);
+      set(booked, (int) (Math.floorDiv(s, granuleMs) - base), (int) (ceilDiv(e, granuleMs) - base));
+    }
+
+    var b = new AgendaBitmap();
+    b.setId(key(proId, epochDay));
+    b.setProfessionalId(proId);
+    b.setDay(LocalDate.ofEpochDay(epochDay).toString());
+    b.setGranuleMinutes(granuleMinutes);
+    b.setOpen(open);
+    b.setBooked(booked);
+    b.setCarried(carried);
+    b.setExact(exact);
+    b.setBuiltAt(Instant.now());
+    return b;
+  }
+
+  private boolean anyBooked(List<AgendaBitmap> bms, long firstDay, long from, long to){
+    for (long g = from; g < to; ) {
+      long day = Math.floorDiv(g, perDay), base = day * perDay;
+      int hi = (int) Math.min(to - base, perDay);
+      if (any(bms.get((int) (day - firstDay)).getBooked(), (int) (g - base), hi)) return true;
+      g = base + hi;
+    }
+    return false;
+  }
+
+  private static boolean carried(AgendaBitmap b, LocationType lt){
+    return b.getCarried() != null && b.getCarried().contains(lt);
+  }
+
+  private static String key(String proId, long epochDay){
+    return AgendaBitmap.key(proId, LocalDate.ofEpochDay(epochDay).toString());
+  }
+
+  private static long ceilDiv(long x, long y){ return -Math.floorDiv(-x, y); }
+
+  // ---------- bits: máscaras por palabra de 64 granules ----------
+
+  static void set(long[] bits, int from, int to){
+    if (from >= to) return;
+    int w0 = from >>> 6, w1 = (to - 1) >>> 6;
+    long m0 = -1L << from, m1 = -1L >>> -to;
+    if (w0 == w1) { bits[w0] |= m0 & m1; return; }
+    bits[w0] |= m0;
+    for (int w = w0 + 1; w < w1; w++) bits[w] = -1L;
+    bits[w1] |= m1;
+  }
+
+  static boolean any(long[] bits, int from, int to){
+    if (from >= to) return false;
+    int w0 = from >>> 6, w1 = (to - 1) >>> 6;
+    long m0 = -1L << from, m1 = -1L >>> -to;
+    if (w0 == w1) return (bits[w0] & m0 & m1) != 0;
+    if ((bits[w0] & m0) != 0) return true;
+    for (int w = w0 + 1; w < w1; w++) if (bits[w] != 0) return true;
+    return (bits[w1] & m1) != 0;
+  }
+
+  /** First set bit in [from, limit), or limit. */
+  static int nextSet(long[] bits, int from, int limit){
+    if (from >= limit) return limit;
+    int w = from >>> 6;
+    long word = bits[w] & (-1L << from);
+    while (word == 0) {
+      if (++w << 6 >= limit) return limit;
+      word = bits[w];
+    }
+    return Math.min((w << 6) + Long.numberOfTrailingZeros(word), limit);
+  }
+
+  /** First clear bit in [from, limit), or limit. */
+  static int nextClear(long[] bits, int from, int limit){
+    if (from >= limit) return limit;
+    int w = from >>> 6;
+    long word = ~bits[w] & (-1L << from);
+    while (word == 0) {
+      if (++w << 6 >= limit) return limit;
+      word = ~bits[w];
+    }
+    return Math.min((w << 6) + Long.numberOfTrailingZeros(word), limit);
+  }
+}
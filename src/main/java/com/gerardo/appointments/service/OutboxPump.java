@@ -1,24 +1,197 @@
 // src/main/java/com/gerardo/app/service/OutboxPump.java
 package com.gerardo.appointments.service;
 
-import com.gerardo.appointments.repo.OutboxEventRepository;
+import com.gerardo.appointments.domain.OutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Outbox dispatcher. Each run claims bounded batches with a lease ({@code claimedBy}, {@code dueAt} pushed to the
+ * lease end),
+ * so several app instances never dispatch the same event twice while the lease holds; delivers them in
+ * parallel through {@link NotificationChannel}; then closes the batch with one bulk write
+ * (processed ones marked, failed ones released with exponential backoff). Every closing update is filtered
+ * by the batch's lease token: a run whose lease expired (and was re-claimed elsewhere) changes nothing.
+ * An event that fails {@code app.outbox.max-attempts} times is dead-lettered in place ({@code deadAt}):
+ * out of the pending set, kept (no TTL) until {@link #retryDead} puts it back.
+ */
 @Component
 public class OutboxPump {
-  private final OutboxEventRepository repo;
-  public OutboxPump(OutboxEventRepository r){ this.repo=r; }
-
-  @Scheduled(fixedDelay = 30000)
-  public void pumpCancelled(){
-    var events = repo.findByProcessedAtIsNullAndType("AppointmentCancelled");
-    events.forEach(e -> {
-      // TODO: send real email/SMS/WhatsApp here with e.getPayloadJson()
-      e.setProcessedAt(Instant.now());
-      repo.save(e);
-    });
+  private static final Logger log = LoggerFactory.getLogger(OutboxPump.class);
+
+  public record Stats(long dispatched, long failed, long backlog, long dead, Duration lag, Duration lastRun) {}
+
+  private final MongoTemplate mongo;
+  private final NotificationChannel channel;
+  private final ExecutorService executor;
+  private final String instanceId;
+  private final List<String> types;
+  private final int batchSize, maxBatchesPerRun, maxAttempts;
+  private final Duration lease, baseBackoff, maxBackoff;
+  private final AtomicLong dispatched = new AtomicLong(), failed = new AtomicLong(), deadLettered = new AtomicLong(), leaseLost = new AtomicLong();
+  private volatile Duration lastRun = Duration.ZERO;
+
+  public OutboxPump(MongoTemplate mongo, NotificationChannel channel, @Qualifier("outboxExecutor") ExecutorService executor,
+                    @Value("${app.outbox.instance-id:#{T(java.util.UUID).randomUUID().toString()}}") String instanceId,
+                    @Value("${app.outbox.types:AppointmentCancelled}") List<String> types,
+                    @Value("${app.outbox.batch-size:200}") int batchSize,
+                    @Value("${app.outbox.max-batches-per-run:20}") int maxBatchesPerRun,
+                    @Value("${app.outbox.lease:PT2M}") Duration lease,
+                    @Value("${app.outbox.base-backoff:PT30S}") Duration baseBackoff,
+                    @Value("${app.outbox.max-backoff:PT1H}") Duration maxBackoff,
+                    @Value("${app.outbox.max-attempts:10}") int maxAttempts){
+    this.mongo = mongo; this.channel = channel; this.executor = executor; this.instanceId = instanceId;
+    this.types = types; this.batchSize = batchSize; this.maxBatchesPerRun = maxBatchesPerRun; this.maxAttempts = Math.max(1, maxAttempts);
+    this.lease = lease; this.baseBackoff = baseBackoff; this.maxBackoff = maxBackoff;
+  }
+
+  @Scheduled(fixedDelayString = "${app.outbox.poll-ms:30000}")
+  public void pump(){
+    long t0 = System.nanoTime();
+    for (int i = 0; i < maxBatchesPerRun; i++) {
+      var token = instanceId + ":" + UUID.randomUUID();
+      var batch = claimBatch(token);
+      if (batch.isEmpty()) break;
+      dispatch(batch, token);
+      if (batch.size() < batchSize) break;
+    }
+    lastRun = Duration.ofNanos(System.nanoTime() - t0);
+  }
+
+  /**
+   * Undelivered events written before {@code pending}/{@code dueAt} existed join the pending set, once.
+   * The filter is served by the {@code processedAt} TTL index (a missing field is indexed as null).
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void adoptLegacy(){
+    var r = mongo.updateMulti(Query.query(Criteria.where("processedAt").is(null).and("pending").exists(false)),
+        new Update().set("pending", true).set("dueAt", Instant.now()), OutboxEvent.class);
+    if (r.getModifiedCount() > 0) log.info("outbox: {} events from before the pending flag queued for dispatch", r.getModifiedCount());
+  }
+
+  public Stats stats(){
+    return new Stats(dispatched.get(), failed.get(), backlog(), dead(), lag(), lastRun);
+  }
+
+  public long dispatched(){ return dispatched.get(); }
+  public long failed(){ return failed.get(); }
+  public long deadLettered(){ return deadLettered.get(); }
+  /** Closing updates that matched nothing: the lease had expired and another run owned the event. */
+  public long leaseLost(){ return leaseLost.get(); }
+
+  public long dead(){
+    return mongo.count(deadLetters(), OutboxEvent.class);
+  }
+
+  /** Dead letters, oldest first. */
+  public List<OutboxEvent> deadLetters(int limit){
+    return mongo.find(deadLetters().with(Sort.by("deadAt")).limit(limit), OutboxEvent.class);
+  }
+
+  /** Back to pending with a fresh attempt count; false if {@code id} is not a dead letter. */
+  public boolean retryDead(String id){
+    var r = mongo.updateFirst(Query.query(Criteria.where("_id").is(id).and("deadAt").exists(true)),
+        new Update().unset("deadAt").unset("processedAt").set("pending", true).set("dueAt", Instant.now()).set("attempts", 0),
+        OutboxEvent.class);
+    return r.getModifiedCount() > 0;
+  }
+
+  public long backlog(){
+    return mongo.count(pending(), OutboxEvent.class);
+  }
+
+  /** Age of the oldest unprocessed event. */
+  public Duration lag(){
+    var q = pending().with(Sort.by("createdAt")).limit(1);
+    q.fields().include("createdAt");
+    var oldest = mongo.findOne(q, OutboxEvent.class);
+    return oldest == null ? Duration.ZERO : Duration.between(oldest.getCreatedAt(), Instant.now());
+  }
+
+  /** Matches the partial index {@code pending_type_due} only with {@code pending: true} in the filter. */
+  private Query pending(){
+    return Query.query(Criteria.where("pending").is(true).and("type").in(types));
+  }
+
+  private static Query deadLetters(){
+    return Query.query(Criteria.where("deadAt").exists(true));
+  }
+
+  /**
+   * Candidates are leased with one conditional multi-update, then read back by lease token. Claimable = pending and
+   * due: {@code dueAt} is the creation, the end of a lapsed lease or the end of a backoff, so one range on the index.
+   */
+  private List<OutboxEvent> claimBatch(String token){
+    var now = Instant.now();
+    var claimable = Criteria.where("pending").is(true).and("type").in(types).and("dueAt").lte(now);
+
+    var candidates = Query.query(claimable).with(Sort.by("dueAt")).limit(batchSize);
+    candidates.fields().include("_id");
+    var ids = mongo.find(candidates, OutboxEvent.class).stream().map(OutboxEvent::getId).toList();
+    if (ids.isEmpty()) return List.of();
+
+    // la condición se vuelve a evaluar en el update: si otra instancia ganó, esos docs no matchean
+    mongo.updateMulti(Query.query(new Criteria().andOperator(Criteria.where("_id").in(ids), claimable)),
+        new Update().set("claimedBy", token).set("dueAt", now.plus(lease)), OutboxEvent.class);
+    return mongo.find(Query.query(Criteria.where("claimedBy").is(token)), OutboxEvent.class);
+  }
+
+  private void dispatch(List<OutboxEvent> batch, String token){
+    var ok = new ConcurrentLinkedQueue<String>();
+    var ko = new ConcurrentLinkedQueue<Map.Entry<OutboxEvent, String>>();
+    CompletableFuture.allOf(batch.stream().map(e -> CompletableFuture.runAsync(() -> {
+      try { channel.send(e); ok.add(e.getId()); }
+      catch (Exception ex) { ko.add(Map.entry(e, String.valueOf(ex.getMessage()))); }
+    }, executor)).toArray(CompletableFuture[]::new)).join();
+
+    // cada cierre exige que el lease siga siendo nuestro: si venció y otra corrida lo tomó, el estado es de ella
+    var now = Instant.now();
+    var ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, OutboxEvent.class);
+    if (!ok.isEmpty()) {
+      ops.updateMulti(Query.query(Criteria.where("_id").in(ok).and("claimedBy").is(token)),
+          new Update().set("processedAt", now).set("pending", false).unset("claimedBy"));
+    }
+    int dead = 0;
+    for (var f : ko) {
+      var e = f.getKey();
+      var close = new Update().inc("attempts", 1).set("lastError", f.getValue()).unset("claimedBy");
+      if (e.getAttempts() + 1 >= maxAttempts) { close.set("deadAt", now).set("pending", false); dead++; }
+      else close.set("dueAt", now.plus(backoff(e.getAttempts() + 1)));
+      ops.updateOne(Query.query(Criteria.where("_id").is(e.getId()).and("claimedBy").is(token)), close);
+    }
+    int lost = batch.size() - ops.execute().getMatchedCount();
+
+    dispatched.addAndGet(ok.size());
+    failed.addAndGet(ko.size());
+    deadLettered.addAndGet(dead);
+    leaseLost.addAndGet(lost);
+    if (!ko.isEmpty()) log.warn("outbox: {} delivered, {} will be retried, {} dead-lettered", ok.size(), ko.size() - dead, dead);
+    if (dead > 0) log.error("outbox: {} events gave up after {} attempts (GET /api/admin/outbox/dead)", dead, maxAttempts);
+    if (lost > 0) log.warn("outbox: lease expired for {} events of this batch; their state was left to the run that re-claimed them", lost);
+  }
+
+  private Duration backoff(int attempts){
+    var d = baseBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+    return d.compareTo(maxBackoff) > 0 ? maxBackoff : d;
   }
 }
@@ -0,0 +1,178 @@
+// src/main/java/com/gerardo/appointments/service/SlotCache.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.dto.SlotViewDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Materialized professional slot views per (professional, UTC day, slotMinutes), LRU-bounded with a TTL.
+ * Entries are kept per professional in day order, so a write drops the days it touches without scanning the
+ * cache; the LRU order runs across professionals. A load that raced with a write of the same professional is not stored.
+ * Also remembers which professionals / slot sizes are being asked for, so the warmer knows what to refill.
+ */
+@Component
+public class SlotCache {
+
+  /** Slots starting in the day; {@code alignedStart}: no window crosses the day's start off the slot grid. */
+  public record Day(List<SlotViewDTO> slots, boolean alignedStart) {}
+
+  public record Stats(int size, int maxSize, long hits, long misses, int horizonDays, long lastWarmupMs, long lastWarmupDays) {}
+
+  private record Key(String proId, long epochDay, int slotMinutes) {}
+  private record Entry(Day day, long loadedAt) {}
+
+  private static final long DAY_MS = 86_400_000L;
+
+  private final boolean enabled;
+  private final int horizonDays, maxEntries;
+  private final long ttlMs;
+  private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+  private final AtomicLongArray generations = new AtomicLongArray(1024);   // por profesional (con colisiones): escrituras vistas
+  private final Map<String, NavigableMap<Long, Map<Integer, Entry>>> entries = new HashMap<>();   // guarded by lru
+  private final LinkedHashMap<Key, Boolean> lru;                           // orden de acceso, a través de profesionales
+  private final LinkedHashMap<String, Set<Integer>> requested;             // guarded by lru
+  private volatile long lastWarmupMs, lastWarmupDays;
+
+  public SlotCache(@Value("${app.slot-cache.enabled:true}") boolean enabled,
+                   @Value("${app.slot-cache.horizon-days:14}") int horizonDays,
+                   @Value("${app.slot-cache.max-entries:20000}") int maxEntries,
+                   @Value("${app.slot-cache.ttl:PT10M}") Duration ttl,
+                   @Value("${app.slot-cache.warm-professionals:500}") int warmProfessionals){
+    this.enabled = enabled; this.horizonDays = horizonDays; this.maxEntries = maxEntries; this.ttlMs = ttl.toMillis();
+    this.lru = new LinkedHashMap<>(1024, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest){
+        if (size() <= maxEntries) return false;
+        evict(eldest.getKey());
+        return true;
+      }
+    };
+    this.requested = new LinkedHashMap<>(64, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<String, Set<Integer>> eldest){ return size() > warmProfessionals; }
+    };
+  }
+
+  /** Whole UTC days, from today up to the horizon, with a slot size that tiles the day. */
+  public boolean serves(Instant from, Instant to, int slotMinutes){
+    if (!enabled || slotMinutes <= 0 || 1440 % slotMinutes != 0) return false;
+    long f = from.toEpochMilli(), t = to.toEpochMilli();
+    if (f % DAY_MS != 0 || t % DAY_MS != 0 || f >= t) return false;
+    var today = Instant.now().truncatedTo(ChronoUnit.DAYS);
+    return !from.isBefore(today) && !to.isAfter(today.plus(horizonDays, ChronoUnit.DAYS));
+  }
+
+  public Day get(String proId, Instant dayStart, int slotMinutes, Function<Instant, Day> loader){
+    var key = new Key(proId, dayStart.toEpochMilli() / DAY_MS, slotMinutes);
+    var e = fresh(key, true);
+    if (e != null) { hits.incrementAndGet(); return e.day(); }
+    misses.incrementAndGet();
+    return load(key, dayStart, loader);
+  }
+
+  /** Warmer path: loads the day only if it is missing or expired, without touching hit/miss counters. */
+  boolean warm(String proId, Instant dayStart, int slotMinutes, Function<Instant, Day> loader){
+    var key = new Key(proId, dayStart.toEpochMilli() / DAY_MS, slotMinutes);
+    if (fresh(key, false) != null) return false;
+    load(key, dayStart, loader);
+    return true;
+  }
+
+  public void invalidate(String proId, Instant from, Instant to){
+    generations.incrementAndGet(stripe(proId));
+    long first = Math.floorDiv(from.toEpochMilli(), DAY_MS), last = Math.floorDiv(to.toEpochMilli() - 1, DAY_MS);
+    // por clave y no por requested: el calentador carga sin registrar y requested también desaloja
+    synchronized (lru) {
+      var days = entries.get(proId);
+      if (days == null) return;
+      drop(proId, days.subMap(first, true, last, true));
+      if (days.isEmpty()) entries.remove(proId);
+    }
+  }
+
+  public void invalidate(String proId){
+    generations.incrementAndGet(stripe(proId));
+    synchronized (lru) {
+      var days = entries.remove(proId);
+      if (days != null) drop(proId, days);
+    }
+  }
+
+  /** Professionals recently asked for, with the slot sizes they were asked for. */
+  Map<String, Set<Integer>> requested(){
+    synchronized (lru) {
+      var out = new LinkedHashMap<String, Set<Integer>>();
+      requested.forEach((k, v) -> out.put(k, Set.copyOf(v)));
+      return out;
+    }
+  }
+
+  boolean enabled(){ return enabled; }
+
+  int horizonDays(){ return horizonDays; }
+
+  void warmed(Duration took, long days){ lastWarmupMs = took.toMillis(); lastWarmupDays = days; }
+
+  public Stats stats(){
+    synchronized (lru) {
+      return new Stats(lru.size(), maxEntries, hits.get(), misses.get(), horizonDays, lastWarmupMs, lastWarmupDays);
+    }
+  }
+
+  private Entry fresh(Key key, boolean track){
+    long now = System.currentTimeMillis();
+    synchronized (lru) {
+      if (track) requested.computeIfAbsent(key.proId(), k -> new HashSet<>()).add(key.slotMinutes());
+      var days = entries.get(key.proId());
+      var sizes = days == null ? null : days.get(key.epochDay());
+      var e = sizes == null ? null : sizes.get(key.slotMinutes());
+      if (e == null) return null;
+      lru.get(key);   // acceso: al final del orden
+      return now - e.loadedAt() <= ttlMs ? e : null;
+    }
+  }
+
+  private Day load(Key key, Instant dayStart, Function<Instant, Day> loader){
+    int stripe = stripe(key.proId());
+    long gen = generations.get(stripe);
+    long now = System.currentTimeMillis();
+    var day = loader.apply(dayStart);
+    synchronized (lru) {
+      // una escritura del profesional durante el cálculo: se sirve pero no se guarda
+      if (generations.get(stripe) == gen) {
+        entries.computeIfAbsent(key.proId(), k -> new TreeMap<>())
+               .computeIfAbsent(key.epochDay(), k -> new HashMap<>())
+               .put(key.slotMinutes(), new Entry(day, now));
+        lru.put(key, Boolean.TRUE);
+      }
+    }
+    return day;
+  }
+
+  /** Clears {@code days} (a view into the professional's map) and their place in the LRU order. */
+  private void drop(String proId, NavigableMap<Long, Map<Integer, Entry>> days){
+    days.forEach((d, sizes) -> sizes.keySet().forEach(m -> lru.remove(new Key(proId, d, m))));
+    days.clear();
+  }
+
+  /** LRU eviction of one entry. */
+  private void evict(Key key){
+    var days = entries.get(key.proId());
+    var sizes = days == null ? null : days.get(key.epochDay());
+    if (sizes == null) return;
+    sizes.remove(key.slotMinutes());
+    if (sizes.isEmpty()) days.remove(key.epochDay());
+    if (days.isEmpty()) entries.remove(key.proId());
+  }
+
+  private int stripe(String proId){
+    return (proId.hashCode() & 0x7fffffff) % generations.length();
+  }
+}
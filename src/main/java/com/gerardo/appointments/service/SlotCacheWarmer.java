@@ -0,0 +1,43 @@
+// src/main/java/com/gerardo/appointments/service/SlotCacheWarmer.java
+package com.gerardo.appointments.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Triggers {@link SlotsService#warmSlotCache} on the {@code slotCacheWarmExecutor}: the scheduler thread only
+ * hands the run over, so SSE heartbeats, the outbox and the nightly jobs never wait behind a refill.
+ * A tick that finds the previous run still going is skipped.
+ */
+@Component
+public class SlotCacheWarmer {
+  private static final Logger log = LoggerFactory.getLogger(SlotCacheWarmer.class);
+
+  private final SlotsService slots;
+  private final ExecutorService executor;
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  public SlotCacheWarmer(SlotsService slots, @Qualifier("slotCacheWarmExecutor") ExecutorService executor){
+    this.slots = slots; this.executor = executor;
+  }
+
+  @Scheduled(initialDelayString = "${app.slot-cache.warm-initial-delay-ms:60000}", fixedDelayString = "${app.slot-cache.warm-delay-ms:300000}")
+  public void tick(){
+    if (!running.compareAndSet(false, true)) return;
+    try {
+      executor.execute(() -> {
+        try { slots.warmSlotCache(); }
+        catch (RuntimeException e) { log.warn("slot cache warmup failed", e); }
+        finally { running.set(false); }
+      });
+    } catch (RuntimeException e) {
+      running.set(false);                        // executor cerrado (apagando)
+    }
+  }
+}
@@ -0,0 +1,336 @@
+// src/main/java/com/gerardo/appointments/service/SlotClaims.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AppointmentStatus;
+import com.gerardo.appointments.domain.SlotClaim;
+import com.gerardo.appointments.repo.AppointmentRepo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Atomic booking guard: an appointment takes one seat in every granule it covers with a conditional
+ * upsert ({@code count < capacity}, {@code $inc count}, {@code $addToSet appointmentIds}), all in one
+ * ordered bulk. A full granule makes the upsert collide on {@code _id}, so the write itself is the
+ * capacity check (no pre-read, no check-then-act race). Releasing is {@code $inc -1 / $pull} filtered
+ * by membership, so it is idempotent. Granules are {@code app.booking.claim-granule-minutes} wide and a
+ * booking must start and end on their grid ({@link #aligned}): a range that ended inside a granule would
+ * claim it whole, and the next booking, starting back to back, would find it taken.
+ * A booking is two writes (claim, then insert): seats whose appointment never made it are swept.
+ */
+@Component
+public class SlotClaims {
+  private static final Logger log = LoggerFactory.getLogger(SlotClaims.class);
+  // lecturas de las vistas: de a una semana, así la memoria no crece con el rango pedido
+  private static final long SEATS_CHUNK_MS = Duration.ofDays(7).toMillis();
+
+  /** Highest seat count among the granules {@code [startMs, endMs)} touches; what slot views ask per slot. */
+  public interface Seats {
+    int max(long startMs, long endMs);
+  }
+
+  /** Seats taken per granule from {@code firstGranule}, as read by {@link #occupancy}. */
+  public record Occupancy(long firstGranule, long granuleMs, int[] counts) implements Seats {
+    /** 0 outside what was read. */
+    @Override
+    public int max(long startMs, long endMs){
+      int lo = (int) Math.max(0, Math.floorDiv(startMs, granuleMs) - firstGranule);
+      int hi = (int) Math.min(counts.length - 1, Math.floorDiv(endMs - 1, granuleMs) - firstGranule);
+      int m = 0;
+      for (int i = lo; i <= hi; i++) m = Math.max(m, counts[i]);
+      return m;
+    }
+  }
+
+  private final MongoTemplate mongo;
+  private final AppointmentRepo appts;
+  private final SlotCache slotCache;
+  private final AgendaVersions versions;
+  private final long granuleMs, maxGranules;
+  private final boolean backfillOnStartup;
+  private final int batchSize;
+  private final Duration grace, lookback;
+  private volatile Instant swept;          // hasta dónde llegó el último barrido (null: recién arrancado)
+
+  public SlotClaims(MongoTemplate mongo, AppointmentRepo appts, SlotCache slotCache, AgendaVersions versions,
+                    @Value("${app.booking.claim-granule-minutes:5}") int granuleMinutes,
+                    @Value("${app.booking.backfill-claims-on-startup:true}") boolean backfillOnStartup,
+                    @Value("${app.booking.claims-batch-size:1000}") int batchSize,
+                    @Value("${app.booking.claim-grace:PT5M}") Duration grace,
+                    @Value("${app.booking.claim-sweep-lookback:P7D}") Duration lookback,
+                    @Value("${app.booking.max-claim-span:P366D}") Duration maxSpan){
+    this.mongo = mongo; this.appts = appts; this.slotCache = slotCache; this.versions = versions;
+    this.granuleMs = granuleMinutes * 60_000L;
+    this.maxGranules = Math.max(1, maxSpan.toMillis() / granuleMs);
+    this.backfillOnStartup = backfillOnStartup;
+    this.batchSize = batchSize; this.grace = grace; this.lookback = lookback;
+  }
+
+  /** Whether {@code start} and {@code end} both fall on a granule boundary. */
+  public boolean aligned(Instant start, Instant end){
+    return start.toEpochMilli() % granuleMs == 0 && end.toEpochMilli() % granuleMs == 0;
+  }
+
+  public int granuleMinutes(){ return (int) (granuleMs / 60_000L); }
+
+  /** False if {@code [start, end)} spans more granules than {@code app.booking.max-claim-span} allows. */
+  public boolean fits(Instant start, Instant end){
+    return count(Math.floorDiv(start.toEpochMilli(), granuleMs), Math.floorDiv(end.toEpochMilli() - 1, granuleMs)) <= maxGranules;
+  }
+
+  /** @throws SlotConflictException if any granule of the range already has {@code capacity} seats taken */
+  public void claim(String proId, String appointmentId, Instant start, Instant end, int capacity){
+    for (int attempt = 0; ; attempt++) {
+      var ops = mongo.bulkOps(BulkOperations.BulkMode.ORDERED, SlotClaim.class);
+      for (long g : granules(start, end)) ops.upsert(seatFree(proId, g, appointmentId, capacity), take(proId, g, appointmentId));
+      try {
+        ops.execute();
+        return;
+      } catch (BulkOperationException ex) {
+        // bulk ordenado: pudieron quedar tomados los gránulos previos al lleno
+        release(proId, appointmentId, start, end);
+        // con capacidad > 1 dos upserts sobre un gránulo nuevo pueden chocar aunque quede lugar: un reintento
+        if (capacity == 1 || attempt == 1) throw new SlotConflictException("slot not available");
+      }
+    }
+  }
+
+  /**
+   * Seats for many appointments in one unordered bulk ({@code capacity}: appointmentId → seats per granule).
+   * Returns the ids of the appointments that hit a full granule; whatever they did take is released.
+   */
+  public Set<String> claimAll(List<Appointment> as, Map<String, Integer> capacity){
+    var ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, SlotClaim.class);
+    var owner = new ArrayList<String>();   // índice de la operación -> appointmentId
+    for (var a : as) {
+      int cap = capacity.getOrDefault(a.getId(), 1);
+      for (long g : granules(a.getStartTs(), a.getEndTs())) {
+        ops.upsert(seatFree(a.getProfessionalId(), g, a.getId(), cap), take(a.getProfessionalId(), g, a.getId()));
+        owner.add(a.getId());
+      }
+    }
+    if (owner.isEmpty()) return Set.of();
+    try {
+      ops.execute();
+      return Set.of();
+    } catch (BulkOperationException ex) {
+      var lost = new HashSet<String>();
+      ex.getErrors().forEach(err -> lost.add(owner.get(err.getIndex())));
+      as.stream().filter(a -> lost.contains(a.getId())).forEach(this::release);
+      return lost;
+    }
+  }
+
+  /** Returns the seats freed; 0 if the appointment held none (already released). */
+  public long release(Appointment a){
+    return release(a.getProfessionalId(), a.getId(), a.getStartTs(), a.getEndTs());
+  }
+
+  public long release(String proId, String appointmentId, Instant start, Instant end){
+    var ids = granules(start, end).stream().map(g -> SlotClaim.key(proId, g)).toList();
+    long freed = mongo.updateMulti(Query.query(where("_id").in(ids).and("appointmentIds").is(appointmentId)),
+                                   new Update().inc("count", -1).pull("appointmentIds", appointmentId), SlotClaim.class)
+                      .getModifiedCount();
+    mongo.remove(Query.query(where("_id").in(ids).and("count").lte(0)), SlotClaim.class);
+    return freed;
+  }
+
+  /**
+   * Stamps {@code updatedAt} on the appointment's seats, before a status change that is followed by a release:
+   * if that release never happens, the seats fall in a later sweep window instead of keeping their booking time.
+   */
+  public void touch(Appointment a){
+    var ids = granules(a.getStartTs(), a.getEndTs()).stream().map(g -> SlotClaim.key(a.getProfessionalId(), g)).toList();
+    mongo.updateMulti(Query.query(where("_id").in(ids).and("appointmentIds").is(a.getId())),
+                      new Update().currentDate("updatedAt"), SlotClaim.class);
+  }
+
+  /** Seats taken over {@code [from, to)}: one range query on {@code (professionalId, granule)} projected to the count. */
+  public Occupancy occupancy(String proId, Instant from, Instant to){
+    long first = Math.floorDiv(from.toEpochMilli(), granuleMs);
+    long last = Math.floorDiv(to.toEpochMilli() - 1, granuleMs);
+    var counts = new int[span(first, last)];
+    var q = Query.query(where("professionalId").is(proId).and("granule").gte(first).lte(last));
+    q.fields().include("granule", "count");
+    for (var c : mongo.find(q, SlotClaim.class)) counts[(int) (c.getGranule() - first)] = c.getCount();
+    return new Occupancy(first, granuleMs, counts);
+  }
+
+  /**
+   * For slot views over {@code [from, to)}: the counters are read one chunk (a week) at a time, when a slot first
+   * falls in it, so any range works in flat memory. Single-threaded, like the view that uses it.
+   */
+  public Seats seats(String proId, Instant from, Instant to){
+    long f = from.toEpochMilli(), t = to.toEpochMilli();
+    return new Seats() {
+      private long chunk = Long.MIN_VALUE;
+      private Occupancy read;
+
+      @Override
+      public int max(long startMs, long endMs){
+        int m = 0;
+        for (long c = Math.floorDiv(Math.max(startMs, f), SEATS_CHUNK_MS); c * SEATS_CHUNK_MS < Math.min(endMs, t); c++) {
+          if (c != chunk) {
+            read = occupancy(proId, Instant.ofEpochMilli(Math.max(c * SEATS_CHUNK_MS, f)), Instant.ofEpochMilli(Math.min((c + 1) * SEATS_CHUNK_MS, t)));
+            chunk = c;
+          }
+          m = Math.max(m, read.max(startMs, endMs));
+        }
+        return m;
+      }
+    };
+  }
+
+  /**
+   * Drops the professional's claims on granules entirely before {@code horizon} (the archive horizon: nothing is
+   * booked or released there anymore). Range delete on {@code (professionalId, granule)}. Returns the claims removed.
+   */
+  public long dropBefore(String proId, Instant horizon){
+    long g = Math.floorDiv(horizon.toEpochMilli(), granuleMs);
+    return mongo.remove(Query.query(where("professionalId").is(proId).and("granule").lt(g)), SlotClaim.class).getDeletedCount();
+  }
+
+  /**
+   * Seats for appointments booked before claims existed (or under the old one-claim-per-granule shape).
+   * Filtered by membership and without the capacity condition: already-counted seats are skipped.
+   * Read through a cursor and written in bulks of {@code app.booking.claims-batch-size} appointments.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void backfill(){
+    if (!backfillOnStartup) return;
+    int total = 0, seats = 0;
+    var page = new ArrayList<Appointment>(batchSize);
+    try (var future = appts.streamByStatusAndEndTsAfter(AppointmentStatus.SCHEDULED, Instant.now())) {
+      for (var it = future.iterator(); it.hasNext(); ) {
+        page.add(it.next());
+        if (page.size() < batchSize && it.hasNext()) continue;
+        seats += backfill(page);
+        total += page.size();
+        page.clear();
+      }
+    }
+    if (total > 0) log.info("slot claims backfill: {} seats added for {} appointments", seats, total);
+  }
+
+  /** An already-counted seat misses the filter and its upsert collides on {@code _id}: the only error expected here. */
+  private int backfill(List<Appointment> page){
+    var ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, SlotClaim.class);
+    for (var a : page) {
+      if (!fits(a.getStartTs(), a.getEndTs())) {
+        log.warn("slot claims backfill: appointment {} spans more than app.booking.max-claim-span, no seats taken", a.getId());
+        continue;
+      }
+      for (long g : granules(a.getStartTs(), a.getEndTs())) {
+        ops.upsert(Query.query(where("_id").is(SlotClaim.key(a.getProfessionalId(), g)).and("appointmentIds").ne(a.getId())),
+                   take(a.getProfessionalId(), g, a.getId()));
+      }
+    }
+    try {
+      var r = ops.execute();
+      return r.getUpserts().size() + r.getModifiedCount();
+    } catch (BulkOperationException ex) {
+      if (ex.getErrors().stream().anyMatch(err -> err.getCode() != 11000)) throw ex;
+      return ex.getResult().getUpserts().size() + ex.getResult().getModifiedCount();
+    }
+  }
+
+  @Scheduled(initialDelayString = "${app.booking.claim-sweep-ms:60000}", fixedDelayString = "${app.booking.claim-sweep-ms:60000}")
+  public void sweep(){
+    sweep(Instant.now());
+  }
+
+  /**
+   * Releases seats whose appointment is not SCHEDULED in {@code appointments}: a booking that died between
+   * claim and insert, or a cancel that died before its release (cancel {@link #touch touches} the seats before
+   * saving the status, so they are written again inside a later window). Looks at the claims written since the last
+   * sweep (after a restart, {@code app.booking.claim-sweep-lookback} back) and older than
+   * {@code app.booking.claim-grace}, so bookings still in flight are left alone. Returns the appointments released.
+   */
+  int sweep(Instant now){
+    var to = now.minus(grace);
+    var from = swept != null ? swept : to.minus(lookback);
+    if (!from.isBefore(to)) return 0;
+    var q = Query.query(where("updatedAt").gt(from).lte(to));
+    q.fields().include("professionalId", "appointmentIds");
+    var owner = new HashMap<String, String>();   // appointmentId -> professionalId
+    try (var s = mongo.stream(q, SlotClaim.class)) {
+      s.forEach(c -> c.getAppointmentIds().forEach(id -> owner.put(id, c.getProfessionalId())));
+    }
+    var ids = new ArrayList<>(owner.keySet());
+    var touched = new HashSet<String>();
+    int released = 0;
+    for (int i = 0; i < ids.size(); i += batchSize) {
+      var chunk = ids.subList(i, Math.min(ids.size(), i + batchSize));
+      var live = Query.query(where("_id").in(chunk).and("status").is(AppointmentStatus.SCHEDULED));
+      live.fields().include("_id");
+      var scheduled = new HashSet<String>();
+      mongo.find(live, Appointment.class).forEach(a -> scheduled.add(a.getId()));
+      for (var id : chunk) {
+        if (scheduled.contains(id)) continue;
+        release(owner.get(id), id);
+        touched.add(owner.get(id));
+        released++;
+        log.warn("slot claims: released orphaned seats of appointment {} (professional {})", id, owner.get(id));
+      }
+    }
+    touched.forEach(proId -> { slotCache.invalidate(proId); versions.bump(proId); });
+    swept = to;
+    return released;
+  }
+
+  /** Every seat of the appointment, wherever it is: the sweep does not know its range. */
+  private void release(String proId, String appointmentId){
+    mongo.updateMulti(Query.query(where("professionalId").is(proId).and("appointmentIds").is(appointmentId)),
+                      new Update().inc("count", -1).pull("appointmentIds", appointmentId), SlotClaim.class);
+    mongo.remove(Query.query(where("professionalId").is(proId).and("count").lte(0)), SlotClaim.class);
+  }
+
+  private static Query seatFree(String proId, long granule, String appointmentId, int capacity){
+    return Query.query(where("_id").is(SlotClaim.key(proId, granule)).and("count").lt(capacity).and("appointmentIds").ne(appointmentId));
+  }
+
+  private static Update take(String proId, long granule, String appointmentId){
+    return new Update().setOnInsert("professionalId", proId).setOnInsert("granule", granule)
+                       .inc("count", 1).addToSet("appointmentIds", appointmentId).currentDate("updatedAt");
+  }
+
+  private List<Long> granules(Instant start, Instant end){
+    long first = Math.floorDiv(start.toEpochMilli(), granuleMs);
+    long last = Math.floorDiv(end.toEpochMilli() - 1, granuleMs);
+    var out = new ArrayList<Long>(span(first, last));
+    for (long g = first; g <= last; g++) out.add(g);
+    return out;
+  }
+
+  /** Granules in {@code [first, last]} as an array / list size; a range past the cap is a bad request, not an overflow. */
+  private int span(long first, long last){
+    long n = count(first, last);
+    if (n > maxGranules) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "range spans " + n + " granules, more than app.booking.max-claim-span (" + maxGranules + ")");
+    }
+    return (int) n;
+  }
+
+  private static long count(long first, long last){
+    return Math.max(0, last - first + 1);
+  }
+}
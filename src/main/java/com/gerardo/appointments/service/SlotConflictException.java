@@ -0,0 +1,11 @@
+// src/main/java/com/gerardo/appointments/service/SlotConflictException.java
+package com.gerardo.appointments.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** Booking lost against an existing appointment (or a concurrent one) → 409. */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class SlotConflictException extends IllegalStateException {
+  public SlotConflictException(String message){ super(message); }
+}
@@ -0,0 +1,145 @@
+// src/main/java/com/gerardo/appointments/service/SlotEngine.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.domain.LocationType;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Slot generation shared by {@link AvailabilityService} and {@link SlotsService}.
+ * Blocks and appointments are sorted once and walked with a sweep cursor over
+ * epoch-millis longs, so each slot only looks at the appointments that can touch it.
+ */
+public final class SlotEngine {
+
+  /** Receives every slot in order; {@code overlapping[0..overlapCount)} are indexes into {@link #busy(int)}. */
+  @FunctionalInterface
+  public interface SlotVisitor {
+    void visit(long startMs, long endMs, LocationType locationType, int[] overlapping, int overlapCount);
+  }
+
+  private static final int[] EMPTY = new int[0];
+
+  private final long from, to;
+  private final long[] blockStart, blockEnd;
+  private final LocationType[] blockLocation;
+  private final Appointment[] busy;
+  private final long[] busyStart, busyEnd;
+  private final long[] maxEnd;              // maxEnd[i] = max(busyEnd[0..i]); monotone => binary-searchable
+
+  private SlotEngine(long from, long to, List<AvailabilityBlock> open, List<Appointment> busy){
+    this.from = from; this.to = to;
+
+    var blks = open.stream().sorted(Comparator.comparing(AvailabilityBlock::getStartTs)).toArray(AvailabilityBlock[]::new);
+    blockStart = new long[blks.length]; blockEnd = new long[blks.length]; blockLocation = new LocationType[blks.length];
+    for (int i = 0; i < blks.length; i++) {
+      blockStart[i] = blks[i].getStartTs().toEpochMilli();
+      blockEnd[i] = blks[i].getEndTs().toEpochMilli();
+      blockLocation[i] = blks[i].getLocationType() == null ? LocationType.HOSPITAL : blks[i].getLocationType();
+    }
+
+    this.busy = busy.toArray(Appointment[]::new);
+    Arrays.sort(this.busy, Comparator.comparing(Appointment::getStartTs));
+    busyStart = new long[this.busy.length]; busyEnd = new long[this.busy.length]; maxEnd = new long[this.busy.length];
+    long m = Long.MIN_VALUE;
+    for (int i = 0; i < this.busy.length; i++) {
+      busyStart[i] = this.busy[i].getStartTs().toEpochMilli();
+      busyEnd[i] = this.busy[i].getEndTs().toEpochMilli();
+      m = Math.max(m, busyEnd[i]);
+      maxEnd[i] = m;
+    }
+  }
+
+  /** Only OPEN blocks are kept; appointments are expected to be the SCHEDULED ones in range. */
+  public static SlotEngine of(List<AvailabilityBlock> blocks, List<Appointment> busy, Instant from, Instant to){
+    return new SlotEngine(from.toEpochMilli(), to.toEpochMilli(),
+        blocks.stream().filter(AvailabilityBlock::isOpen).toList(), busy);
+  }
+
+  public Appointment busy(int i){ return busy[i]; }
+
+  public void forEachSlot(long slotMs, SlotVisitor visitor){
+    if (slotMs <= 0) throw new IllegalArgumentException("slot must be positive");
+    var hits = new int[Math.max(1, busy.length)];
+    for (int b = 0; b < blockStart.length; b++) {
+      long ws = Math.max(blockStart[b], from);
+      long we = Math.min(blockEnd[b], to);
+      // primer turno que todavía puede solapar: maxEnd > ws
+      int lo = firstEndingAfter(ws);
+      for (long s = ws; s + slotMs <= we; s += slotMs) {
+        long e = s + slotMs;
+        while (lo < busy.length && maxEnd[lo] <= s) lo++;
+        int n = 0;
+        for (int j = lo; j < busy.length && busyStart[j] < e; j++) {
+          if (busyEnd[j] > s) hits[n++] = j;
+        }
+        visitor.visit(s, e, blockLocation[b], hits, n);
+      }
+    }
+  }
+
+  /**
+   * Free slots in ascending start order per block, restricted to {@code location} (null = any),
+   * stopping as soon as a slot would start at or after {@code cutoff}. Blocks are visited by start,
+   * so once a block begins past the cutoff nothing later can qualify. A slot is free while fewer than
+   * {@code capacity} (per location) appointments run at once inside it, as booking checks it.
+   */
+  public void forEachFreeBefore(long slotMs, LocationType location, ToIntFunction<LocationType> capacity, LongSupplier cutoff,
+                                SlotVisitor visitor){
+    if (slotMs <= 0) throw new IllegalArgumentException("slot must be positive");
+    var starts = new long[busy.length];
+    var ends = new long[busy.length];
+    for (int b = 0; b < blockStart.length; b++) {
+      long ws = Math.max(blockStart[b], from);
+      long we = Math.min(blockEnd[b], to);
+      if (ws >= cutoff.getAsLong()) return;
+      if (location != null && blockLocation[b] != location) continue;
+      int cap = capacity.applyAsInt(blockLocation[b]);
+      int lo = firstEndingAfter(ws);
+      for (long s = ws; s + slotMs <= we && s < cutoff.getAsLong(); s += slotMs) {
+        long e = s + slotMs;
+        while (lo < busy.length && maxEnd[lo] <= s) lo++;
+        int n = 0;
+        for (int j = lo; j < busy.length && busyStart[j] < e; j++) {
+          if (busyEnd[j] <= s) continue;
+          if (cap == 1) { n = 1; break; }
+          starts[n] = Math.max(busyStart[j], s);
+          ends[n++] = Math.min(busyEnd[j], e);
+        }
+        // con capacidad 1 basta un solape (starts / ends no se llenaron)
+        if (n < cap || cap > 1 && depth(starts, ends, n) < cap) visitor.visit(s, e, blockLocation[b], EMPTY, 0);
+      }
+    }
+  }
+
+  /**
+   * Most intervals running at once among the first {@code n} (already clipped to the slot): starts and ends
+   * sorted apart and swept. An end equal to a start does not overlap, so a zero-length interval counts for nothing
+   * (its end can be swept before its start, and the ends can run out first). Sorts the arrays in place.
+   */
+  static int depth(long[] starts, long[] ends, int n){
+    Arrays.sort(starts, 0, n);
+    Arrays.sort(ends, 0, n);
+    int cur = 0, max = 0;
+    for (int i = 0, j = 0; i < n; ) {
+      if (j == n || starts[i] < ends[j]) { max = Math.max(max, ++cur); i++; } else { cur--; j++; }   // fin == inicio no se pisan
+    }
+    return max;
+  }
+
+  private int firstEndingAfter(long t){
+    int lo = 0, hi = maxEnd.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (maxEnd[mid] <= t) lo = mid + 1; else hi = mid;
+    }
+    return lo;
+  }
+}
@@ -0,0 +1,98 @@
+// src/main/java/com/gerardo/appointments/service/SlotSearchService.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.LocationType;
+import com.gerardo.appointments.dto.SlotViewDTO;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/** "Who can see me soonest?": earliest free slots across every professional of a specialty. */
+@Service
+public class SlotSearchService {
+  private final NameLookup names;
+  private final AgendaIndex index;
+  private final AvailabilityWindows windows;
+  private final Capacities capacities;
+  private final ExecutorService executor;
+  private final int maxLimit;
+
+  public SlotSearchService(NameLookup names, AgendaIndex index, AvailabilityWindows windows, Capacities capacities,
+                           @Qualifier("slotSearchExecutor") ExecutorService executor,
+                           @Value("${app.slot-search.max-limit:100}") int maxLimit){
+    this.names = names; this.index = index; this.windows = windows; this.capacities = capacities; this.executor = executor;
+    this.maxLimit = maxLimit;
+  }
+
+  @Timed(value = "appointments.slots.search", percentiles = {0.5, 0.99}, histogram = true)
+  public List<SlotViewDTO> earliest(String specialty, LocationType location, OffsetDateTime from, OffsetDateTime to,
+                                    int slotMinutes, int limit){
+    if (limit <= 0) return List.of();
+    var f = from.toInstant(); var t = to.toInstant();
+    long slotMs = Duration.ofMinutes(slotMinutes).toMillis();
+    var top = new TopN(Math.min(limit, maxLimit));
+
+    // sólo id + nombre: la disponibilidad semanal ya está en el índice
+    var pros = names.professionalsBySpecialty(specialty);
+    var tasks = pros.keySet().stream()
+        .map(proId -> CompletableFuture.runAsync(() -> {
+          // con el top-N ya lleno, cualquier profesional cuyo primer slot libre no sea anterior al N-ésimo se corta enseguida;
+          // las agendas frías se leen sólo en el rango y no entran al índice (no desalojan las calientes)
+          var agenda = index.range(proId, f, t);
+          var engine = SlotEngine.of(windows.blocks(proId, agenda.blocks(), agenda.weekly(), f, t), agenda.scheduled(), f, t);
+          // con sobreturnos un slot sigue libre mientras haya lugar, igual que en las vistas y al reservar
+          engine.forEachFreeBefore(slotMs, location, lt -> capacities.of(agenda.capacity(), lt), top::cutoff,
+                                   (s, e, lt, hits, n) -> top.offer(proId, s, e, lt));
+        }, executor))
+        .toArray(CompletableFuture[]::new);
+    CompletableFuture.allOf(tasks).join();
+
+    return top.sorted().stream().map(c -> {
+      var dto = new SlotViewDTO();
+      dto.setProfessionalId(c.proId());
+      dto.setProfessionalName(pros.get(c.proId()));
+      dto.setStartTs(OffsetDateTime.ofInstant(Instant.ofEpochMilli(c.start()), ZoneOffset.UTC));
+      dto.setEndTs(OffsetDateTime.ofInstant(Instant.ofEpochMilli(c.end()), ZoneOffset.UTC));
+      dto.setLocationType(c.location());
+      dto.setOverlapCount(0);
+      dto.setBookings(List.of());
+      dto.setStatus("AVAILABLE");
+      return dto;
+    }).toList();
+  }
+
+  private record Candidate(String proId, long start, long end, LocationType location) {}
+
+  private static final Comparator<Candidate> EARLIEST =
+      Comparator.comparingLong(Candidate::start).thenComparing(Candidate::proId);
+
+  /** Shared bounded max-heap; {@link #cutoff()} is the N-th earliest start once full. */
+  private static final class TopN {
+    private final int limit;
+    private final PriorityQueue<Candidate> heap;
+    private volatile long cutoff = Long.MAX_VALUE;
+
+    TopN(int limit){ this.limit = limit; this.heap = new PriorityQueue<>(limit + 1, EARLIEST.reversed()); }
+
+    long cutoff(){ return cutoff; }
+
+    synchronized void offer(String proId, long start, long end, LocationType location){
+      if (start >= cutoff) return;
+      heap.add(new Candidate(proId, start, end, location));
+      if (heap.size() > limit) heap.poll();
+      if (heap.size() == limit) cutoff = heap.peek().start();
+    }
+
+    synchronized List<Candidate> sorted(){
+      var out = new ArrayList<>(heap);
+      out.sort(EARLIEST);
+      return out;
+    }
+  }
+}
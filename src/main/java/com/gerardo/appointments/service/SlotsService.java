@@ -4,115 +4,197 @@ package com.gerardo.appointments.service;
 import com.gerardo.appointments.domain.*;
 import com.gerardo.appointments.dto.*;
 import com.gerardo.appointments.repo.*;
+import com.gerardo.appointments.repo.AvailabilityBlockRepoCustom.ProRange;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.stereotype.Service;
 
 import java.time.*;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class SlotsService {
-  private final AvailabilityBlockRepo blocks;
-  private final AppointmentRepo appts;
-  private final ProfessionalRepo pros;
-  private final PatientRepo patients;
-
-  public SlotsService(AvailabilityBlockRepo blocks, AppointmentRepo appts, ProfessionalRepo pros, PatientRepo patients){
-    this.blocks = blocks; this.appts = appts; this.pros = pros; this.patients = patients;
+  private final AppointmentArchive archive;
+  private final NameLookup names;
+  private final AgendaIndex index;
+  private final AvailabilityWindows windows;
+  private final OccupancyBitmaps bitmaps;
+  private final SlotClaims claims;
+  private final Capacities capacities;
+  private final SlotCache cache;
+
+  public SlotsService(AppointmentArchive archive, NameLookup names, AgendaIndex index,
+                      AvailabilityWindows windows, OccupancyBitmaps bitmaps, SlotClaims claims, Capacities capacities, SlotCache cache){
+    this.archive = archive; this.names = names; this.index = index; this.windows = windows; this.bitmaps = bitmaps;
+    this.claims = claims; this.capacities = capacities; this.cache = cache;
   }
 
+  @Timed(value = "appointments.slots.professional", percentiles = {0.5, 0.99}, histogram = true, extraTags = {"mode", "list"})
   public List<SlotViewDTO> professionalSlots(String professionalId, OffsetDateTime from, OffsetDateTime to, int slotMinutes, String include){
+    var out = new ArrayList<SlotViewDTO>();
+    forEachProfessionalSlot(professionalId, from, to, slotMinutes, include, out::add);
+    return out;
+  }
+
+  /** Same as {@link #professionalSlots} but hands each slot to {@code sink} as it is generated. */
+  @Timed(value = "appointments.slots.professional", percentiles = {0.5, 0.99}, histogram = true, extraTags = {"mode", "stream"})
+  public void forEachProfessionalSlot(String professionalId, OffsetDateTime from, OffsetDateTime to, int slotMinutes, String include,
+                                      Consumer<SlotViewDTO> sink){
     var f = from.toInstant(); var t = to.toInstant();
-    var open = blocks.findByProfessionalIdAndEndTsAfterAndStartTsBefore(professionalId, f, t)
-                     .stream().filter(AvailabilityBlock::isOpen).toList();
+    if (cache.serves(f, t, slotMinutes)) {
+      var days = new ArrayList<List<SlotViewDTO>>();
+      for (var d = f; d.isBefore(t); d = d.plus(1, ChronoUnit.DAYS)) {
+        var day = cache.get(professionalId, d, slotMinutes, ds -> day(professionalId, ds, slotMinutes));
+        // una ventana que cruza la medianoche fuera de la grilla no se parte igual que en el cálculo de corrido
+        if (!d.equals(f) && !day.alignedStart()) { days = null; break; }
+        days.add(day.slots());
+      }
+      if (days != null) {
+        for (var day : days) for (var v : day) if (wanted(include, !v.getBookings().isEmpty(), v.getRemaining())) sink.accept(v);
+        return;
+      }
+    }
+    compute(professionalId, f, t, slotMinutes, include, sink);
+  }
+
+  /**
+   * Refills the cached days of the professionals / slot sizes asked for lately, from today up to the horizon.
+   * Scheduled by {@link SlotCacheWarmer}, on its own thread.
+   */
+  @Timed(value = "slots.cache.warmup")
+  public void warmSlotCache(){
+    if (!cache.enabled()) return;
+    long t0 = System.nanoTime(), loaded = 0;
+    var today = Instant.now().truncatedTo(ChronoUnit.DAYS);
+    for (var e : cache.requested().entrySet()) {
+      for (int m : e.getValue()) {
+        for (int i = 0; i < cache.horizonDays(); i++) {
+          if (cache.warm(e.getKey(), today.plus(i, ChronoUnit.DAYS), m, ds -> day(e.getKey(), ds, m))) loaded++;
+        }
+      }
+    }
+    cache.warmed(Duration.ofNanos(System.nanoTime() - t0), loaded);
+  }
+
+  /** Every slot of one UTC day (include=all), for the cache. */
+  private SlotCache.Day day(String proId, Instant dayStart, int slotMinutes){
+    var out = new ArrayList<SlotViewDTO>();
+    compute(proId, dayStart, dayStart.plus(1, ChronoUnit.DAYS), slotMinutes, null, out::add);
+    long slotMs = Duration.ofMinutes(slotMinutes).toMillis(), at = dayStart.toEpochMilli();
+    boolean aligned = true;
+    for (var b : windows.blocks(proId, dayStart, dayStart.plusMillis(1))) {
+      if (b.isOpen() && b.getStartTs().isBefore(dayStart) && (at - b.getStartTs().toEpochMilli()) % slotMs != 0) aligned = false;
+    }
+    return new SlotCache.Day(List.copyOf(out), aligned);
+  }
+
+  private void compute(String professionalId, Instant f, Instant t, int slotMinutes, String include, Consumer<SlotViewDTO> sink){
+    var slotMs = Duration.ofMinutes(slotMinutes).toMillis();
+    // con sobreturnos un slot ocupado puede seguir disponible, así que también hacen falta sus reservas
+    boolean availableOnly = "available".equalsIgnoreCase(include) && !capacities.overbooks(professionalId);
 
     // cache nombres
-    var proName = pros.findById(professionalId).map(Professional::getFullName).orElse(null);
+    var proName = names.professional(professionalId);
+
+    // lugares tomados por gránulo, leídos por tramos; sin sobreturnos alcanza con el índice (capacidad 1)
+    var seats = capacities.overbooks(professionalId) ? claims.seats(professionalId, f, t) : null;
 
-    // traer todas las appts del rango para el pro
-    var busy = appts.findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(
-        professionalId, AppointmentStatus.SCHEDULED, f, t);
+    // traer todas las appts del rango para el pro (con include=available sólo hacen falta en el camino por intervalos)
+    var busy = availableOnly ? List.<Appointment>of() : index.scheduled(professionalId, f, t);
 
     // cache de pacientes
-    Map<String,String> patientNames = patients.findAllById(
-        busy.stream().map(Appointment::getPatientId).collect(Collectors.toSet())
-    ).stream().collect(Collectors.toMap(Patient::getId, Patient::getFullName));
+    Map<String,String> patientNames = busy.isEmpty() ? Map.of()
+        : names.patients(busy.stream().map(Appointment::getPatientId).collect(Collectors.toSet()));
+
+    // grilla alineada: estado de cada slot por bits; las reservas de un slot ocupado salen del índice
+    if (bitmaps.forEachSlot(professionalId, f, t, slotMs, (s, e, lt, booked) -> {
+      int cap = capacities.of(professionalId, lt), left = remaining(cap, seats, s, e, booked);
+      if (!wanted(include, booked, left)) return;
+      var hits = booked ? index.scheduled(professionalId, Instant.ofEpochMilli(s), Instant.ofEpochMilli(e)) : List.<Appointment>of();
+      sink.accept(view(professionalId, proName, s, e, lt, hits, patientNames, cap, left));
+    })) return;
+
+    var engine = SlotEngine.of(windows.blocks(professionalId, f, t), availableOnly ? index.scheduled(professionalId, f, t) : busy, f, t);
+    engine.forEachSlot(slotMs, (s, e, lt, hits, overlapCount) -> {
+      int cap = capacities.of(professionalId, lt), left = remaining(cap, seats, s, e, overlapCount > 0);
+      if (!wanted(include, overlapCount > 0, left)) return;
+      // bookings que se solapan con el slot (mismo pro)
+      var overlapping = new ArrayList<Appointment>(overlapCount);
+      for (int i = 0; i < overlapCount; i++) overlapping.add(engine.busy(hits[i]));
+      sink.accept(view(professionalId, proName, s, e, lt, overlapping, patientNames, cap, left));
+    });
+  }
 
-    var out = new ArrayList<SlotViewDTO>();
-    var slot = Duration.ofMinutes(slotMinutes);
+  /** Free seats from the counters ({@code null}: none read); a booked slot counts at least one (citas pasadas no tienen contador). */
+  static int remaining(int capacity, SlotClaims.Seats seats, long s, long e, boolean booked){
+    return Math.max(0, capacity - Math.max(seats == null ? 0 : seats.max(s, e), booked ? 1 : 0));
+  }
 
-    for (var w : open) {
-      var ws = w.getStartTs().isBefore(f) ? f : w.getStartTs();
-      var we = w.getEndTs().isAfter(t) ? t : w.getEndTs();
-      for (var cur = ws; cur.plus(slot).compareTo(we) <= 0; cur = cur.plus(slot)) {
-        var s = cur; var e = cur.plus(slot);
-        // bookings que se solapan con el slot (mismo pro)
-        var bookings = busy.stream().filter(a -> a.getEndTs().isAfter(s) && a.getStartTs().isBefore(e))
-          .map(a -> new BookingItemDTO(
-              a.getId(),
-              a.getPatientId(),
-              patientNames.getOrDefault(a.getPatientId(), null)
-          ))
-          .toList();
-
-        int overlapCount = bookings.size();
-
-        // filtro include
-        boolean want;
-        if ("available".equalsIgnoreCase(include))      want = overlapCount == 0;
-        else if ("booked".equalsIgnoreCase(include))    want = overlapCount > 0;
-        else                                            want = true;
-
-        if (want) {
-          var dto = new SlotViewDTO();
-          dto.setProfessionalId(professionalId);
-          dto.setProfessionalName(proName);
-          dto.setStartTs(OffsetDateTime.ofInstant(s, ZoneOffset.UTC));
-          dto.setEndTs(OffsetDateTime.ofInstant(e, ZoneOffset.UTC));
-          dto.setLocationType(w.getLocationType() == null ? LocationType.HOSPITAL : w.getLocationType());
-          dto.setOverlapCount(overlapCount);
-          dto.setBookings(bookings);
-          dto.setStatus(overlapCount > 0 ? "BOOKED" : "AVAILABLE");
-          out.add(dto);
-        }
-      }
+  // filtro include: available = queda lugar, booked = tiene reservas
+  private static boolean wanted(String include, boolean booked, int remaining){
+    if ("available".equalsIgnoreCase(include)) return remaining > 0;
+    if ("booked".equalsIgnoreCase(include))    return booked;
+    return true;
+  }
+
+  private static SlotViewDTO view(String proId, String proName, long s, long e, LocationType lt,
+                                  List<Appointment> overlapping, Map<String,String> patientNames, int capacity, int remaining){
+    var bookings = new ArrayList<BookingItemDTO>(overlapping.size());
+    for (var a : overlapping) {
+      bookings.add(new BookingItemDTO(a.getId(), a.getPatientId(), patientNames.getOrDefault(a.getPatientId(), null)));
     }
-    return out;
+    var dto = new SlotViewDTO();
+    dto.setProfessionalId(proId);
+    dto.setProfessionalName(proName);
+    dto.setStartTs(OffsetDateTime.ofInstant(Instant.ofEpochMilli(s), ZoneOffset.UTC));
+    dto.setEndTs(OffsetDateTime.ofInstant(Instant.ofEpochMilli(e), ZoneOffset.UTC));
+    dto.setLocationType(lt);
+    dto.setOverlapCount(overlapping.size());
+    dto.setCapacity(capacity);
+    dto.setRemaining(remaining);
+    dto.setBookings(bookings);
+    dto.setStatus(overlapping.isEmpty() ? "AVAILABLE" : "BOOKED");
+    return dto;
   }
 
+  @Timed(value = "appointments.slots.patient", percentiles = {0.5, 0.99}, histogram = true)
   public List<SlotViewDTO> patientSlots(String patientId, OffsetDateTime from, OffsetDateTime to, int slotMinutes){
     var f = from.toInstant(); var t = to.toInstant();
     var slot = Duration.ofMinutes(slotMinutes);
 
-    // citas del paciente en rango
-    var mine = appts.findByPatientIdAndStatusAndEndTsAfterAndStartTsBefore(
-        patientId, AppointmentStatus.SCHEDULED, f, t);
+    // citas del paciente en rango (también las archivadas si el rango es anterior al horizonte)
+    var mine = archive.patient(patientId, AppointmentStatus.SCHEDULED, f, t);
 
     // profesionales + nombres cache
-    Map<String,String> proNames = pros.findAllById(
-        mine.stream().map(Appointment::getProfessionalId).collect(Collectors.toSet())
-    ).stream().collect(Collectors.toMap(Professional::getId, Professional::getFullName));
+    Map<String,String> proNames = names.professionals(
+        mine.stream().map(Appointment::getProfessionalId).collect(Collectors.toSet()));
 
+    // ubicación = ventana OPEN (bloques explícitos + reglas semanales) que toca la cita: agendas ya cargadas en memoria,
+    // el resto con un $or de bloques y una lectura de profesionales, sin importar cuántas citas o profesionales haya
+    var where = windows.locations(mine.stream().map(SlotsService::range).toList());
     var out = new ArrayList<SlotViewDTO>();
-
-    for (var a : mine) {
-      // localizar bloque OPEN que contenga el slot para obtener locationType; si no, default HOSPITAL
-      var blks = blocks.findByProfessionalIdAndEndTsAfterAndStartTsBefore(a.getProfessionalId(), a.getStartTs(), a.getEndTs());
-      var lt = blks.stream().filter(AvailabilityBlock::isOpen).findFirst().map(AvailabilityBlock::getLocationType)
-                   .orElse(LocationType.HOSPITAL);
-
-      // normalizar a múltiplos del slot si querés; por ahora usamos el tramo exacto de la cita
-      var dto = new SlotViewDTO();
-      dto.setProfessionalId(a.getProfessionalId());
-      dto.setProfessionalName(proNames.getOrDefault(a.getProfessionalId(), null));
-      dto.setStartTs(OffsetDateTime.ofInstant(a.getStartTs(), ZoneOffset.UTC));
-      dto.setEndTs(OffsetDateTime.ofInstant(a.getEndTs(), ZoneOffset.UTC));
-      dto.setLocationType(lt);
-      dto.setOverlapCount(1);
-      dto.setBookings(List.of(new BookingItemDTO(a.getId(), patientId, null))); // patientName opcional aquí
-      dto.setStatus("BOOKED");
-      out.add(dto);
-    }
+    for (var a : mine) out.add(patientView(a, proNames.getOrDefault(a.getProfessionalId(), null), where.get(range(a))));
     return out;
   }
+
+  public static ProRange range(Appointment a){
+    return new ProRange(a.getProfessionalId(), a.getStartTs(), a.getEndTs());
+  }
+
+  /** One row of the patient view (also built by the reactive controller). */
+  public static SlotViewDTO patientView(Appointment a, String proName, LocationType lt){
+    // normalizar a múltiplos del slot si querés; por ahora usamos el tramo exacto de la cita
+    var dto = new SlotViewDTO();
+    dto.setProfessionalId(a.getProfessionalId());
+    dto.setProfessionalName(proName);
+    dto.setStartTs(OffsetDateTime.ofInstant(a.getStartTs(), ZoneOffset.UTC));
+    dto.setEndTs(OffsetDateTime.ofInstant(a.getEndTs(), ZoneOffset.UTC));
+    dto.setLocationType(lt);
+    dto.setOverlapCount(1);
+    dto.setBookings(List.of(new BookingItemDTO(a.getId(), a.getPatientId(), null))); // patientName opcional aquí
+    dto.setStatus("BOOKED");
+    return dto;
+  }
 }
@@ -0,0 +1,46 @@
+// src/main/java/com/gerardo/appointments/service/WebhookNotificationChannel.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.OutboxEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Hands every event to the messaging gateway (email/SMS/WhatsApp) at {@code app.notifications.webhook-url}.
+ * Delivery is at-least-once, so the gateway must dedupe on {@code X-Event-Id}. Anything but a 2xx is a retry.
+ */
+@Component
+@Primary
+@ConditionalOnProperty("app.notifications.webhook-url")
+public class WebhookNotificationChannel implements NotificationChannel {
+  private final URI url;
+  private final Duration timeout;
+  private final HttpClient http;
+
+  public WebhookNotificationChannel(@Value("${app.notifications.webhook-url}") URI url,
+                                    @Value("${app.notifications.connect-timeout:PT2S}") Duration connectTimeout,
+                                    @Value("${app.notifications.timeout:PT5S}") Duration timeout){
+    this.url = url; this.timeout = timeout;
+    this.http = HttpClient.newBuilder().connectTimeout(connectTimeout).build();
+  }
+
+  @Override
+  public void send(OutboxEvent e) throws IOException, InterruptedException {
+    var req = HttpRequest.newBuilder(url).timeout(timeout)
+        .header("Content-Type", "application/json")
+        .header("X-Event-Id", e.getId())
+        .header("X-Event-Type", e.getType())
+        .POST(HttpRequest.BodyPublishers.ofString(e.getPayloadJson())).build();
+    var res = http.send(req, HttpResponse.BodyHandlers.discarding());
+    if (res.statusCode() / 100 != 2) throw new IOException("webhook " + res.statusCode() + " for " + e.getType() + " " + e.getId());
+  }
+}
@@ -1,11 +1,14 @@
 package com.gerardo.appointments.web;
 
 import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.dto.BatchItemResult;
 import com.gerardo.appointments.dto.BookRequest;
 import com.gerardo.appointments.dto.CancelRequest;
 import com.gerardo.appointments.service.AppointmentService;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/appointments")
 public class AppointmentController {
@@ -21,6 +24,12 @@ public class AppointmentController {
     return svc.book(r.getProfessionalId(), r.getPatientId(), r.getStartTs(), r.getEndTs());
   }
 
+  // serie de turnos: un resultado por item (CREATED | CONFLICT | INVALID)
+  @PostMapping("/batch")
+  public List<BatchItemResult> bookAll(@RequestBody List<BookRequest> rs) {
+    return svc.bookAll(rs);
+  }
+
   @PostMapping("/{id}/cancel")
   public void cancel(@PathVariable String id, @RequestBody CancelRequest r) {
     svc.cancel(id, r.getReason());
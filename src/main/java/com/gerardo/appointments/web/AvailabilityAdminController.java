@@ -0,0 +1,21 @@
+// src/main/java/com/gerardo/appointments/web/AvailabilityAdminController.java
+package com.gerardo.appointments.web;
+
+import com.gerardo.appointments.service.AvailabilityService;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/availability")
+public class AvailabilityAdminController {
+  private final AvailabilityService svc;
+  public AvailabilityAdminController(AvailabilityService svc){ this.svc = svc; }
+
+  /** Folds overlapping / adjacent blocks stored before writes were normalized (one professional or all). */
+  @PostMapping("/compact")
+  public Map<String, Object> compact(@RequestParam(required = false) String professionalId){
+    if (professionalId == null) return Map.copyOf(svc.compactAll());
+    return Map.of("professionalId", professionalId, "absorbed", svc.compact(professionalId));
+  }
+}
@@ -2,44 +2,53 @@
 package com.gerardo.appointments.web;
 
 import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.dto.BatchItemResult;
 import com.gerardo.appointments.dto.BlockDTO;
-import com.gerardo.appointments.dto.SlotDTO;
 import com.gerardo.appointments.service.AvailabilityService;
-import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.List;
 
+// slots: AvailabilitySlotsController (servlet) / ReactiveAvailabilityController (perfil reactive)
 @RestController
 @RequestMapping("/api/professionals/{proId}")
 public class AvailabilityController {
   private final AvailabilityService svc;
   public AvailabilityController(AvailabilityService s){ this.svc=s; }
 
+  // se guarda fusionada con las ventanas OPEN de la misma ubicación que pisa o toca: devuelve el bloque resultante
   @PostMapping("/availability/blocks")
   public BlockDTO addOpenBlock(@PathVariable String proId, @RequestBody BlockDTO req){
-    AvailabilityBlock b = svc.addOpenBlock(proId, req.getStartTs(), req.getEndTs(), req.getReason());
+    return dto(svc.addOpenBlock(proId, req.getStartTs(), req.getEndTs(), req.getReason(), req.getLocationType()));
+  }
+
+  // cierra un tramo: recorta / parte las ventanas OPEN y deja un bloque cerrado (corta también las horas recurrentes)
+  @PostMapping("/availability/close")
+  public BlockDTO close(@PathVariable String proId, @RequestBody BlockDTO req){
+    if (req.getStartTs() == null || req.getEndTs() == null || !req.getStartTs().isBefore(req.getEndTs()))
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "startTs must be before endTs");
+    return dto(svc.closeRange(proId, req.getStartTs(), req.getEndTs(), req.getReason()));
+  }
+
+  // alta masiva de ventanas: un resultado por item (CREATED | CONFLICT | INVALID)
+  @PostMapping("/availability/blocks/batch")
+  public List<BatchItemResult> addOpenBlocks(@PathVariable String proId, @RequestBody List<BlockDTO> reqs){
+    return svc.addOpenBlocks(proId, reqs);
+  }
+
+  @DeleteMapping("/availability/blocks/{blockId}")
+  public void removeBlock(@PathVariable String proId, @PathVariable String blockId){ svc.removeBlock(proId, blockId); }
+
+  private static BlockDTO dto(AvailabilityBlock b){
     var dto = new BlockDTO();
     dto.setId(b.getId()); dto.setProfessionalId(b.getProfessionalId());
     dto.setStartTs(OffsetDateTime.ofInstant(b.getStartTs(), java.time.ZoneOffset.UTC));
     dto.setEndTs(OffsetDateTime.ofInstant(b.getEndTs(), java.time.ZoneOffset.UTC));
-    dto.setReason(b.getReason()); dto.setOpen(true);
-    // dentro de addOpenBlock(...)
-    var lt = req.getLocationType() == null ? com.gerardo.appointments.domain.LocationType.HOSPITAL : req.getLocationType();
-    b.setLocationType(lt);
+    dto.setReason(b.getReason()); dto.setOpen(b.isOpen());
+    dto.setLocationType(b.getLocationType());
     return dto;
   }
-
-  @DeleteMapping("/availability/blocks/{blockId}")
-  public void removeBlock(@PathVariable String blockId){ svc.removeBlock(blockId); }
-
-  @GetMapping("/slots")
-  public List<SlotDTO> slots(@PathVariable String proId,
-      @RequestParam @DateTimeFormat(iso= DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
-      @RequestParam @DateTimeFormat(iso= DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
-      @RequestParam(defaultValue="30") int slotMinutes){
-    return svc.computeSlots(proId, from, to, Duration.ofMinutes(slotMinutes));
-  }
 }
@@ -0,0 +1,53 @@
+// src/main/java/com/gerardo/appointments/web/AvailabilitySlotsController.java
+package com.gerardo.appointments.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gerardo.appointments.dto.SlotDTO;
+import com.gerardo.appointments.service.AgendaVersions;
+import com.gerardo.appointments.service.AvailabilityService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/** Free slots of a professional, servlet mode (the reactive profile serves the same routes with WebFlux). */
+@RestController
+@RequestMapping("/api/professionals/{proId}")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class AvailabilitySlotsController {
+  private final AvailabilityService svc;
+  private final AgendaVersions versions;
+  private final ObjectMapper om;
+  public AvailabilitySlotsController(AvailabilityService s, AgendaVersions v, ObjectMapper om){ this.svc=s; this.versions=v; this.om=om; }
+
+  @GetMapping("/slots")
+  public List<SlotDTO> slots(@PathVariable String proId,
+      @RequestParam @DateTimeFormat(iso= DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso= DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue="30") int slotMinutes,
+      WebRequest request){
+    // If-None-Match con la misma versión de agenda => 304 sin leer citas ni bloques
+    var etag = ETags.of(versions.current(proId), "json", from, to, slotMinutes);
+    if (request.checkNotModified(etag)) return null;
+    return svc.computeSlots(proId, from, to, Duration.ofMinutes(slotMinutes));
+  }
+
+  // Accept: application/x-ndjson => streaming, memoria constante sin importar el rango
+  @GetMapping(path="/slots", produces=Ndjson.MEDIA_TYPE)
+  public ResponseEntity<StreamingResponseBody> slotsStream(@PathVariable String proId,
+      @RequestParam @DateTimeFormat(iso= DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso= DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue="30") int slotMinutes,
+      WebRequest request){
+    var etag = ETags.of(versions.current(proId), "ndjson", from, to, slotMinutes);
+    if (request.checkNotModified(etag)) return null;
+    return ResponseEntity.ok().contentType(Ndjson.NDJSON).eTag(etag).body(Ndjson.<SlotDTO>stream(om,
+        sink -> svc.forEachSlot(proId, from, to, Duration.ofMinutes(slotMinutes), sink)));
+  }
+}
@@ -0,0 +1,40 @@
+// src/main/java/com/gerardo/appointments/web/CacheStatsController.java
+package com.gerardo.appointments.web;
+
+import com.gerardo.appointments.service.AgendaIndex;
+import com.gerardo.appointments.service.NameLookup;
+import com.gerardo.appointments.service.OccupancyBitmaps;
+import com.gerardo.appointments.service.SlotCache;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/caches")
+public class CacheStatsController {
+  private final AgendaIndex agendaIndex;
+  private final OccupancyBitmaps bitmaps;
+  private final NameLookup names;
+  private final SlotCache slots;
+  public CacheStatsController(AgendaIndex agendaIndex, OccupancyBitmaps bitmaps, NameLookup names, SlotCache slots){
+    this.agendaIndex = agendaIndex; this.bitmaps = bitmaps; this.names = names; this.slots = slots;
+  }
+
+  @GetMapping
+  public Map<String, Object> stats(){
+    var out = new LinkedHashMap<String, Object>();
+    out.put("agendaIndex", agendaIndex.stats());
+    out.put("bitmaps", bitmaps.stats());
+    out.put("names", names.stats());
+    out.put("slots", slots.stats());
+    return out;
+  }
+
+  /** Regenerates the occupancy bitmaps from appointments / availability_blocks (one professional or all). */
+  @PostMapping("/bitmaps/rebuild")
+  public Map<String, Object> rebuildBitmaps(@RequestParam(required = false) String professionalId){
+    if (professionalId == null) { bitmaps.rebuildAll(); return Map.of("professionals", "all"); }
+    return Map.of("professionalId", professionalId, "days", bitmaps.rebuild(professionalId));
+  }
+}
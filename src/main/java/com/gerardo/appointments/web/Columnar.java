@@ -0,0 +1,18 @@
+// src/main/java/com/gerardo/appointments/web/Columnar.java
+package com.gerardo.appointments.web;
+
+/** Media types of the columnar slot view ({@code SlotColumnsDTO}); {@code ?format=columnar} also selects it. */
+final class Columnar {
+  static final String JSON = "application/vnd.appointments.slot-columns+json";
+  static final String CBOR = "application/cbor";
+  static final String SMILE = "application/x-jackson-smile";
+
+  private Columnar() {}
+
+  /** ETag variant: the same columns in another encoding are another representation. */
+  static String representation(String accept){
+    if (accept != null && accept.contains(CBOR)) return "columnar-cbor";
+    if (accept != null && accept.contains(SMILE)) return "columnar-smile";
+    return "columnar";
+  }
+}
@@ -0,0 +1,33 @@
+// src/main/java/com/gerardo/appointments/web/ETags.java
+package com.gerardo.appointments.web;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Slot ETags: agenda version + SHA-256 of the query (params and representation). Each param is written with its
+ * length first, so ("a,b", "c") and ("a", "b,c") do not meet; a 304 on a colliding tag would serve another query.
+ */
+final class ETags {
+  private ETags() {}
+
+  static String of(long version, Object... query){
+    var canonical = new StringBuilder();
+    for (var p : query) {
+      if (p == null) { canonical.append("-1;"); continue; }
+      var s = p.toString();
+      canonical.append(s.length()).append(':').append(s).append(';');
+    }
+    return "\"v" + version + "-" + Base64.getUrlEncoder().withoutPadding().encodeToString(sha256(canonical)) + "\"";
+  }
+
+  private static byte[] sha256(CharSequence s){
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(s.toString().getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is required on every JVM", e);   // no pasa
+    }
+  }
+}
@@ -0,0 +1,37 @@
+// src/main/java/com/gerardo/appointments/web/Ndjson.java
+package com.gerardo.appointments.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/** Newline-delimited JSON: every item is serialized and written as soon as the producer emits it. */
+final class Ndjson {
+  static final String MEDIA_TYPE = "application/x-ndjson";
+  static final MediaType NDJSON = MediaType.parseMediaType(MEDIA_TYPE);
+
+  private Ndjson() {}
+
+  static <T> StreamingResponseBody stream(ObjectMapper om, Consumer<Consumer<T>> producer){
+    // sin flush por item: el generador vacía su buffer cuando se llena
+    var writer = om.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    return out -> {
+      try (JsonGenerator gen = om.getFactory().createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+        producer.accept(item -> {
+          try {
+            writer.writeValue(gen, item);
+            gen.writeRaw('\n');
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        });
+      }
+    };
+  }
+}
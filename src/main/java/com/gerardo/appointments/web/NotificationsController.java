@@ -2,15 +2,22 @@
 package com.gerardo.appointments.web;
 
 import com.gerardo.appointments.service.NotificationHub;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)   // perfil reactive: Reactive*Controller
 @RequestMapping("/api/notifications")
 public class NotificationsController {
+  private final NotificationHub hub;
+  public NotificationsController(NotificationHub hub){ this.hub = hub; }
+
+  // Last-Event-ID: el navegador lo reenvía al reconectar => replay desde el outbox
   @GetMapping(path="/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-  public SseEmitter stream(@RequestParam Long patientId){
-    return NotificationHub.subscribe(patientId);
+  public SseEmitter stream(@RequestParam String patientId,
+                           @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId){
+    return hub.subscribe(patientId, lastEventId);
   }
 }
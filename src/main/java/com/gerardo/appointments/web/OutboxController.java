@@ -0,0 +1,30 @@
+// src/main/java/com/gerardo/appointments/web/OutboxController.java
+package com.gerardo.appointments.web;
+
+import com.gerardo.appointments.domain.OutboxEvent;
+import com.gerardo.appointments.service.OutboxPump;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/outbox")
+public class OutboxController {
+  private final OutboxPump pump;
+  public OutboxController(OutboxPump pump){ this.pump = pump; }
+
+  @GetMapping
+  public OutboxPump.Stats stats(){ return pump.stats(); }
+
+  // eventos que agotaron app.outbox.max-attempts, los más viejos primero
+  @GetMapping("/dead")
+  public List<OutboxEvent> dead(@RequestParam(defaultValue = "100") int limit){
+    return pump.deadLetters(Math.max(1, Math.min(limit, 1000)));
+  }
+
+  @PostMapping("/dead/{id}/retry")
+  public ResponseEntity<Void> retry(@PathVariable String id){
+    return pump.retryDead(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+  }
+}
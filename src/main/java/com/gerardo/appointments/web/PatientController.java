@@ -1,19 +1,62 @@
 // PatientController.java (basic CRUD)
 package com.gerardo.appointments.web;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AppointmentStatus;
 import com.gerardo.appointments.domain.Patient;
+import com.gerardo.appointments.dto.ChangePage;
+import com.gerardo.appointments.dto.CursorPage;
 import com.gerardo.appointments.repo.PatientRepo;
+import com.gerardo.appointments.service.AppointmentArchive;
+import com.gerardo.appointments.service.AppointmentService;
+import com.gerardo.appointments.service.ChangeLog;
+import com.gerardo.appointments.service.Listings;
+import com.gerardo.appointments.service.NameLookup;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 
 @RestController @RequestMapping("/api/patients") @RequiredArgsConstructor
 public class PatientController {
   private final PatientRepo repo;
-  @GetMapping public List<Patient> all(){ return repo.findAll(); }
-  @PostMapping public Patient create(@RequestBody Patient p){ return repo.save(p); }
+  private final Listings listings;
+  private final NameLookup names;      // nombres cacheados para las vistas de slots
+  private final AppointmentService appointments;
+  private final AppointmentArchive history;
+  private final ChangeLog changes;
+  private final ObjectMapper om;
+
+  // ?after=<último id>&limit=100&fields=fullName,email  (keyset sobre _id)
+  @GetMapping public CursorPage<Object> all(@RequestParam(required = false) String after, @RequestParam(defaultValue = "100") int limit,
+                                            @RequestParam(required = false) List<String> fields){
+    return listings.page(Patient.class, after, limit, fields);
+  }
+  // volcado completo, un documento por línea
+  @GetMapping(path = "/export", produces = Ndjson.MEDIA_TYPE)
+  public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) List<String> fields){
+    return ResponseEntity.ok().contentType(Ndjson.NDJSON).body(Ndjson.<Object>stream(om, sink -> listings.forEach(Patient.class, fields, sink)));
+  }
+  @PostMapping public Patient create(@RequestBody Patient p){ p = repo.save(p); names.evictPatient(p.getId()); return p; }
   @GetMapping("/{id}") public Patient one(@PathVariable String id){ return repo.findById(id).orElseThrow(); }
-  @PutMapping("/{id}") public Patient up(@PathVariable String id, @RequestBody Patient p){ p.setId(id); return repo.save(p); }
-  @DeleteMapping("/{id}") public void del(@PathVariable String id){ repo.deleteById(id); }
+  @PutMapping("/{id}") public Patient up(@PathVariable String id, @RequestBody Patient p){ p.setId(id); p = repo.save(p); names.evictPatient(id); appointments.patientChanged(id); return p; }
+  @DeleteMapping("/{id}") public void del(@PathVariable String id){ repo.deleteById(id); names.evictPatient(id); appointments.patientChanged(id); }
+  // historia clínica de turnos: ?from&to[&status]; antes del horizonte de archivo también lee appointments_archive
+  @GetMapping("/{id}/appointments")
+  public List<Appointment> appointments(@PathVariable String id,
+                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+                                        @RequestParam(required = false) AppointmentStatus status){
+    return history.patient(id, status, from.toInstant(), to.toInstant());
+  }
+  // cambios de las citas del paciente desde el token (sin since: sólo el token actual); 410 = resincronizar
+  @GetMapping("/{id}/changes")
+  public ChangePage changes(@PathVariable String id, @RequestParam(required = false) String since, @RequestParam(defaultValue = "500") int limit){
+    return changes.patient(id, since, limit);
+  }
 }
@@ -1,19 +1,55 @@
 // ProfessionalController.java (CRUD)
 package com.gerardo.appointments.web;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gerardo.appointments.domain.AgendaChange.Op;
 import com.gerardo.appointments.domain.Professional;
+import com.gerardo.appointments.dto.ChangePage;
+import com.gerardo.appointments.dto.CursorPage;
 import com.gerardo.appointments.repo.ProfessionalRepo;
+import com.gerardo.appointments.service.AgendaIndex;
+import com.gerardo.appointments.service.AgendaVersions;
+import com.gerardo.appointments.service.ChangeLog;
+import com.gerardo.appointments.service.Listings;
+import com.gerardo.appointments.service.NameLookup;
+import com.gerardo.appointments.service.OccupancyBitmaps;
+import com.gerardo.appointments.service.SlotCache;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
 @RestController @RequestMapping("/api/professionals") @RequiredArgsConstructor
 public class ProfessionalController {
   private final ProfessionalRepo repo;
-  @GetMapping public List<Professional> all(){ return repo.findAll(); }
-  @PostMapping public Professional create(@RequestBody Professional p){ return repo.save(p); }
+  private final AgendaIndex agendas;   // guarda la disponibilidad semanal en memoria
+  private final AgendaVersions versions;
+  private final OccupancyBitmaps bitmaps;  // los bitmaps incluyen las reglas semanales
+  private final SlotCache slots;           // días materializados: nombre, capacidad y reglas semanales
+  private final Listings listings;
+  private final NameLookup names;      // nombres cacheados para las vistas de slots
+  private final ChangeLog changes;
+  private final ObjectMapper om;
+
+  // ?after=<último id>&limit=100&fields=fullName,email  (keyset sobre _id)
+  @GetMapping public CursorPage<Object> all(@RequestParam(required = false) String after, @RequestParam(defaultValue = "100") int limit,
+                                            @RequestParam(required = false) List<String> fields){
+    return listings.page(Professional.class, after, limit, fields);
+  }
+  // volcado completo, un documento por línea
+  @GetMapping(path = "/export", produces = Ndjson.MEDIA_TYPE)
+  public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) List<String> fields){
+    return ResponseEntity.ok().contentType(Ndjson.NDJSON).body(Ndjson.<Object>stream(om, sink -> listings.forEach(Professional.class, fields, sink)));
+  }
+  @PostMapping public Professional create(@RequestBody Professional p){ p = repo.save(p); agendas.invalidate(p.getId()); bitmaps.invalidate(p.getId()); slots.invalidate(p.getId()); names.evictProfessional(p.getId()); changes.professionalChanged(Op.CREATED, p.getId(), p); return p; }
   @GetMapping("/{id}") public Professional one(@PathVariable String id){ return repo.findById(id).orElseThrow(); }
-  @PutMapping("/{id}") public Professional up(@PathVariable String id, @RequestBody Professional p){ p.setId(id); return repo.save(p); }
-  @DeleteMapping("/{id}") public void del(@PathVariable String id){ repo.deleteById(id); }
+  @PutMapping("/{id}") public Professional up(@PathVariable String id, @RequestBody Professional p){ p.setId(id); p = repo.save(p); agendas.invalidate(id); bitmaps.invalidate(id); slots.invalidate(id); names.evictProfessional(id); versions.bump(id); changes.professionalChanged(Op.UPDATED, id, p); return p; }
+  @DeleteMapping("/{id}") public void del(@PathVariable String id){ repo.deleteById(id); agendas.invalidate(id); bitmaps.invalidate(id); slots.invalidate(id); names.evictProfessional(id); versions.bump(id); changes.professionalChanged(Op.REMOVED, id, null); }
+  // cambios de citas, bloques y horario semanal / capacidad desde el token (sin since: sólo el token actual); 410 = resincronizar
+  @GetMapping("/{id}/changes")
+  public ChangePage changes(@PathVariable String id, @RequestParam(required = false) String since, @RequestParam(defaultValue = "500") int limit){
+    return changes.professional(id, since, limit);
+  }
 }
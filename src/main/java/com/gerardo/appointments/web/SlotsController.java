@@ -1,19 +1,52 @@
 // src/main/java/com/gerardo/appointments/web/SlotsController.java
 package com.gerardo.appointments.web;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gerardo.appointments.domain.LocationType;
+import com.gerardo.appointments.dto.MonthSummaryDTO;
+import com.gerardo.appointments.dto.SlotColumnsDTO;
 import com.gerardo.appointments.dto.SlotViewDTO;
+import com.gerardo.appointments.service.AgendaVersions;
+import com.gerardo.appointments.service.AvailabilitySummary;
+import com.gerardo.appointments.service.SlotSearchService;
 import com.gerardo.appointments.service.SlotsService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.OffsetDateTime;
+import java.time.YearMonth;
 import java.util.List;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)   // perfil reactive: Reactive*Controller
 @RequestMapping("/api/slots")
 public class SlotsController {
   private final SlotsService svc;
-  public SlotsController(SlotsService svc){ this.svc = svc; }
+  private final SlotSearchService search;
+  private final AgendaVersions versions;
+  private final AvailabilitySummary summary;
+  private final ObjectMapper om;
+  public SlotsController(SlotsService svc, SlotSearchService search, AgendaVersions versions, AvailabilitySummary summary, ObjectMapper om){
+    this.svc = svc; this.search = search; this.versions = versions; this.summary = summary; this.om = om;
+  }
+
+  // primeros N slots libres entre todos los profesionales de una especialidad
+  @GetMapping("/search")
+  public List<SlotViewDTO> earliest(
+      @RequestParam String specialty,
+      @RequestParam(required = false) LocationType locationType,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue = "30") int slotMinutes,
+      @RequestParam(defaultValue = "10") int limit
+  ){
+    return search.earliest(specialty, locationType, from, to, slotMinutes, limit);
+  }
 
   @GetMapping("/professionals/{professionalId}")
   public List<SlotViewDTO> byProfessional(
@@ -21,11 +54,76 @@ public class SlotsController {
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
       @RequestParam(defaultValue = "30") int slotMinutes,
-      @RequestParam(required = false) String include // "available" | "booked" | otro => all
+      @RequestParam(required = false) String include, // "available" | "booked" | otro => all
+      WebRequest request
   ){
+    // If-None-Match con la misma versión de agenda => 304 sin leer citas ni bloques
+    var etag = ETags.of(versions.current(professionalId), "json", from, to, slotMinutes, include);
+    if (request.checkNotModified(etag)) return null;
     return svc.professionalSlots(professionalId, from, to, slotMinutes, include);
   }
 
+  // Accept: application/x-ndjson => un slot por línea, generado y escrito sobre la marcha
+  @GetMapping(path = "/professionals/{professionalId}", produces = Ndjson.MEDIA_TYPE)
+  public ResponseEntity<StreamingResponseBody> byProfessionalStream(
+      @PathVariable String professionalId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue = "30") int slotMinutes,
+      @RequestParam(required = false) String include,
+      WebRequest request
+  ){
+    var etag = ETags.of(versions.current(professionalId), "ndjson", from, to, slotMinutes, include);
+    if (request.checkNotModified(etag)) return null;
+    return ResponseEntity.ok().contentType(Ndjson.NDJSON).eTag(etag).body(Ndjson.<SlotViewDTO>stream(om,
+        sink -> svc.forEachProfessionalSlot(professionalId, from, to, slotMinutes, include, sink)));
+  }
+
+  // Accept: application/vnd.appointments.slot-columns+json | application/cbor | application/x-jackson-smile,
+  // o ?format=columnar => cabecera común + columnas (offsets desde una época base) en lugar de un objeto por slot
+  @GetMapping(path = "/professionals/{professionalId}", produces = {Columnar.JSON, Columnar.CBOR, Columnar.SMILE})
+  public SlotColumnsDTO byProfessionalColumns(
+      @PathVariable String professionalId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue = "30") int slotMinutes,
+      @RequestParam(required = false) String include,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+      WebRequest request
+  ){
+    var etag = ETags.of(versions.current(professionalId), Columnar.representation(accept), from, to, slotMinutes, include);
+    if (request.checkNotModified(etag)) return null;
+    var columns = new SlotColumnsDTO.Builder(professionalId, slotMinutes, from.toInstant());
+    svc.forEachProfessionalSlot(professionalId, from, to, slotMinutes, include, columns);
+    return columns.build();
+  }
+
+  @GetMapping(path = "/professionals/{professionalId}", params = "format=columnar")
+  public SlotColumnsDTO byProfessionalColumnsParam(
+      @PathVariable String professionalId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue = "30") int slotMinutes,
+      @RequestParam(required = false) String include,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+      WebRequest request
+  ){
+    return byProfessionalColumns(professionalId, from, to, slotMinutes, include, accept, request);
+  }
+
+  // vista mensual: libres / ocupados / utilización por día local (app.tz-availability), sin generar slots
+  @GetMapping("/professionals/{professionalId}/summary")
+  public MonthSummaryDTO monthSummary(
+      @PathVariable String professionalId,
+      @RequestParam YearMonth month,                  // 2025-09
+      @RequestParam(defaultValue = "30") int slotMinutes,
+      WebRequest request
+  ){
+    var etag = ETags.of(versions.current(professionalId), "summary", month, slotMinutes);
+    if (request.checkNotModified(etag)) return null;
+    return summary.month(professionalId, month, slotMinutes);
+  }
+
   @GetMapping("/patients/{patientId}")
   public List<SlotViewDTO> byPatient(
       @PathVariable String patientId,
@@ -0,0 +1,77 @@
+// src/reactive/java/com/gerardo/appointments/config/ReactiveConfig.java
+package com.gerardo.appointments.config;
+
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.config.BlockingExecutionConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Reactive profile: Netty as the server (Tomcat is still on the classpath through the servlet starter and
+ * would otherwise win), and controllers that still return plain values (CRUD, bookings, admin) run on a
+ * bounded pool instead of the event loop, since they call the blocking repositories. WebFlux registers Smile
+ * by default but not Jackson CBOR, which the columnar slot view also offers.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfig implements WebFluxConfigurer, DisposableBean {
+  private final ExecutorService blocking;
+
+  public ReactiveConfig(@Value("${app.reactive.blocking-threads:64}") int threads){
+    this.blocking = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), ExecutorsConfig.named("blocking-"));
+  }
+
+  @Bean
+  public NettyReactiveWebServerFactory nettyReactiveWebServerFactory(){
+    return new NettyReactiveWebServerFactory();
+  }
+
+  @Override
+  public void configureBlockingExecution(BlockingExecutionConfigurer configurer){
+    configurer.setExecutor(new TaskExecutorAdapter(blocking));
+  }
+
+  @Override
+  public void configureHttpMessageCodecs(ServerCodecConfigurer configurer){
+    configurer.customCodecs().register(new CborValueEncoder());
+    configurer.customCodecs().register(new Jackson2CborDecoder());
+  }
+
+  @Override
+  public void destroy(){ blocking.shutdown(); }
+
+  /**
+   * Jackson CBOR for single bodies (the columnar view). Spring's encoder refuses every publisher, even a Mono,
+   * and custom codecs are consulted before JSON, so it only answers an explicit {@code Accept: application/cbor}.
+   */
+  static final class CborValueEncoder extends Jackson2CborEncoder {
+    @Override
+    public boolean canEncode(ResolvableType type, MimeType mime){
+      return mime != null && mime.isConcrete() && super.canEncode(type, mime);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> input, DataBufferFactory factory, ResolvableType type, MimeType mime, Map<String, Object> hints){
+      return Mono.from(input).map(v -> encodeValue(v, factory, type, mime, hints)).flux();
+    }
+  }
+}
@@ -0,0 +1,21 @@
+// src/reactive/java/com/gerardo/appointments/repo/ReactiveAppointmentRepo.java
+package com.gerardo.appointments.repo;
+
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AppointmentStatus;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+
+/** Reactive mirror of {@link AppointmentRepo} (perfil reactive). */
+public interface ReactiveAppointmentRepo extends ReactiveMongoRepository<Appointment, String> {
+
+  // overlap en rango (profesional)
+  Flux<Appointment> findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(
+          String professionalId, AppointmentStatus status, Instant from, Instant to);
+
+  // overlap en rango (paciente)
+  Flux<Appointment> findByPatientIdAndStatusAndEndTsAfterAndStartTsBefore(
+          String patientId, AppointmentStatus status, Instant from, Instant to);
+}
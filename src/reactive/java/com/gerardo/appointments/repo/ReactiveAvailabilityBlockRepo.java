@@ -0,0 +1,17 @@
+// src/reactive/java/com/gerardo/appointments/repo/ReactiveAvailabilityBlockRepo.java
+package com.gerardo.appointments.repo;
+
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+
+/** Reactive mirror of {@link AvailabilityBlockRepo} (perfil reactive). */
+public interface ReactiveAvailabilityBlockRepo extends ReactiveMongoRepository<AvailabilityBlock, String>, ReactiveAvailabilityBlockRepoCustom {
+
+  Flux<AvailabilityBlock> findByProfessionalId(String professionalId);
+
+  // windows overlapping a range
+  Flux<AvailabilityBlock> findByProfessionalIdAndEndTsAfterAndStartTsBefore(String professionalId, Instant from, Instant to);
+}
@@ -0,0 +1,14 @@
+// src/reactive/java/com/gerardo/appointments/repo/ReactiveAvailabilityBlockRepoCustom.java
+package com.gerardo.appointments.repo;
+
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.repo.AvailabilityBlockRepoCustom.ProRange;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+
+public interface ReactiveAvailabilityBlockRepoCustom {
+
+  // blocks (OPEN or closed) overlapping any of the pairs, in a single $or query (sorted by professionalId, startTs)
+  Flux<AvailabilityBlock> findOverlappingAny(Collection<ProRange> ranges);
+}
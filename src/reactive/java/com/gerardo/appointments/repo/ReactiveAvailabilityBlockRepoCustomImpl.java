@@ -0,0 +1,32 @@
+// src/reactive/java/com/gerardo/appointments/repo/ReactiveAvailabilityBlockRepoCustomImpl.java
+package com.gerardo.appointments.repo;
+
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.repo.AvailabilityBlockRepoCustom.ProRange;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+/** Fragment picked up by Spring Data for {@link ReactiveAvailabilityBlockRepo}; same query as {@link AvailabilityBlockRepoCustomImpl}. */
+public class ReactiveAvailabilityBlockRepoCustomImpl implements ReactiveAvailabilityBlockRepoCustom {
+  private final ReactiveMongoTemplate mongo;
+  public ReactiveAvailabilityBlockRepoCustomImpl(ReactiveMongoTemplate mongo){ this.mongo = mongo; }
+
+  @Override
+  public Flux<AvailabilityBlock> findOverlappingAny(Collection<ProRange> ranges){
+    var distinct = new LinkedHashSet<>(ranges);
+    if (distinct.isEmpty()) return Flux.empty();
+    var clauses = distinct.stream()
+        .map(r -> Criteria.where("professionalId").is(r.professionalId())
+                          .and("endTs").gt(r.from())
+                          .and("startTs").lt(r.to()))
+        .toArray(Criteria[]::new);
+    var q = Query.query(new Criteria().orOperator(clauses)).with(Sort.by("professionalId", "startTs"));
+    return mongo.find(q, AvailabilityBlock.class);
+  }
+}
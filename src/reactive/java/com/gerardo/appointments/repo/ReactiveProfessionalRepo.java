@@ -0,0 +1,9 @@
+// src/reactive/java/com/gerardo/appointments/repo/ReactiveProfessionalRepo.java
+package com.gerardo.appointments.repo;
+
+import com.gerardo.appointments.domain.Professional;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+/** Reactive reads of professionals (perfil reactive): weekly rules and names for the patient view. */
+public interface ReactiveProfessionalRepo extends ReactiveMongoRepository<Professional, String> {
+}
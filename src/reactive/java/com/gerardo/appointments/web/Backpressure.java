@@ -0,0 +1,36 @@
+// src/reactive/java/com/gerardo/appointments/web/Backpressure.java
+package com.gerardo.appointments.web;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.BiFunction;
+
+/**
+ * A slot range as a pull-based Flux: the range is split at the cuts (see {@code AvailabilityWindows.cuts}) and
+ * each piece is computed on {@code boundedElastic} only once the subscriber has taken the previous one. No thread
+ * waits for demand in between, so a slow client holds at most one piece in memory and no worker. Cancel drops the
+ * pieces not started yet.
+ */
+final class Backpressure {
+
+  private Backpressure() {}
+
+  static <T> Flux<T> pieces(Callable<List<Instant>> cuts, Instant from, Instant to, BiFunction<Instant, Instant, List<T>> piece){
+    return Mono.fromCallable(cuts).subscribeOn(Schedulers.boundedElastic())
+        .flatMapMany(cs -> {
+          var bounds = new ArrayList<Instant>(cs.size() + 2);
+          bounds.add(from); bounds.addAll(cs); bounds.add(to);
+          // prefetch 1 en ambos pasos: la pieza siguiente se calcula recién cuando el cliente vació la anterior
+          return Flux.range(0, bounds.size() - 1)
+              .concatMap(i -> Mono.fromCallable(() -> piece.apply(bounds.get(i), bounds.get(i + 1)))
+                                  .subscribeOn(Schedulers.boundedElastic()), 1)
+              .flatMapIterable(list -> list, 1);
+        });
+  }
+}
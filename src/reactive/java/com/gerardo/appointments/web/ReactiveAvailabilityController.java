@@ -0,0 +1,59 @@
+// src/reactive/java/com/gerardo/appointments/web/ReactiveAvailabilityController.java
+package com.gerardo.appointments.web;
+
+import com.gerardo.appointments.dto.SlotDTO;
+import com.gerardo.appointments.service.AgendaVersions;
+import com.gerardo.appointments.service.AvailabilityService;
+import com.gerardo.appointments.service.AvailabilityWindows;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+/** {@link AvailabilitySlotsController} on WebFlux; the block writes stay in {@link AvailabilityController}. */
+@RestController
+@RequestMapping("/api/professionals/{proId}")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAvailabilityController {
+  private final AvailabilityService svc;
+  private final AgendaVersions versions;
+  private final AvailabilityWindows windows;
+  public ReactiveAvailabilityController(AvailabilityService s, AgendaVersions v, AvailabilityWindows w){ this.svc=s; this.versions=v; this.windows=w; }
+
+  @GetMapping("/slots")
+  public Mono<ResponseEntity<Flux<SlotDTO>>> slots(@PathVariable String proId,
+      @RequestParam @DateTimeFormat(iso= DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso= DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue="30") int slotMinutes,
+      ServerWebExchange exchange){
+    return slots(proId, from, to, slotMinutes, "json", exchange);
+  }
+
+  @GetMapping(path="/slots", produces=Ndjson.MEDIA_TYPE)
+  public Mono<ResponseEntity<Flux<SlotDTO>>> slotsStream(@PathVariable String proId,
+      @RequestParam @DateTimeFormat(iso= DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso= DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue="30") int slotMinutes,
+      ServerWebExchange exchange){
+    return slots(proId, from, to, slotMinutes, "ndjson", exchange);
+  }
+
+  private Mono<ResponseEntity<Flux<SlotDTO>>> slots(String proId, OffsetDateTime from, OffsetDateTime to, int slotMinutes,
+                                                    String representation, ServerWebExchange exchange){
+    return Mono.fromCallable(() -> versions.current(proId)).subscribeOn(Schedulers.boundedElastic())
+        .flatMap(v -> {
+          var etag = ETags.of(v, representation, from, to, slotMinutes);
+          if (exchange.checkNotModified(etag)) return Mono.empty();
+          return Mono.just(ResponseEntity.ok().eTag(etag).body(Backpressure.<SlotDTO>pieces(
+              () -> windows.cuts(proId, from.toInstant(), to.toInstant()), from.toInstant(), to.toInstant(),
+              (f, t) -> svc.computeSlots(proId, f.atOffset(from.getOffset()), t.atOffset(from.getOffset()), Duration.ofMinutes(slotMinutes)))));
+        });
+  }
+}
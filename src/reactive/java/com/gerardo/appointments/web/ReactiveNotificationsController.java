@@ -0,0 +1,39 @@
+// src/reactive/java/com/gerardo/appointments/web/ReactiveNotificationsController.java
+package com.gerardo.appointments.web;
+
+import com.gerardo.appointments.service.NotificationHub;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+
+/**
+ * SSE on WebFlux: an idle connection holds no thread. The hub only drains a subscriber while the
+ * client has demand, so a slow reader fills its bounded queue and hits the overflow policy.
+ */
+@RestController
+@RequestMapping("/api/notifications")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveNotificationsController {
+  private final NotificationHub hub;
+  public ReactiveNotificationsController(NotificationHub hub){ this.hub = hub; }
+
+  @GetMapping(path="/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public Flux<ServerSentEvent<String>> stream(@RequestParam String patientId,
+                                              @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId){
+    return Flux.create(sink -> {
+      var sub = hub.subscribe(patientId, lastEventId, new NotificationHub.Sink() {
+        @Override public void send(NotificationHub.Event e){
+          sink.next(e.comment() != null ? ServerSentEvent.<String>builder().comment(e.comment()).build()
+                                        : ServerSentEvent.builder(e.data()).id(e.id()).event(e.name()).build());
+        }
+        @Override public boolean ready(){ return sink.requestedFromDownstream() > 0; }
+        @Override public void complete(){ sink.complete(); }
+      });
+      sink.onRequest(n -> sub.resume());
+      sink.onDispose(sub::cancel);
+      sub.resume();   // lo que dejó el replay
+    });
+  }
+}
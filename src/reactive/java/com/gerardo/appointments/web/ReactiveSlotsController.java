@@ -0,0 +1,185 @@
+// src/reactive/java/com/gerardo/appointments/web/ReactiveSlotsController.java
+package com.gerardo.appointments.web;
+
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AppointmentStatus;
+import com.gerardo.appointments.domain.LocationType;
+import com.gerardo.appointments.dto.MonthSummaryDTO;
+import com.gerardo.appointments.dto.SlotColumnsDTO;
+import com.gerardo.appointments.dto.SlotViewDTO;
+import com.gerardo.appointments.repo.ReactiveAppointmentRepo;
+import com.gerardo.appointments.repo.ReactiveAvailabilityBlockRepo;
+import com.gerardo.appointments.repo.ReactiveProfessionalRepo;
+import com.gerardo.appointments.service.AgendaIndex;
+import com.gerardo.appointments.service.AgendaVersions;
+import com.gerardo.appointments.service.AppointmentArchive;
+import com.gerardo.appointments.service.AvailabilitySummary;
+import com.gerardo.appointments.service.AvailabilityWindows;
+import com.gerardo.appointments.service.SlotSearchService;
+import com.gerardo.appointments.service.SlotsService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** {@link SlotsController} on WebFlux: same routes, ETags and representations; slot streams honour back-pressure. */
+@RestController
+@RequestMapping("/api/slots")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSlotsController {
+  private final SlotsService svc;
+  private final SlotSearchService search;
+  private final AgendaVersions versions;
+  private final ReactiveAppointmentRepo appts;
+  private final ReactiveAvailabilityBlockRepo blocks;
+  private final ReactiveProfessionalRepo pros;
+  private final AppointmentArchive archive;
+  private final AvailabilitySummary summary;
+  private final AvailabilityWindows windows;
+  public ReactiveSlotsController(SlotsService svc, SlotSearchService search, AgendaVersions versions,
+                                 ReactiveAppointmentRepo appts, ReactiveAvailabilityBlockRepo blocks, ReactiveProfessionalRepo pros,
+                                 AppointmentArchive archive, AvailabilitySummary summary, AvailabilityWindows windows){
+    this.svc = svc; this.search = search; this.versions = versions; this.appts = appts;
+    this.blocks = blocks; this.pros = pros; this.archive = archive; this.summary = summary; this.windows = windows;
+  }
+
+  @GetMapping("/search")
+  public Mono<List<SlotViewDTO>> earliest(
+      @RequestParam String specialty,
+      @RequestParam(required = false) LocationType locationType,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue = "30") int slotMinutes,
+      @RequestParam(defaultValue = "10") int limit
+  ){
+    return Mono.fromCallable(() -> search.earliest(specialty, locationType, from, to, slotMinutes, limit))
+               .subscribeOn(Schedulers.boundedElastic());
+  }
+
+  @GetMapping("/professionals/{professionalId}")
+  public Mono<ResponseEntity<Flux<SlotViewDTO>>> byProfessional(
+      @PathVariable String professionalId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue = "30") int slotMinutes,
+      @RequestParam(required = false) String include,
+      ServerWebExchange exchange
+  ){
+    return slots(professionalId, from, to, slotMinutes, include, "json", exchange);
+  }
+
+  // Accept: application/x-ndjson => un slot por línea, generado al ritmo que lee el cliente
+  @GetMapping(path = "/professionals/{professionalId}", produces = Ndjson.MEDIA_TYPE)
+  public Mono<ResponseEntity<Flux<SlotViewDTO>>> byProfessionalStream(
+      @PathVariable String professionalId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue = "30") int slotMinutes,
+      @RequestParam(required = false) String include,
+      ServerWebExchange exchange
+  ){
+    return slots(professionalId, from, to, slotMinutes, include, "ndjson", exchange);
+  }
+
+  // vista columnar (Accept o ?format=columnar): se arma entera en boundedElastic y sale en un solo cuerpo
+  @GetMapping(path = "/professionals/{professionalId}", produces = {Columnar.JSON, Columnar.CBOR, Columnar.SMILE})
+  public Mono<ResponseEntity<SlotColumnsDTO>> byProfessionalColumns(
+      @PathVariable String professionalId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue = "30") int slotMinutes,
+      @RequestParam(required = false) String include,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+      ServerWebExchange exchange
+  ){
+    return Mono.fromCallable(() -> versions.current(professionalId)).subscribeOn(Schedulers.boundedElastic())
+        .flatMap(v -> {
+          var etag = ETags.of(v, Columnar.representation(accept), from, to, slotMinutes, include);
+          if (exchange.checkNotModified(etag)) return Mono.empty();
+          return Mono.fromCallable(() -> {
+            var columns = new SlotColumnsDTO.Builder(professionalId, slotMinutes, from.toInstant());
+            svc.forEachProfessionalSlot(professionalId, from, to, slotMinutes, include, columns);
+            return ResponseEntity.ok().eTag(etag).body(columns.build());
+          }).subscribeOn(Schedulers.boundedElastic());
+        });
+  }
+
+  @GetMapping(path = "/professionals/{professionalId}", params = "format=columnar")
+  public Mono<ResponseEntity<SlotColumnsDTO>> byProfessionalColumnsParam(
+      @PathVariable String professionalId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue = "30") int slotMinutes,
+      @RequestParam(required = false) String include,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+      ServerWebExchange exchange
+  ){
+    return byProfessionalColumns(professionalId, from, to, slotMinutes, include, accept, exchange);
+  }
+
+  @GetMapping("/professionals/{professionalId}/summary")
+  public Mono<ResponseEntity<MonthSummaryDTO>> monthSummary(
+      @PathVariable String professionalId,
+      @RequestParam YearMonth month,
+      @RequestParam(defaultValue = "30") int slotMinutes,
+      ServerWebExchange exchange
+  ){
+    return Mono.fromCallable(() -> versions.current(professionalId)).subscribeOn(Schedulers.boundedElastic())
+        .flatMap(v -> {
+          var etag = ETags.of(v, "summary", month, slotMinutes);
+          if (exchange.checkNotModified(etag)) return Mono.empty();
+          return Mono.fromCallable(() -> ResponseEntity.ok().eTag(etag).body(summary.month(professionalId, month, slotMinutes)))
+                     .subscribeOn(Schedulers.boundedElastic());
+        });
+  }
+
+  // citas, bloques ($or en lote) y profesionales (reglas semanales + nombre) con los repos reactivos; la ubicación se calcula en memoria
+  @GetMapping("/patients/{patientId}")
+  public Flux<SlotViewDTO> byPatient(
+      @PathVariable String patientId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestParam(defaultValue = "30") int slotMinutes
+  ){
+    var f = from.toInstant(); var t = to.toInstant();
+    var hot = appts.findByPatientIdAndStatusAndEndTsAfterAndStartTsBefore(patientId, AppointmentStatus.SCHEDULED, f, t);
+    // rango anterior al horizonte: lo archivado se lee bloqueando, fuera del event loop
+    var all = !archive.crosses(AppointmentStatus.SCHEDULED, f) ? hot : Mono.fromCallable(() -> archive.archived(patientId, AppointmentStatus.SCHEDULED, f, t))
+        .subscribeOn(Schedulers.boundedElastic()).flatMapIterable(x -> x).concatWith(hot).distinct(a -> a.getId());
+    return all.collectList().flatMapMany(mine -> {
+      var ranges = mine.stream().map(SlotsService::range).toList();
+      var ids = mine.stream().map(Appointment::getProfessionalId).collect(Collectors.toSet());
+      return Mono.zip(pros.findAllById(ids).collectList(), blocks.findOverlappingAny(ranges).collectList())
+          .flatMapIterable(read -> {
+            var proNames = new HashMap<String, String>();
+            read.getT1().forEach(p -> proNames.put(p.getId(), p.getFullName()));
+            var where = windows.locations(ranges, AgendaIndex.windows(read.getT1(), read.getT2()));
+            return mine.stream().map(a -> SlotsService.patientView(a, proNames.get(a.getProfessionalId()), where.get(SlotsService.range(a)))).toList();
+          });
+    });
+  }
+
+  // If-None-Match con la misma versión de agenda => 304 sin generar slots
+  private Mono<ResponseEntity<Flux<SlotViewDTO>>> slots(String proId, OffsetDateTime from, OffsetDateTime to, int slotMinutes,
+                                                        String include, String representation, ServerWebExchange exchange){
+    return Mono.fromCallable(() -> versions.current(proId)).subscribeOn(Schedulers.boundedElastic())
+        .flatMap(v -> {
+          var etag = ETags.of(v, representation, from, to, slotMinutes, include);
+          if (exchange.checkNotModified(etag)) return Mono.empty();
+          return Mono.just(ResponseEntity.ok().eTag(etag).body(Backpressure.<SlotViewDTO>pieces(
+              () -> windows.cuts(proId, from.toInstant(), to.toInstant()), from.toInstant(), to.toInstant(),
+              (f, t) -> svc.professionalSlots(proId, f.atOffset(from.getOffset()), t.atOffset(from.getOffset()), slotMinutes, include))));
+        });
+  }
+}
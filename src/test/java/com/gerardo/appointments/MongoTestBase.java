@@ -0,0 +1,37 @@
+// src/test/java/com/gerardo/appointments/MongoTestBase.java
+package com.gerardo.appointments;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.MongoDBContainer;
+
+/**
+ * Full context against a throw-away Mongo, one per JVM: a {@code mongo:7.0} container when Docker is
+ * available, otherwise the in-memory mongo-java-server (same wire protocol, no real query planner).
+ * Subclasses share the context and the database: each test clears the collections it uses.
+ */
+@SpringBootTest(properties = {"app.booking.backfill-claims-on-startup=false", "logging.level.de.bwaldvogel.mongo=WARN"})
+public abstract class MongoTestBase {
+  protected static final boolean REAL_MONGO = DockerClientFactory.instance().isDockerAvailable();
+  private static final String URI = start();
+
+  @DynamicPropertySource
+  static void mongo(DynamicPropertyRegistry r){
+    r.add("spring.data.mongodb.uri", () -> URI);
+  }
+
+  private static String start(){
+    if (REAL_MONGO) {
+      var c = new MongoDBContainer("mongo:7.0");
+      c.start();
+      return c.getReplicaSetUrl("appointments_test");
+    }
+    var server = new MongoServer(new MemoryBackend());
+    Runtime.getRuntime().addShutdownHook(new Thread(server::shutdownNow));
+    return server.bindAndGetConnectionString() + "/appointments_test";
+  }
+}
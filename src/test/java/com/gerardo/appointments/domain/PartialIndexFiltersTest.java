@@ -0,0 +1,65 @@
+// src/test/java/com/gerardo/appointments/domain/PartialIndexFiltersTest.java
+package com.gerardo.appointments.domain;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * mongo-java-server ignores secondary indexes, so a partial filter MongoDB refuses (e.g. {@code { f: null }}) would
+ * only surface at startup against a real mongod. This checks every filter against the operators partial indexes accept.
+ */
+class PartialIndexFiltersTest {
+  private static final Set<String> OPERATORS = Set.of("$eq", "$exists", "$gt", "$gte", "$lt", "$lte", "$type");
+
+  @Test
+  void partialFiltersOnlyUseOperatorsMongoAccepts() throws Exception {
+    var scan = new ClassPathScanningCandidateComponentProvider(false);
+    scan.addIncludeFilter(new AnnotationTypeFilter(org.springframework.data.mongodb.core.mapping.Document.class));
+    int checked = 0;
+    for (var bean : scan.findCandidateComponents(getClass().getPackageName())) {
+      var type = Class.forName(bean.getBeanClassName());
+      var many = type.getAnnotation(CompoundIndexes.class);
+      for (var index : many == null ? type.getAnnotationsByType(CompoundIndex.class) : many.value()) {
+        if (index.partialFilter().isEmpty()) continue;
+        checkTop(type.getSimpleName() + "." + index.name(), Document.parse(index.partialFilter()));
+        checked++;
+      }
+    }
+    assertTrue(checked > 0, "no partial filters found");
+  }
+
+  @Test
+  void aNullEqualityIsRejected(){
+    assertThrows(AssertionError.class, () -> checkTop("x", Document.parse("{ 'processedAt': null }")));
+    assertThrows(AssertionError.class, () -> checkTop("x", Document.parse("{ 'f': { '$exists': false } }")));
+  }
+
+  private static void checkTop(String index, Document filter){
+    for (var e : filter.entrySet()) {
+      if (e.getKey().equals("$and")) {
+        for (var part : (Iterable<?>) e.getValue()) checkFields(index, (Document) part);
+      } else checkFields(index, new Document(e.getKey(), e.getValue()));
+    }
+  }
+
+  private static void checkFields(String index, Document filter){
+    for (var e : filter.entrySet()) {
+      assertFalse(e.getKey().startsWith("$"), index + ": " + e.getKey() + " not allowed here");
+      if (!(e.getValue() instanceof Map<?, ?> ops)) { assertNotNull(e.getValue(), index + ": equality with null"); continue; }
+      for (var op : ops.entrySet()) {
+        assertTrue(OPERATORS.contains(op.getKey()), index + ": " + op.getKey() + " not allowed in a partial filter");
+        assertNotNull(op.getValue(), index + ": " + op.getKey() + " null");
+        if (op.getKey().equals("$exists")) assertEquals(true, op.getValue(), index + ": only $exists: true");
+      }
+    }
+  }
+}
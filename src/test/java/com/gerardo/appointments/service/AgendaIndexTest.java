@@ -0,0 +1,112 @@
+// src/test/java/com/gerardo/appointments/service/AgendaIndexTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AppointmentStatus;
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.repo.AppointmentRepo;
+import com.gerardo.appointments.repo.AvailabilityBlockRepo;
+import com.gerardo.appointments.repo.ProfessionalRepo;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AgendaIndexTest {
+  private static final String PRO = "pro";
+  private final Instant start = Instant.parse("2030-01-07T14:00:00Z");
+  private final Instant end = start.plus(30, ChronoUnit.MINUTES);
+
+  private final AppointmentRepo appts = mock(AppointmentRepo.class);
+  private final AvailabilityBlockRepo blocks = mock(AvailabilityBlockRepo.class);
+  private final ProfessionalRepo pros = mock(ProfessionalRepo.class);
+  private final AgendaIndex index = new AgendaIndex(appts, blocks, pros, 10, Duration.ofDays(30));
+  private final CountDownLatch reading = new CountDownLatch(1), release = new CountDownLatch(1);
+
+  /** The Mongo read returns what was there before the write; the write hook lands while it is in flight. */
+  @Test
+  void cancelDuringTheLoadIsNotUndoneByTheOlderRead() throws Exception {
+    var a = appointment();
+    when(pros.findById(PRO)).thenReturn(Optional.empty());
+    when(appts.findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(eq(PRO), eq(AppointmentStatus.SCHEDULED), any(), any()))
+        .thenAnswer(inv -> stall(List.of(a)));
+    when(blocks.findByProfessionalIdAndEndTsAfterAndStartTsBefore(eq(PRO), any(), any())).thenReturn(List.of());
+
+    raceWithLoad(() -> index.onCancelled(a));
+
+    assertFalse(index.hasOverlap(PRO, start, end));
+  }
+
+  @Test
+  void blockRemovedDuringTheLoadStaysRemoved() throws Exception {
+    var b = new AvailabilityBlock();
+    b.setId("b1"); b.setProfessionalId(PRO); b.setStartTs(start); b.setEndTs(end); b.setOpen(true);
+    when(pros.findById(PRO)).thenReturn(Optional.empty());
+    when(appts.findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(eq(PRO), eq(AppointmentStatus.SCHEDULED), any(), any()))
+        .thenReturn(List.of());
+    when(blocks.findByProfessionalIdAndEndTsAfterAndStartTsBefore(eq(PRO), any(), any())).thenAnswer(inv -> stall(List.of(b)));
+
+    raceWithLoad(() -> index.onBlockRemoved(PRO, "b1"));
+
+    assertTrue(index.blocks(PRO, start, end).isEmpty());
+  }
+
+  /** A load brings only the last {@code history} onwards; an older read asks Mongo for its own range and loads nothing. */
+  @Test
+  void readsOlderThanTheHistoryGoToMongo(){
+    var now = Instant.now();
+    var old = now.minus(60, ChronoUnit.DAYS);
+    when(pros.findById(PRO)).thenReturn(Optional.empty());
+
+    index.scheduled(PRO, old, old.plus(1, ChronoUnit.HOURS));
+    verify(appts).findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(PRO, AppointmentStatus.SCHEDULED, old, old.plus(1, ChronoUnit.HOURS));
+    assertEquals(0, index.stats().size(), "nothing loaded for a read before the history");
+
+    index.scheduled(PRO, now, now.plus(1, ChronoUnit.HOURS));
+    var since = ArgumentCaptor.forClass(Instant.class);
+    verify(appts).findByProfessionalIdAndStatusAndEndTsAfterAndStartTsBefore(eq(PRO), eq(AppointmentStatus.SCHEDULED), since.capture(), argThat(t -> t.isAfter(now.plus(3650, ChronoUnit.DAYS))));
+    assertFalse(since.getValue().isBefore(now.minus(30, ChronoUnit.DAYS)));
+    assertTrue(since.getValue().isBefore(now.minus(29, ChronoUnit.DAYS)));
+    verify(blocks).findByProfessionalIdAndEndTsAfterAndStartTsBefore(eq(PRO), eq(since.getValue()), any());
+
+    index.blocks(PRO, old, now);
+    verify(blocks).findByProfessionalIdAndEndTsAfterAndStartTsBefore(PRO, old, now);
+    assertEquals(2, index.stats().bypasses());
+  }
+
+  /** Starts a load, fires {@code write} while Mongo is "being read", then lets the read finish. */
+  private void raceWithLoad(Runnable write) throws Exception {
+    var loader = new Thread(() -> index.scheduled(PRO, start, end));
+    loader.start();
+    assertTrue(reading.await(5, TimeUnit.SECONDS));
+    var writer = new Thread(write);
+    writer.start();
+    // o espera el lock de la agenda (BLOCKED) o ya terminó sin esperar a la carga
+    while (writer.getState() != Thread.State.BLOCKED && writer.getState() != Thread.State.TERMINATED) Thread.onSpinWait();
+    release.countDown();
+    loader.join(5000);
+    writer.join(5000);
+  }
+
+  private <T> T stall(T result) throws InterruptedException {
+    reading.countDown();
+    release.await(5, TimeUnit.SECONDS);
+    return result;
+  }
+
+  private Appointment appointment(){
+    var a = new Appointment();
+    a.setId("a1"); a.setProfessionalId(PRO); a.setPatientId("x");
+    a.setStartTs(start); a.setEndTs(end); a.setStatus(AppointmentStatus.SCHEDULED);
+    return a;
+  }
+}
@@ -0,0 +1,89 @@
+// src/test/java/com/gerardo/appointments/service/AppointmentArchiveTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AppointmentStatus;
+import com.gerardo.appointments.domain.SlotClaim;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+class AppointmentArchiveTest extends MongoTestBase {
+  @Autowired MongoTemplate mongo;
+  @Autowired AppointmentArchive archive;
+  @Autowired SlotClaims claims;
+  @Autowired AgendaVersions versions;
+
+  private final String proId = new ObjectId().toHexString(), patientId = new ObjectId().toHexString();
+  private final Instant now = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+
+  @BeforeEach
+  void clean(){
+    mongo.remove(new Query(), Appointment.class);
+    mongo.remove(new Query(), AppointmentArchive.COLLECTION);
+  }
+
+  @Test
+  void theJobDropsPastSeatsAndBumpsTheVersion(){
+    var old = appointment(now.minus(120, ChronoUnit.DAYS));
+    var next = appointment(now.plus(3, ChronoUnit.DAYS));
+    mongo.insert(List.of(old, next), Appointment.class);
+    claims.claim(proId, old.getId(), old.getStartTs(), old.getEndTs(), 1);
+    claims.claim(proId, next.getId(), next.getStartTs(), next.getEndTs(), 1);
+    long v = versions.current(proId);
+
+    assertEquals(1, archive.archive(now));
+
+    var left = mongo.find(Query.query(where("professionalId").is(proId)), SlotClaim.class);
+    assertFalse(left.isEmpty());
+    assertTrue(left.stream().allMatch(c -> c.getAppointmentIds().equals(Set.of(next.getId()))), "past seats still held");
+    assertTrue(versions.current(proId) > v);
+    assertNull(mongo.findById(old.getId(), Appointment.class));
+  }
+
+  /** A batch copied but not deleted yet: the appointment is in both collections and comes back once, the hot copy. */
+  @Test
+  void patientReadsMergeHotAndArchivedById(){
+    var both = appointment(now.minus(100, ChronoUnit.DAYS));
+    var archivedOnly = appointment(now.minus(110, ChronoUnit.DAYS));
+    var hotOnly = appointment(now.minus(95, ChronoUnit.DAYS));
+    mongo.insert(List.of(both, archivedOnly), AppointmentArchive.COLLECTION);
+    both.cancel("after the copy");
+    mongo.insert(List.of(both, hotOnly), Appointment.class);
+
+    var read = archive.patient(patientId, null, now.minus(200, ChronoUnit.DAYS), now);
+
+    assertEquals(List.of(archivedOnly.getId(), both.getId(), hotOnly.getId()), read.stream().map(Appointment::getId).toList());
+    assertEquals(AppointmentStatus.CANCELLED, read.get(1).getStatus());
+  }
+
+  /** After the horizon nothing can be archived: the archive is not read at all. */
+  @Test
+  void patientReadsAfterTheHorizonSkipTheArchive(){
+    var stray = appointment(now.minus(10, ChronoUnit.DAYS));
+    mongo.insert(stray, AppointmentArchive.COLLECTION);
+
+    assertTrue(archive.patient(patientId, AppointmentStatus.SCHEDULED, now.minus(30, ChronoUnit.DAYS), now).isEmpty());
+  }
+
+  private Appointment appointment(Instant start){
+    var a = new Appointment();
+    a.setId(new ObjectId().toHexString());
+    a.setProfessionalId(proId); a.setPatientId(patientId);
+    a.setStartTs(start); a.setEndTs(start.plus(30, ChronoUnit.MINUTES));
+    a.setStatus(AppointmentStatus.SCHEDULED);
+    return a;
+  }
+}
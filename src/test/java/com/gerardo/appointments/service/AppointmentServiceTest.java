@@ -0,0 +1,184 @@
+// src/test/java/com/gerardo/appointments/service/AppointmentServiceTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AppointmentStatus;
+import com.gerardo.appointments.domain.SlotClaim;
+import com.gerardo.appointments.dto.BatchItemResult;
+import com.gerardo.appointments.dto.BookRequest;
+import com.gerardo.appointments.repo.AppointmentRepo;
+import com.gerardo.appointments.repo.AppointmentRepository;
+import com.gerardo.appointments.repo.OutboxEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+class AppointmentServiceTest extends MongoTestBase {
+  @Autowired AppointmentRepository repo;
+  @Autowired OutboxEventRepository outbox;
+  @Autowired AgendaIndex index;
+  @Autowired SlotClaims claims;
+  @Autowired MongoTemplate mongo;
+  @Autowired NotificationHub hub;
+  @Autowired AgendaVersions versions;
+  @Autowired OccupancyBitmaps bitmaps;
+  @Autowired Capacities capacities;
+  @Autowired SlotCache slotCache;
+  @Autowired ChangeLog changes;
+  @Autowired AppointmentRepo appts;
+
+  private final String proId = new ObjectId().toHexString();
+
+  /** The insert bulk dies without per-item errors (network, timeout): the claims taken for the batch go back. */
+  @Test
+  void bookAllReleasesTheClaimsWhenTheInsertFails(){
+    var failing = spy(mongo);
+    doThrow(new DataAccessResourceFailureException("connection reset"))
+        .when(failing).bulkOps(any(BulkOperations.BulkMode.class), eq(Appointment.class));
+    var service = new AppointmentService(repo, outbox, index, claims, failing, hub, versions, bitmaps, capacities, slotCache, changes,
+        new SimpleMeterRegistry());
+    var day = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).plusDays(3);
+    var reqs = IntStream.range(0, 4).mapToObj(i -> {
+      var r = new BookRequest();
+      r.setProfessionalId(proId); r.setPatientId("patient-" + i);
+      r.setStartTs(day.plusHours(10).plusMinutes(30L * i)); r.setEndTs(r.getStartTs().plusMinutes(30));
+      return r;
+    }).toList();
+
+    assertThrows(DataAccessResourceFailureException.class, () -> service.bookAll(reqs));
+
+    assertEquals(0, mongo.count(Query.query(where("professionalId").is(proId)), SlotClaim.class), "seats left claimed");
+    assertEquals(0, mongo.count(Query.query(where("professionalId").is(proId)), Appointment.class));
+  }
+
+  /** The cancel is stored but its release dies: a retried cancel frees the seats instead of returning early. */
+  @Test
+  void aRetriedCancelReleasesTheSeatsAFailedReleaseLeft(){
+    var failingClaims = spy(claims);
+    var service = withClaims(failingClaims);
+    var a = book(service);
+    doThrow(new DataAccessResourceFailureException("connection reset")).doCallRealMethod()
+        .when(failingClaims).release(any(Appointment.class));
+
+    assertThrows(DataAccessResourceFailureException.class, () -> service.cancel(a.getId(), "sick"));
+    assertEquals(AppointmentStatus.CANCELLED, repo.findById(a.getId()).orElseThrow().getStatus());
+    assertEquals(6, seats(), "the failed release kept the seats");
+
+    service.cancel(a.getId(), "sick");
+    assertEquals(0, seats());
+    assertFalse(index.hasOverlap(proId, a.getStartTs(), a.getEndTs()));
+    assertDoesNotThrow(() -> book(service));
+  }
+
+  /** Same failure, booked long before the sweep's last window: cancel touched the seats, so the next sweep still finds them. */
+  @Test
+  void aCancelWhoseReleaseDiedIsSweptEvenIfBookedBeforeTheLastWindow(){
+    var failingClaims = spy(claims);
+    var service = withClaims(failingClaims);
+    var a = book(service);
+    mongo.updateMulti(Query.query(where("professionalId").is(proId)),
+                      new Update().set("updatedAt", Instant.now().minus(Duration.ofHours(1))), SlotClaim.class);
+    var sweeper = new SlotClaims(mongo, appts, slotCache, versions, 5, false, 1000, Duration.ofMinutes(5), Duration.ofDays(7), Duration.ofDays(366));
+    sweeper.sweep(Instant.now());   // la reserva queda antes de la ventana ya barrida
+    doThrow(new DataAccessResourceFailureException("connection reset")).when(failingClaims).release(any(Appointment.class));
+
+    assertThrows(DataAccessResourceFailureException.class, () -> service.cancel(a.getId(), "sick"));
+    assertEquals(6, seats());
+
+    assertEquals(1, sweeper.sweep(Instant.now().plus(Duration.ofMinutes(6))));
+    assertEquals(0, seats());
+  }
+
+  /** An empty or inverted range is a 400 before any claim: no empty bulk, no seats. */
+  @Test
+  void bookRejectsEmptyAndInvertedRanges(){
+    var start = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).plusDays(3).plusHours(10);
+    var service = withClaims(claims);
+
+    var empty = assertThrows(ResponseStatusException.class, () -> service.book(proId, "patient", start, start));
+    assertEquals(HttpStatus.BAD_REQUEST, empty.getStatusCode());
+    var inverted = assertThrows(ResponseStatusException.class, () -> service.book(proId, "patient", start, start.minusMinutes(30)));
+    assertEquals(HttpStatus.BAD_REQUEST, inverted.getStatusCode());
+    var tooLong = assertThrows(ResponseStatusException.class, () -> service.book(proId, "patient", start, start.plusDays(400)));
+    assertEquals(HttpStatus.BAD_REQUEST, tooLong.getStatusCode());
+    assertEquals(0, seats());
+  }
+
+  /** Back to back but off the 5-minute grid, both would claim 10:05: the range is a 400 instead of a false 409. */
+  @Test
+  void bookRejectsRangesOffTheClaimGrid(){
+    var start = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).plusDays(3).plusHours(10);
+    var service = withClaims(claims);
+
+    var end = assertThrows(ResponseStatusException.class, () -> service.book(proId, "patient", start, start.plusMinutes(7)));
+    assertEquals(HttpStatus.BAD_REQUEST, end.getStatusCode());
+    var r = new BookRequest();
+    r.setProfessionalId(proId); r.setPatientId("patient");
+    r.setStartTs(start.plusMinutes(7)); r.setEndTs(start.plusMinutes(15));
+    assertEquals(BatchItemResult.INVALID, service.bookAll(List.of(r)).get(0).status());
+    assertEquals(0, seats());
+  }
+
+  /** A patient's name is in the slot views of the professionals they see: those drop their cached days and ETags. */
+  @Test
+  void aPatientWriteDropsTheViewsOfTheirProfessionals(){
+    var service = withClaims(claims);
+    book(service);
+    var other = new ObjectId().toHexString();
+    var day = Instant.now().truncatedTo(ChronoUnit.DAYS);
+    var loads = new AtomicInteger();
+    Function<Instant, SlotCache.Day> loader = d -> { loads.incrementAndGet(); return new SlotCache.Day(List.of(), true); };
+    slotCache.get(proId, day, 30, loader);
+    slotCache.get(other, day, 30, loader);
+    long v = versions.current(proId), w = versions.current(other);
+
+    service.patientChanged("patient");
+
+    assertEquals(v + 1, versions.current(proId));
+    assertEquals(w, versions.current(other));
+    slotCache.get(proId, day, 30, loader);
+    slotCache.get(other, day, 30, loader);
+    assertEquals(3, loads.get());
+  }
+
+  private AppointmentService withClaims(SlotClaims c){
+    return new AppointmentService(repo, outbox, index, c, mongo, hub, versions, bitmaps, capacities, slotCache, changes,
+        new SimpleMeterRegistry());
+  }
+
+  private Appointment book(AppointmentService service){
+    var start = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).plusDays(3).plusHours(10);
+    return service.book(proId, "patient", start, start.plusMinutes(30));
+  }
+
+  private long seats(){
+    return mongo.count(Query.query(where("professionalId").is(proId)), SlotClaim.class);
+  }
+}
@@ -0,0 +1,118 @@
+// src/test/java/com/gerardo/appointments/service/AvailabilityServiceTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.domain.LocationType;
+import com.gerardo.appointments.repo.AvailabilityBlockRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+class AvailabilityServiceTest extends MongoTestBase {
+  @Autowired MongoTemplate mongo;
+  @Autowired AvailabilityBlockRepository repo;
+  @Autowired AvailabilityService service;
+  @Autowired AgendaIndex index;
+  @Autowired AvailabilityWindows windows;
+  @Autowired AgendaVersions versions;
+  @Autowired OccupancyBitmaps bitmaps;
+  @Autowired SlotClaims claims;
+  @Autowired Capacities capacities;
+  @Autowired SlotCache slotCache;
+  @Autowired ChangeLog changes;
+
+  private final String proId = new ObjectId().toHexString();
+  private final OffsetDateTime day = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).plusDays(3);
+
+  @BeforeEach
+  void clean(){
+    mongo.remove(new Query(), AvailabilityBlock.class);
+    index.invalidate(proId);
+  }
+
+  /** The index of this instance is loaded and empty; the stored block was written by another one. */
+  @Test
+  void foldsWithBlocksThisInstanceNeverSaw(){
+    index.blocks(proId, day.toInstant(), day.plusDays(1).toInstant());
+    mongo.insert(block(at(10), at(12)));
+
+    var b = service.addOpenBlock(proId, day.plusHours(11), day.plusHours(13), "x");
+
+    assertEquals(List.of(at(10) + "-" + at(13)), stored());
+    assertEquals(at(10), b.getStartTs());
+  }
+
+  /** Another instance deletes the block this fold was going to stretch: the resize misses, the fold reads again. */
+  @Test
+  void aResizeThatMissesIsRetriedOnAFreshRead(){
+    var a = mongo.insert(block(at(10), at(11)));
+    mongo.insert(block(at(11).plus(30, ChronoUnit.MINUTES), at(12)));
+    var first = new AtomicBoolean(true);
+    var racing = mock(AvailabilityBlockRepository.class);
+    when(racing.findByProfessionalIdAndEndTsAfterAndStartTsBefore(any(), any(), any())).thenAnswer(inv -> {
+      var read = repo.findByProfessionalIdAndEndTsAfterAndStartTsBefore(inv.getArgument(0), inv.getArgument(1), inv.getArgument(2));
+      if (first.getAndSet(false)) repo.deleteById(a.getId());
+      return read;
+    });
+    var other = new AvailabilityService(racing, index, windows, mongo, versions, bitmaps, claims, capacities, slotCache, changes);
+
+    var b = other.addOpenBlock(proId, day.plusHours(10).plusMinutes(30), day.plusHours(11).plusMinutes(45), "x");
+
+    assertEquals(List.of(at(10).plus(30, ChronoUnit.MINUTES) + "-" + at(11).plus(45, ChronoUnit.MINUTES)), stored());
+    assertEquals(b.getId(), mongo.findOne(Query.query(where("professionalId").is(proId)), AvailabilityBlock.class).getId());
+    verify(racing, times(2)).findByProfessionalIdAndEndTsAfterAndStartTsBefore(any(), any(), any());
+  }
+
+  /** A block id under the wrong professional is a 404: the owner keeps the block and its loaded agenda. */
+  @Test
+  void removeBlockLeavesOtherProfessionalsBlocksAlone(){
+    var b = mongo.insert(block(at(10), at(12)));
+    var owned = index.blocks(proId, day.toInstant(), day.plusDays(1).toInstant()).size();
+    var other = new ObjectId().toHexString();
+
+    var ex = assertThrows(ResponseStatusException.class, () -> service.removeBlock(other, b.getId()));
+    assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+    assertEquals(List.of(at(10) + "-" + at(12)), stored());
+    assertEquals(owned, index.blocks(proId, day.toInstant(), day.plusDays(1).toInstant()).size());
+
+    service.removeBlock(proId, b.getId());
+    assertEquals(List.of(), stored());
+    assertEquals(0, index.blocks(proId, day.toInstant(), day.plusDays(1).toInstant()).size());
+  }
+
+  private List<String> stored(){
+    return repo.findByProfessionalId(proId).stream().map(b -> b.getStartTs() + "-" + b.getEndTs()).sorted().toList();
+  }
+
+  private Instant at(int hour){ return day.plusHours(hour).toInstant(); }
+
+  private AvailabilityBlock block(Instant s, Instant e){
+    var b = new AvailabilityBlock();
+    b.setId(new ObjectId().toHexString());
+    b.setProfessionalId(proId);
+    b.setStartTs(s);
+    b.setEndTs(e);
+    b.setOpen(true);
+    b.setLocationType(LocationType.HOSPITAL);
+    return b;
+  }
+}
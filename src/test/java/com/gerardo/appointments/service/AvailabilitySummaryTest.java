@@ -0,0 +1,163 @@
+// src/test/java/com/gerardo/appointments/service/AvailabilitySummaryTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.config.TimeConfig;
+import com.gerardo.appointments.domain.*;
+import com.gerardo.appointments.dto.MonthSummaryDTO;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AvailabilitySummaryTest extends MongoTestBase {
+  private static final long MIN = 60_000, SLOT = 30 * MIN;
+
+  @Autowired MongoTemplate mongo;
+  @Autowired AvailabilitySummary summary;
+  @Autowired SlotsService slots;
+  @Autowired AppointmentService appointments;
+  @Autowired TimeConfig time;
+
+  // ---------- Marks / piece, sin Mongo ----------
+
+  @Test
+  void marksCountEachSlotOnce(){
+    var m = new AvailabilitySummary.Marks(0, SLOT, 5);
+    m.mark(0, 10 * MIN);
+    m.mark(20 * MIN, 40 * MIN);          // el slot 0 ya estaba
+    m.mark(130 * MIN, 150 * MIN);        // slot 4
+    assertEquals(3, m.count);
+  }
+
+  @Test
+  void overlappingBookingsMarkEachSlotOnceAndCountSeatsUpToCapacity(){
+    var busy = List.of(booking(0, 45), booking(30, 60));   // 10:00-10:45 y 10:30-11:00 sobre una ventana de 2 h
+
+    var single = piece(0, 120, 0, 24 * 60, 1, busy);
+    assertEquals(4, single.slots);
+    assertEquals(2, single.booked);
+    assertEquals(2, single.full);
+    assertEquals(60 * MIN, single.bookedSeatMs);
+
+    var shared = piece(0, 120, 0, 24 * 60, 2, busy);
+    assertEquals(2, shared.booked);
+    assertEquals(1, shared.full);                             // sólo 10:30-11:00 llega a 2
+    assertEquals((30 + 2 * 15 + 15) * MIN, shared.bookedSeatMs);
+    assertEquals(240 * MIN, shared.offered);
+  }
+
+  /** 22:15-01:15 in 30-minute slots: six slots on the window grid, four start before midnight, two after. */
+  @Test
+  void aWindowCrossingMidnightKeepsItsGridAndCountsSlotsWhereTheyStart(){
+    long ws = (22 * 60 + 15), we = ws + 180;               // minutos desde el inicio del día 1
+    var busy = List.of(booking(23 * 60 + 50, 24 * 60 + 10)); // toca el slot de las 23:45, que cruza la medianoche
+
+    var day1 = piece(ws, we, 0, 24 * 60, 1, busy);
+    var day2 = piece(ws, we, 24 * 60, 48 * 60, 1, busy);
+    assertEquals(4, day1.slots);
+    assertEquals(2, day2.slots);
+    assertEquals(1, day1.booked);
+    assertEquals(0, day2.booked);
+    assertEquals(105 * MIN, day1.openMs);
+    assertEquals(75 * MIN, day2.openMs);
+    assertEquals(10 * MIN, day1.bookedSeatMs);
+    assertEquals(10 * MIN, day2.bookedSeatMs);
+  }
+
+  @Test
+  void dstDaysHaveTwentyThreeOrTwentyFiveHourlySlots(){
+    var zone = ZoneId.of("Europe/Madrid");
+    for (var d : List.of(LocalDate.of(2026, 3, 29), LocalDate.of(2026, 10, 25))) {
+      long ds = d.atStartOfDay(zone).toInstant().toEpochMilli(), de = d.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+      var c = new AvailabilitySummary.Counts();
+      AvailabilitySummary.piece(c, ds, de, ds, de, 60 * MIN, 1, List.of());
+      assertEquals((de - ds) / (60 * MIN), c.slots, d.toString());
+      assertEquals(d.getMonthValue() == 3 ? 23 : 25, c.slots, d.toString());
+    }
+  }
+
+  // ---------- contra /slots ----------
+
+  /**
+   * Weekly hours off the half-hour grid, one rule crossing midnight, an explicit block and bookings on both sides of
+   * midnight: per local day, the summary counts the same slots / free / booked as the slot view over the month.
+   */
+  @Test
+  void summaryMatchesTheSlotView(){
+    var zone = ZoneId.of(time.availabilityZone);
+    var month = YearMonth.now(zone).plusMonths(1);
+    for (var capacity : List.<Map<LocationType, Integer>>of(Map.of(), Map.of(LocationType.PRIVATE, 2))) {
+      var pro = professional(capacity);
+      var first = month.atDay(3);
+      var b = new AvailabilityBlock();
+      b.setProfessionalId(pro); b.setOpen(true); b.setLocationType(LocationType.HOSPITAL); b.setReason("guardia");
+      b.setStartTs(first.atTime(13, 10).atZone(zone).toInstant()); b.setEndTs(first.atTime(16, 0).atZone(zone).toInstant());
+      mongo.insert(b);
+      var patient = new ObjectId().toHexString();
+      for (int i = 0; i < 10; i++) {
+        var d = month.atDay(5 + i);
+        book(pro, patient, d.atTime(9, 5).atZone(zone), 30);
+        book(pro, patient, d.atTime(23, 45).atZone(zone), 30);   // cruza la medianoche, en el slot de las 23:45
+        if (!capacity.isEmpty()) book(pro, new ObjectId().toHexString(), d.atTime(9, 5).atZone(zone), 60);
+      }
+
+      var from = month.atDay(1).atStartOfDay(zone).toOffsetDateTime();
+      var to = month.plusMonths(1).atDay(1).atStartOfDay(zone).toOffsetDateTime();
+      var expected = new TreeMap<LocalDate, int[]>();
+      for (var v : slots.professionalSlots(pro, from, to, 30, null)) {
+        var c = expected.computeIfAbsent(v.getStartTs().atZoneSameInstant(zone).toLocalDate(), k -> new int[3]);
+        c[0]++;
+        if (v.getRemaining() > 0) c[1]++;
+        if (!v.getBookings().isEmpty()) c[2]++;
+      }
+      var actual = new TreeMap<LocalDate, int[]>();
+      for (MonthSummaryDTO.Day d : summary.month(pro, month, 30).days()) {
+        if (d.slots() > 0) actual.put(d.date(), new int[]{d.slots(), d.free(), d.booked()});
+      }
+      assertEquals(render(expected), render(actual), "capacity " + capacity);
+    }
+  }
+
+  private static AvailabilitySummary.Counts piece(long ws, long we, long ds, long de, int capacity, List<Appointment> busy){
+    var c = new AvailabilitySummary.Counts();
+    AvailabilitySummary.piece(c, ws * MIN, we * MIN, ds * MIN, de * MIN, SLOT, capacity, busy);
+    return c;
+  }
+
+  private static Appointment booking(long startMin, long endMin){
+    var a = new Appointment();
+    a.setStartTs(Instant.ofEpochMilli(startMin * MIN)); a.setEndTs(Instant.ofEpochMilli(endMin * MIN));
+    return a;
+  }
+
+  private static String render(Map<LocalDate, int[]> days){
+    var sb = new StringBuilder();
+    days.forEach((d, c) -> sb.append(d).append(' ').append(Arrays.toString(c)).append('\n'));
+    return sb.toString();
+  }
+
+  private String professional(Map<LocationType, Integer> capacity){
+    var p = new Professional();
+    p.setId(new ObjectId().toHexString());
+    p.setFullName("Dra. Resumen");
+    var rules = new ArrayList<AvailabilitySlot>();
+    for (var d : DayOfWeek.values()) {
+      rules.add(new AvailabilitySlot(d, LocalTime.of(8, 50), LocalTime.of(12, 5), LocationType.PRIVATE, null));
+      rules.add(new AvailabilitySlot(d, LocalTime.of(22, 15), LocalTime.of(1, 15), LocationType.PRIVATE, null));
+    }
+    p.setAvailability(rules);
+    p.setCapacity(capacity);
+    mongo.insert(p);
+    return p.getId();
+  }
+
+  private void book(String proId, String patientId, ZonedDateTime start, int minutes){
+    appointments.book(proId, patientId, start.toOffsetDateTime(), start.plusMinutes(minutes).toOffsetDateTime());
+  }
+}
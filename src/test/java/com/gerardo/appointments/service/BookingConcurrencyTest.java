@@ -0,0 +1,127 @@
+// src/test/java/com/gerardo/appointments/service/BookingConcurrencyTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.domain.LocationType;
+import com.gerardo.appointments.domain.Professional;
+import com.gerardo.appointments.domain.SlotClaim;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+class BookingConcurrencyTest extends MongoTestBase {
+  private static final int CALLERS = 300, ROUNDS = 20;
+
+  @Autowired AppointmentService service;
+  @Autowired SlotClaims claims;
+  @Autowired AgendaIndex index;
+  @Autowired MongoTemplate mongo;
+
+  private final String proId = new ObjectId().toHexString();
+  private final Instant start = Instant.now().plus(3, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+  // el servidor en memoria no corta un bulk ordenado en el primer error: un perdedor toma de paso los gránulos
+  // siguientes y puede tumbar al ganador. Con un solo gránulo el bulk tiene una operación y da igual.
+  private final Instant end = start.plus(REAL_MONGO ? 30 : 5, ChronoUnit.MINUTES);
+
+  @BeforeEach
+  void clean(){
+    mongo.remove(new Query(), Appointment.class);
+    mongo.remove(new Query(), SlotClaim.class);
+    index.invalidate(proId);
+  }
+
+  @Test
+  void parallelBookingsOfOneSlotLeaveExactlyOne(){
+    var s = OffsetDateTime.ofInstant(start, ZoneOffset.UTC);
+    var e = OffsetDateTime.ofInstant(end, ZoneOffset.UTC);
+    int ok = race(i -> service.book(proId, "patient-" + i, s, e));
+
+    assertEquals(1, ok);
+    assertEquals(1, mongo.count(Query.query(where("professionalId").is(proId)), Appointment.class));
+    for (var c : mongo.find(Query.query(where("professionalId").is(proId)), SlotClaim.class)) assertEquals(1, c.getCount());
+  }
+
+  /** Straight to the claims, past the in-memory fast reject: the conditional upsert alone lets one through. */
+  @Test
+  void parallelClaimsOfOneSlotLeaveExactlyOne(){
+    int ok = race(i -> claims.claim(proId, "appt-" + i, start, end, 1));
+
+    assertEquals(1, ok);
+    assertEquals(1, claims.occupancy(proId, start, end).max(start.toEpochMilli(), end.toEpochMilli()));
+  }
+
+  /**
+   * Overbooking: capacity + 1 bookings of one slot released together, a fresh slot per round. Exactly capacity
+   * get in every time: none past the counter and, on a real Mongo (where two upserts on a new granule can
+   * collide), none turned away while a seat is left.
+   */
+  @Test
+  void parallelBookingsAtCapacityLeaveExactlyCapacity(){
+    int capacity = 3;
+    var pro = new Professional();
+    pro.setId(proId); pro.setFullName("Dra. Sobreturno");
+    pro.setCapacity(Map.of(LocationType.PRIVATE, capacity));
+    mongo.insert(pro);
+    var open = new AvailabilityBlock();
+    open.setProfessionalId(proId); open.setStartTs(start); open.setEndTs(start.plus(ROUNDS, ChronoUnit.HOURS));
+    open.setOpen(true); open.setLocationType(LocationType.PRIVATE); open.setReason("sobreturnos");
+    mongo.insert(open);
+
+    for (int k = 0; k < ROUNDS; k++) {
+      var s = OffsetDateTime.ofInstant(start.plus(k, ChronoUnit.HOURS), ZoneOffset.UTC);
+      var e = OffsetDateTime.ofInstant(end.plus(k, ChronoUnit.HOURS), ZoneOffset.UTC);
+      assertEquals(capacity, race(capacity + 1, i -> service.book(proId, "patient-" + i, s, e)), "round " + k);
+    }
+
+    assertEquals(ROUNDS * capacity, mongo.count(Query.query(where("professionalId").is(proId)), Appointment.class));
+    for (var c : mongo.find(Query.query(where("professionalId").is(proId)), SlotClaim.class)) assertEquals(capacity, c.getCount());
+  }
+
+  interface Call { void run(int i) throws Exception; }
+
+  /** Runs {@code CALLERS} calls released together; returns how many did not end in a 409. */
+  static int race(Call call){
+    return race(CALLERS, call);
+  }
+
+  static int race(int callers, Call call){
+    var pool = Executors.newFixedThreadPool(Math.min(callers, 64));
+    var go = new CountDownLatch(1);
+    var ok = new AtomicInteger();
+    var done = new ArrayList<Future<?>>();
+    try {
+      for (int i = 0; i < callers; i++) {
+        int n = i;
+        done.add(pool.submit(() -> {
+          go.await();
+          try { call.run(n); ok.incrementAndGet(); } catch (SlotConflictException ignored) { }
+          return null;
+        }));
+      }
+      go.countDown();
+      for (var f : done) f.get(60, TimeUnit.SECONDS);
+    } catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    } finally {
+      pool.shutdownNow();
+    }
+    return ok.get();
+  }
+}
@@ -0,0 +1,87 @@
+// src/test/java/com/gerardo/appointments/service/ChangeLogTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.domain.AgendaChange;
+import com.gerardo.appointments.domain.AgendaChange.Op;
+import com.gerardo.appointments.domain.AvailabilitySlot;
+import com.gerardo.appointments.domain.LocationType;
+import com.gerardo.appointments.domain.Professional;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+class ChangeLogTest extends MongoTestBase {
+  @Autowired MongoTemplate mongo;
+
+  private final String proId = new ObjectId().toHexString();
+
+  @Test
+  void theTokenStopsAtANumberStillInFlight(){
+    var log = new ChangeLog(mongo, Duration.ofMinutes(1), 100);
+    var token = start(log);
+    takeNumber();                                   // un escritor demorado entre el $inc y el insert
+    log.professionalChanged(Op.UPDATED, proId, professional());
+
+    var page = log.professional(proId, token, 10);
+    assertTrue(page.changes().isEmpty());
+    assertEquals(token, page.token());
+  }
+
+  @Test
+  void aDeadWritersHoleIsFilledAndALateWriterTakesANewNumber(){
+    var log = new ChangeLog(mongo, Duration.ZERO, 100);
+    var token = start(log);
+    long lost = takeNumber();
+    log.professionalChanged(Op.UPDATED, proId, professional());
+
+    var page = log.professional(proId, token, 10);
+    assertEquals(1, page.changes().size());
+    var updated = page.changes().get(0);
+    assertEquals(AgendaChange.Kind.PROFESSIONAL, updated.getKind());
+    assertEquals(1, updated.getAvailability().size());
+    assertNull(mongo.findById(lost, AgendaChange.class).getKind(), "filler");
+
+    // el escritor demorado aparece con el número ya tapado
+    setCounter(lost - 1);
+    log.professionalChanged(Op.REMOVED, proId, null);
+    var late = log.professional(proId, page.token(), 10);
+    assertEquals(List.of(Op.REMOVED), late.changes().stream().map(AgendaChange::getOp).toList());
+    assertTrue(late.changes().get(0).getSeq() > Long.parseLong(page.token()));
+  }
+
+  /** Some other professional's change first: the log is never empty under the test. */
+  private String start(ChangeLog log){
+    log.professionalChanged(Op.UPDATED, new ObjectId().toHexString(), professional());
+    return log.professional(proId, null, 10).token();
+  }
+
+  private long takeNumber(){
+    var seq = mongo.findAndModify(Query.query(where("_id").is("agenda_changes")), new Update().inc("seq", 1L),
+        FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, ChangeLog.SEQUENCES);
+    return ((Number) seq.get("seq")).longValue();
+  }
+
+  private void setCounter(long seq){
+    mongo.updateFirst(Query.query(where("_id").is("agenda_changes")), new Update().set("seq", seq), ChangeLog.SEQUENCES);
+  }
+
+  private Professional professional(){
+    var p = new Professional();
+    p.setAvailability(List.of(new AvailabilitySlot(DayOfWeek.MONDAY, LocalTime.of(9, 0), LocalTime.of(13, 0), LocationType.HOSPITAL, null)));
+    return p;
+  }
+}
@@ -0,0 +1,64 @@
+// src/test/java/com/gerardo/appointments/service/NotificationHubTest.java
+package com.gerardo.appointments.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationHubTest {
+  private static final int THREADS = 4, SUBSCRIBERS = 5000, STUCK = 2 * THREADS;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+  private final NotificationHub hub = new NotificationHub(null, executor, 16, NotificationHub.Overflow.DROP_OLDEST, 10,
+      Duration.ofMillis(200));
+
+  @AfterEach
+  void stop(){ executor.shutdownNow(); }
+
+  /**
+   * More stuck sockets than executor threads: without the write timeout they hold the pool for good and
+   * nobody else gets the heartbeat. With it they are disconnected and every healthy client is served.
+   */
+  @Test
+  void stuckClientsAreCutAndTheRestStillGetTheHeartbeat() throws Exception {
+    var beats = new CountDownLatch(SUBSCRIBERS - STUCK);
+    var released = new CountDownLatch(STUCK);
+    var completed = new AtomicInteger();
+    for (int i = 0; i < SUBSCRIBERS; i++) {
+      boolean stuck = i % (SUBSCRIBERS / STUCK) == 0;
+      hub.subscribe("p" + i, null, new NotificationHub.Sink() {
+        @Override public void send(NotificationHub.Event e) throws IOException {
+          if (!stuck) { beats.countDown(); return; }
+          // ventana TCP llena: el write no vuelve hasta que lo interrumpen
+          try { new CountDownLatch(1).await(); } catch (InterruptedException ex) { released.countDown(); throw new InterruptedIOException(); }
+        }
+        @Override public void complete(){ completed.incrementAndGet(); }
+      });
+    }
+
+    hub.heartbeat();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while ((beats.getCount() > 0 || released.getCount() > 0) && System.nanoTime() < deadline) {
+      hub.reapSlowWriters();
+      beats.await(50, TimeUnit.MILLISECONDS);
+    }
+
+    assertEquals(0, beats.getCount(), "healthy clients without a heartbeat");
+    assertEquals(0, released.getCount(), "stuck sends still holding a thread");
+    var stats = hub.stats();
+    assertEquals(SUBSCRIBERS - STUCK, stats.subscribers());
+    assertEquals(STUCK, stats.slowWrites());
+    assertEquals(SUBSCRIBERS - STUCK, stats.sent());
+    // cada cliente trabado se cierra una vez, desde el drain que quedó libre
+    long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (completed.get() < STUCK && System.nanoTime() < until) Thread.sleep(10);
+    assertEquals(STUCK, completed.get());
+  }
+}
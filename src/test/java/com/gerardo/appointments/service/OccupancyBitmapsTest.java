@@ -0,0 +1,154 @@
+// src/test/java/com/gerardo/appointments/service/OccupancyBitmapsTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.domain.AgendaBitmap;
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.repo.AppointmentRepository;
+import com.gerardo.appointments.repo.OutboxEventRepository;
+import com.gerardo.appointments.repo.ProfessionalRepo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+class OccupancyBitmapsTest extends MongoTestBase {
+  @Autowired MongoTemplate mongo;
+  @Autowired AgendaIndex index;
+  @Autowired AvailabilityWindows windows;
+  @Autowired ProfessionalRepo pros;
+  @Autowired AgendaVersions versions;
+  @Autowired AppointmentRepository repo;
+  @Autowired OutboxEventRepository outbox;
+  @Autowired SlotClaims claims;
+  @Autowired NotificationHub hub;
+  @Autowired Capacities capacities;
+  @Autowired SlotCache slotCache;
+  @Autowired ChangeLog changes;
+
+  private final String proId = new ObjectId().toHexString();
+  private final Instant day = Instant.now().truncatedTo(ChronoUnit.DAYS).plus(3, ChronoUnit.DAYS);
+  private final Queued writer = new Queued();
+
+  @BeforeEach
+  void setUp(){
+    var b = new AvailabilityBlock();
+    b.setProfessionalId(proId);
+    b.setStartTs(day.plus(9, ChronoUnit.HOURS));
+    b.setEndTs(day.plus(13, ChronoUnit.HOURS));
+    mongo.insert(b);
+    index.invalidate(proId);
+  }
+
+  @Test
+  void daysBuiltOnAReadAreStoredLaterInOneTask(){
+    assertTrue(slots(fresh(), 3));
+    assertEquals(0, stored().size(), "nothing written on the request thread");
+    assertEquals(1, writer.tasks.size());
+
+    writer.runAll();
+    assertEquals(3, stored().size());
+    long v = versions.current(proId);
+    stored().forEach(b -> assertEquals(v, b.getAgendaVersion()));
+  }
+
+  @Test
+  void aStoredDayFromAnOlderAgendaVersionIsRebuilt(){
+    slots(fresh(), 1);
+    writer.runAll();
+    // marca en la copia guardada: si se usa, el día sale no exacto y forEachSlot devuelve false
+    mongo.updateFirst(Query.query(where("professionalId").is(proId)), new Update().set("exact", false), AgendaBitmap.class);
+    assertFalse(slots(fresh(), 1), "same version: the stored copy is used");
+
+    versions.bump(proId);
+    assertTrue(slots(fresh(), 1), "newer version: rebuilt");
+    writer.runAll();
+    assertTrue(stored().get(0).isExact());
+    assertEquals(versions.current(proId), stored().get(0).getAgendaVersion());
+  }
+
+  /** What a booking or a cancel stores carries the version the write got, so another instance reads it as is. */
+  @Test
+  void theDayAWriteStoresIsTheOneANewInstanceServes(){
+    var service = service(fresh());
+    var a = service.book(proId, "patient-1", at(10), at(10).plusMinutes(30));
+    assertEquals(versions.current(proId), stored().get(0).getAgendaVersion());
+    var reader = fresh();
+    assertTrue(booked(reader, 10));
+    assertEquals(0, reader.stats().builds(), "served from agenda_bitmaps");
+
+    service.cancel(a.getId(), "test");
+    assertEquals(versions.current(proId), stored().get(0).getAgendaVersion());
+    reader = fresh();
+    assertFalse(booked(reader, 10));
+    assertEquals(0, reader.stats().builds(), "served from agenda_bitmaps");
+  }
+
+  @Test
+  void aDayInMemoryIsRebuiltOnceAnotherInstanceWrote(){
+    var reader = fresh();
+    assertFalse(booked(reader, 10));
+    service(fresh()).book(proId, "patient-1", at(10), at(10).plusMinutes(30));
+    assertTrue(booked(reader, 10), "the day held from before the booking is not served");
+  }
+
+  private AppointmentService service(OccupancyBitmaps bitmaps){
+    return new AppointmentService(repo, outbox, index, claims, mongo, hub, versions, bitmaps, capacities, slotCache, changes,
+        new SimpleMeterRegistry());
+  }
+
+  private OffsetDateTime at(int hour){
+    return day.plus(hour, ChronoUnit.HOURS).atOffset(ZoneOffset.UTC);
+  }
+
+  /** Whether the 30-minute slot at {@code hour} comes out booked. */
+  private boolean booked(OccupancyBitmaps bitmaps, int hour){
+    long at = day.plus(hour, ChronoUnit.HOURS).toEpochMilli();
+    var booked = new boolean[1];
+    assertTrue(bitmaps.forEachSlot(proId, day, day.plus(1, ChronoUnit.DAYS), 30 * 60_000L, (s, e, lt, b) -> {
+      if (s == at) booked[0] = b;
+    }));
+    return booked[0];
+  }
+
+  /** A new instance: nothing in memory, everything comes from Mongo or is rebuilt. */
+  private OccupancyBitmaps fresh(){
+    return new OccupancyBitmaps(index, windows, mongo, pros, versions, writer, 5, 1000, 0, 0);
+  }
+
+  private boolean slots(OccupancyBitmaps bitmaps, int days){
+    return bitmaps.forEachSlot(proId, day, day.plus(days, ChronoUnit.DAYS), 30 * 60_000L, (s, e, lt, booked) -> { });
+  }
+
+  private List<AgendaBitmap> stored(){
+    return mongo.find(Query.query(where("professionalId").is(proId)), AgendaBitmap.class);
+  }
+
+  /** Holds the writes until the test runs them. */
+  static final class Queued extends AbstractExecutorService {
+    final List<Runnable> tasks = new ArrayList<>();
+    void runAll(){ tasks.forEach(Runnable::run); tasks.clear(); }
+    @Override public void execute(Runnable r){ tasks.add(r); }
+    @Override public void shutdown(){ }
+    @Override public List<Runnable> shutdownNow(){ return List.of(); }
+    @Override public boolean isShutdown(){ return false; }
+    @Override public boolean isTerminated(){ return false; }
+    @Override public boolean awaitTermination(long t, TimeUnit u){ return true; }
+  }
+}
@@ -0,0 +1,126 @@
+// src/test/java/com/gerardo/appointments/service/OutboxPumpTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.domain.OutboxEvent;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+class OutboxPumpTest extends MongoTestBase {
+  private static final String TYPE = "OutboxPumpTest";
+
+  @Autowired MongoTemplate mongo;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @BeforeEach
+  void clean(){ mongo.remove(Query.query(where("type").is(TYPE)), OutboxEvent.class); }
+
+  @AfterEach
+  void stop(){ executor.shutdownNow(); }
+
+  /** The lease runs out mid-send and another instance takes the event: the late close must leave its state alone. */
+  @Test
+  void aCloseAfterTheLeaseWasLostChangesNothing(){
+    var delivered = event();
+    var failing = event();
+    var pump = pump(3, e -> {
+      mongo.updateFirst(Query.query(where("_id").is(e.getId())),
+          new Update().set("claimedBy", "other:lease").set("dueAt", Instant.now().plus(1, ChronoUnit.MINUTES)), OutboxEvent.class);
+      if (e.getId().equals(failing)) throw new IllegalStateException("smtp down");
+    });
+
+    pump.pump();
+
+    for (var id : List.of(delivered, failing)) {
+      var e = mongo.findById(id, OutboxEvent.class);
+      assertEquals("other:lease", e.getClaimedBy());
+      assertNull(e.getProcessedAt());
+      assertEquals(0, e.getAttempts());
+      assertTrue(e.isPending());
+    }
+    assertEquals(2, pump.leaseLost());
+  }
+
+  @Test
+  void eventsAreDeadLetteredAfterMaxAttemptsAndRetriedOnDemand(){
+    var id = event();
+    var down = new AtomicBoolean(true);
+    var sends = new AtomicInteger();
+    var pump = pump(3, e -> { sends.incrementAndGet(); if (down.get()) throw new IllegalStateException("smtp down"); });
+
+    for (int i = 0; i < 5; i++) pump.pump();
+
+    assertEquals(3, sends.get(), "kept sending after max attempts");
+    assertEquals(0, pump.backlog());
+    assertEquals(1, pump.dead());
+    var dead = pump.deadLetters(10);
+    assertEquals(List.of(id), dead.stream().map(OutboxEvent::getId).toList());
+    assertEquals(3, dead.get(0).getAttempts());
+    assertEquals("smtp down", dead.get(0).getLastError());
+    assertNull(dead.get(0).getProcessedAt());
+    assertFalse(dead.get(0).isPending());
+
+    down.set(false);
+    assertFalse(pump.retryDead(new ObjectId().toHexString()));
+    assertTrue(pump.retryDead(id));
+    assertEquals(1, pump.backlog());
+    pump.pump();
+    assertEquals(4, sends.get());
+    assertNotNull(mongo.findById(id, OutboxEvent.class).getProcessedAt());
+    assertEquals(0, pump.dead());
+  }
+
+  /** Events stored before the pending flag existed: undelivered ones are adopted, delivered and dead ones are not. */
+  @Test
+  void legacyEventsWithoutThePendingFlagAreAdopted(){
+    var undelivered = event();
+    var delivered = event();
+    var dead = event();
+    mongo.updateFirst(Query.query(where("_id").is(undelivered)), new Update().unset("pending").unset("dueAt"), OutboxEvent.class);
+    mongo.updateFirst(Query.query(where("_id").is(delivered)),
+        new Update().unset("pending").unset("dueAt").set("processedAt", Instant.now()), OutboxEvent.class);
+    mongo.updateFirst(Query.query(where("_id").is(dead)), new Update().set("pending", false).set("deadAt", Instant.now()), OutboxEvent.class);
+    var sent = new CopyOnWriteArrayList<String>();
+    var pump = pump(3, e -> sent.add(e.getId()));
+
+    pump.adoptLegacy();
+    pump.pump();
+
+    assertEquals(List.of(undelivered), sent);
+    assertEquals(1, pump.dead());
+  }
+
+  private OutboxPump pump(int maxAttempts, NotificationChannel channel){
+    return new OutboxPump(mongo, channel, executor, "test", List.of(TYPE), 10, 1,
+        Duration.ofMinutes(1), Duration.ZERO, Duration.ZERO, maxAttempts);
+  }
+
+  private String event(){
+    var e = new OutboxEvent();
+    e.setId(new ObjectId().toHexString());
+    e.setType(TYPE);
+    e.setPayloadJson("{}");
+    mongo.insert(e);
+    return e.getId();
+  }
+}
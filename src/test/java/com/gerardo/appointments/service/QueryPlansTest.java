@@ -0,0 +1,292 @@
+// src/test/java/com/gerardo/appointments/service/QueryPlansTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.domain.*;
+import com.gerardo.appointments.dto.BookRequest;
+import com.gerardo.appointments.repo.AvailabilityBlockRepoCustom.ProRange;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.repository.Repository;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.BaseStream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plan regressions: drives the real read and write paths (every derived repository method, the services'
+ * MongoTemplate queries), records each command the driver sends and explains it on the same mongod.
+ * Each command is reduced to its shape (collection + filter fields) and its winning plan must use the index
+ * {@link #EXPECTED} names for that shape: COLLSCAN, EOF (missing collection), another index or a shape with
+ * no entry fail. Needs Docker: the in-memory server has no query planner. A new query is covered as soon as
+ * some path below reaches it, and fails until its index is written down here.
+ */
+@EnabledIf("realMongo")
+class QueryPlansTest extends MongoTestBase {
+  private static final Set<String> EXPLAINED = Set.of("find", "count", "distinct", "aggregate", "update", "delete", "findAndModify");
+
+  /**
+   * Shape → index the winning plan must use ({@code _id_} includes IDHACK). Sort fields are part of the shape only
+   * when there is no filter. Two names only where the filter pins {@code _id} and also matches a second index:
+   * both are point reads, and which one wins on a near-empty collection is the planner's call.
+   */
+  private static final Map<String, Set<String>> EXPECTED = Map.ofEntries(
+      expect("appointments{endTs,professionalId,startTs,status}", "pro_status_start_end"),
+      expect("appointments{endTs,patientId,startTs,status}", "patient_status_start_end"),
+      expect("appointments{endTs,patientId,startTs}", "patient_status_start_end"),
+      expect("appointments{patientId,status}", "patient_status_start_end"),
+      expect("appointments{endTs,status}", "status_end"),
+      expect("appointments{_id}", "_id_"),
+      expect("appointments{_id,status}", "_id_"),
+      expect("appointments_archive{endTs,patientId,startTs,status}", "patient_start"),
+      expect("appointments_archive{endTs,patientId,startTs}", "patient_start"),
+      expect("availability_blocks{professionalId}", "pro_start_end"),
+      expect("availability_blocks{endTs,professionalId,startTs}", "pro_start_end"),
+      expect("availability_blocks{}", "pro_start_end"),                      // distinct professionalId
+      expect("availability_blocks{_id}", "_id_"),
+      expect("availability_blocks{_id,professionalId}", "_id_"),
+      expect("professionals{specialty}", "specialty"),
+      expect("professionals{_id}", "_id_"),
+      expect("professionals{}sort{_id}", "_id_"),
+      expect("patients{_id}", "_id_"),
+      expect("patients{}sort{_id}", "_id_"),
+      expect("slot_claims{_id,appointmentIds}", "_id_"),
+      expect("slot_claims{_id,count}", "_id_"),
+      expect("slot_claims{_id,appointmentIds,count}", "_id_"),
+      expect("slot_claims{granule,professionalId}", "pro_granule"),
+      expect("slot_claims{appointmentIds,professionalId}", "pro_granule"),
+      expect("slot_claims{count,professionalId}", "pro_granule"),
+      expect("slot_claims{updatedAt}", "updated"),
+      expect("agenda_bitmaps{professionalId}", "pro_day"),
+      expect("agenda_bitmaps{agendaVersion,professionalId}", "pro_day"),
+      expect("agenda_bitmaps{day,professionalId}", "pro_day"),
+      expect("agenda_bitmaps{_id,agendaVersion}", "_id_"),
+      expect("agenda_versions{_id}", "_id_"),
+      expect("agenda_changes{_id,professionalId}", "pro_seq"),
+      expect("agenda_changes{_id,patientId}", "patient_seq"),
+      expect("agenda_changes{_id}", "_id_"),
+      expect("agenda_changes{}sort{_id}", "_id_"),
+      expect("sequences{_id}", "_id_"),
+      expect("outbox_events{pending,type}", "pending_type_due"),
+      expect("outbox_events{dueAt,pending,type}", "pending_type_due"),
+      expect("outbox_events{pending,processedAt}", "processed_ttl"),
+      expect("outbox_events{claimedBy}", "claimed_by"),
+      expect("outbox_events{deadAt}", "dead"),
+      expect("outbox_events{_id,recipientId}", "recipient_id"),
+      expect("outbox_events{_id,dueAt,pending,type}", "_id_", "pending_type_due"),
+      expect("outbox_events{_id,claimedBy}", "_id_", "claimed_by"),
+      expect("outbox_events{_id,deadAt}", "_id_", "dead"));
+
+  private static Map.Entry<String, Set<String>> expect(String shape, String... indexes){
+    return Map.entry(shape, Set.of(indexes));
+  }
+
+  @TestConfiguration
+  static class Recording {
+    static final List<BsonDocument> COMMANDS = new CopyOnWriteArrayList<>();
+
+    @Bean MongoClientSettingsBuilderCustomizer recordCommands(){
+      return b -> b.addCommandListener(new CommandListener() {
+        @Override public void commandStarted(CommandStartedEvent e){
+          if (EXPLAINED.contains(e.getCommandName())) COMMANDS.add(e.getCommand().clone());
+        }
+      });
+    }
+  }
+
+  static boolean realMongo(){ return REAL_MONGO; }
+
+  @Autowired ApplicationContext context;
+  @Autowired MongoTemplate mongo;
+  @Autowired AppointmentService appointments;
+  @Autowired AvailabilityService availability;
+  @Autowired SlotsService slots;
+  @Autowired SlotSearchService search;
+  @Autowired AvailabilitySummary summary;
+  @Autowired ChangeLog changes;
+  @Autowired Listings listings;
+  @Autowired AppointmentArchive archive;
+  @Autowired SlotClaims claims;
+  @Autowired OccupancyBitmaps bitmaps;
+  @Autowired OutboxPump pump;
+  @Autowired NotificationHub hub;
+
+  @Test
+  void everyQueryUsesItsIndex() throws Exception {
+    drive();
+    callRepositories();
+
+    var failures = new ArrayList<String>();
+    var commands = List.copyOf(Recording.COMMANDS);
+    assertFalse(commands.isEmpty(), "no command recorded");
+    for (var cmd : commands) for (var single : statements(cmd)) {
+      var shape = shape(single);
+      var expected = EXPECTED.get(shape);
+      if (expected == null) { failures.add(shape + ": no expected index, add one <- " + single.toJson()); continue; }
+      var plan = mongo.getDb().runCommand(new Document("explain", single).append("verbosity", "queryPlanner"));
+      var stages = new ArrayList<String>();
+      var indexes = new TreeSet<String>();
+      winningPlan(plan, false, stages, indexes);
+      if (stages.contains("IDHACK")) indexes.add("_id_");
+      if (stages.contains("COLLSCAN") || stages.contains("EOF") || indexes.isEmpty() || !expected.containsAll(indexes))
+        failures.add(shape + ": expected " + expected + ", won " + indexes + " " + stages + " <- " + single.toJson());
+    }
+    assertTrue(failures.isEmpty(), failures.size() + " command(s) off their index:\n" + String.join("\n", failures));
+  }
+
+  /** One agenda end to end: blocks, bookings (single, batch), cancel, every slot view, feeds, jobs. */
+  private void drive(){
+    var pro = new Professional();
+    pro.setId(new ObjectId().toHexString());
+    pro.setFullName("Dra. Plan");
+    pro.setSpecialty("plans");
+    pro.setAvailability(List.of(new AvailabilitySlot(DayOfWeek.MONDAY, LocalTime.of(9, 0), LocalTime.of(13, 0), LocationType.HOSPITAL, null)));
+    pro.setCapacity(Map.of(LocationType.PRIVATE, 2));
+    mongo.insert(pro);
+    var patient = new Patient();
+    patient.setId(new ObjectId().toHexString());
+    patient.setFullName("Paciente Plan");
+    mongo.insert(patient);
+
+    var day = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).plusDays(2);
+    var block = availability.addOpenBlock(pro.getId(), day.plusHours(14), day.plusHours(18), "plan", LocationType.PRIVATE);
+    availability.addOpenBlock(pro.getId(), day.plusHours(18), day.plusHours(19), "plan", LocationType.PRIVATE);
+    availability.closeRange(pro.getId(), day.plusHours(17), day.plusHours(17).plusMinutes(30), "plan");
+
+    var a = appointments.book(pro.getId(), patient.getId(), day.plusHours(14), day.plusHours(14).plusMinutes(30));
+    var r = new BookRequest();
+    r.setProfessionalId(pro.getId()); r.setPatientId(patient.getId());
+    r.setStartTs(day.plusHours(15)); r.setEndTs(day.plusHours(15).plusMinutes(30));
+    appointments.bookAll(List.of(r));
+    appointments.patientChanged(patient.getId());
+    appointments.cancel(a.getId(), "plan");
+
+    slots.professionalSlots(pro.getId(), day, day.plusDays(1), 30, null);
+    slots.professionalSlots(pro.getId(), day.plusHours(1), day.plusDays(20), 30, null);
+    slots.patientSlots(patient.getId(), day.minusDays(200), day.plusDays(7), 30);
+    search.earliest("plans", null, day, day.plusDays(7), 30, 5);
+    summary.month(pro.getId(), YearMonth.from(day), 30);
+    changes.professional(pro.getId(), "0", 100);
+    changes.patient(patient.getId(), "0", 100);
+    listings.page(Patient.class, null, 10, null);
+    listings.page(Professional.class, new ObjectId().toHexString(), 10, List.of("fullName"));
+    archive.patient(patient.getId(), null, day.minusDays(400).toInstant(), day.toInstant());
+    archive.archive(Instant.now());
+    claims.occupancy(pro.getId(), day.toInstant(), day.plusDays(1).toInstant());
+    claims.sweep(Instant.now().plus(1, ChronoUnit.DAYS));
+    bitmaps.rebuild(pro.getId());
+    pump.pump();
+    pump.stats();
+    pump.deadLetters(10);
+    pump.retryDead(new ObjectId().toHexString());
+    hub.subscribe(patient.getId(), new ObjectId().toHexString(), new NotificationHub.Sink() {
+      @Override public void send(NotificationHub.Event e){ }
+      @Override public void complete(){ }
+    }).cancel();
+    availability.removeBlock(pro.getId(), block.getId());
+    availability.compactAll();
+  }
+
+  /** Every query method declared on the application's repositories, with placeholder arguments. */
+  private void callRepositories() throws Exception {
+    for (var repo : context.getBeansOfType(Repository.class).values()) {
+      for (var type : ClassUtils.getAllInterfacesForClassAsSet(repo.getClass())) {
+        if (!type.getPackageName().startsWith("com.gerardo.appointments")) continue;
+        for (Method m : type.getDeclaredMethods()) {
+          if (m.isDefault() || m.isSynthetic()) continue;
+          var args = Arrays.stream(m.getParameterTypes()).map(QueryPlansTest::placeholder).toArray();
+          var out = m.invoke(repo, args);
+          if (out instanceof BaseStream<?, ?> s) s.close();
+        }
+      }
+    }
+  }
+
+  private static Object placeholder(Class<?> t){
+    if (t == String.class) return new ObjectId().toHexString();
+    if (t == Instant.class) return Instant.now();
+    if (t == AppointmentStatus.class) return AppointmentStatus.SCHEDULED;
+    if (Collection.class.isAssignableFrom(t)) {
+      var now = Instant.now();
+      return List.of(new ProRange("p", now, now.plusSeconds(3600)), new ProRange("q", now, now.plusSeconds(3600)));
+    }
+    throw new IllegalArgumentException("no placeholder for " + t + ": add one");
+  }
+
+  /** Explain takes one statement: a bulk update / delete is split, driver-only fields are dropped. */
+  private static List<BsonDocument> statements(BsonDocument cmd){
+    var base = new BsonDocument();
+    cmd.forEach((k, v) -> { if (!k.startsWith("$") && !k.equals("lsid") && !k.equals("txnNumber")) base.put(k, v); });
+    var list = base.containsKey("updates") ? "updates" : base.containsKey("deletes") ? "deletes" : null;
+    if (list == null) return List.of(base);
+    var out = new ArrayList<BsonDocument>();
+    for (BsonValue stmt : base.getArray(list)) {
+      var one = base.clone();
+      one.put(list, new BsonArray(List.of(stmt)));
+      out.add(one);
+    }
+    return out;
+  }
+
+  /**
+   * {@code collection{filter fields}}, fields sorted and {@code $and}/{@code $or} branches merged; with an empty
+   * filter the sort fields follow as {@code sort{...}}. Aggregations (countDocuments) are shaped by their first {@code $match}.
+   */
+  private static String shape(BsonDocument cmd){
+    var name = cmd.getFirstKey();
+    var collection = cmd.getString(name).getValue();
+    var filter = switch (name) {
+      case "find" -> cmd.getDocument("filter", new BsonDocument());
+      case "update" -> cmd.getArray("updates").get(0).asDocument().getDocument("q");
+      case "delete" -> cmd.getArray("deletes").get(0).asDocument().getDocument("q");
+      case "aggregate" -> {
+        var pipeline = cmd.getArray("pipeline");
+        yield pipeline.isEmpty() ? new BsonDocument() : pipeline.get(0).asDocument().getDocument("$match", new BsonDocument());
+      }
+      default -> cmd.getDocument("query", new BsonDocument());   // count, distinct, findAndModify
+    };
+    var fields = new TreeSet<String>();
+    fields(filter, fields);
+    var out = collection + "{" + String.join(",", fields) + "}";
+    var sort = cmd.getDocument("sort", new BsonDocument());
+    return fields.isEmpty() && !sort.isEmpty() ? out + "sort{" + String.join(",", new TreeSet<>(sort.keySet())) + "}" : out;
+  }
+
+  private static void fields(BsonDocument filter, Set<String> out){
+    filter.forEach((k, v) -> {
+      if (!k.startsWith("$")) out.add(k);
+      else if (v.isArray()) v.asArray().forEach(branch -> { if (branch.isDocument()) fields(branch.asDocument(), out); });
+    });
+  }
+
+  /** Stage and index names under every {@code winningPlan} of the explain output (find, aggregate $cursor, SBE queryPlan). */
+  private static void winningPlan(Object node, boolean inWinning, List<String> stages, Set<String> indexes){
+    if (node instanceof Map<?, ?> doc) {
+      if (inWinning && doc.get("stage") instanceof String stage) stages.add(stage);
+      if (inWinning && doc.get("indexName") instanceof String index) indexes.add(index);
+      doc.forEach((k, v) -> winningPlan(v, inWinning || "winningPlan".equals(k), stages, indexes));
+    } else if (node instanceof List<?> list) {
+      list.forEach(v -> winningPlan(v, inWinning, stages, indexes));
+    }
+  }
+}
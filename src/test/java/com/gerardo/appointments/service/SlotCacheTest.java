@@ -0,0 +1,58 @@
+// src/test/java/com/gerardo/appointments/service/SlotCacheTest.java
+package com.gerardo.appointments.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SlotCacheTest {
+  private final SlotCache cache = new SlotCache(true, 14, 1000, Duration.ofMinutes(10), 500);
+  private final Instant today = Instant.now().truncatedTo(ChronoUnit.DAYS);
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private SlotCache.Day load(Instant day){
+    loads.incrementAndGet();
+    return new SlotCache.Day(List.of(), true);
+  }
+
+  @Test
+  void aRangeWriteDropsDaysOnlyTheWarmerLoaded(){
+    cache.warm("p", today, 30, this::load);          // nunca pedido: no queda en requested
+    cache.invalidate("p", today.plus(2, ChronoUnit.HOURS), today.plus(3, ChronoUnit.HOURS));
+    cache.get("p", today, 30, this::load);
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void aRangeWriteKeepsOtherDaysAndProfessionals(){
+    cache.get("p", today, 30, this::load);
+    cache.get("p", today.plus(1, ChronoUnit.DAYS), 15, this::load);
+    cache.get("q", today, 30, this::load);
+    cache.invalidate("p", today.plus(1, ChronoUnit.DAYS), today.plus(2, ChronoUnit.DAYS));
+
+    cache.get("p", today, 30, this::load);
+    cache.get("q", today, 30, this::load);
+    cache.get("p", today.plus(1, ChronoUnit.DAYS), 15, this::load);
+    assertEquals(4, loads.get());
+  }
+
+  @Test
+  void theLeastRecentlyUsedEntryGoesWhateverItsProfessional(){
+    var small = new SlotCache(true, 14, 2, Duration.ofMinutes(10), 500);
+    small.get("p", today, 30, this::load);
+    small.get("q", today, 30, this::load);
+    small.get("p", today, 30, this::load);           // p pasa a ser el más reciente
+    small.get("r", today, 30, this::load);           // desaloja a q
+    assertEquals(2, small.stats().size());
+
+    small.get("p", today, 30, this::load);
+    small.get("q", today, 30, this::load);
+    assertEquals(4, loads.get());
+  }
+}
@@ -0,0 +1,113 @@
+// src/test/java/com/gerardo/appointments/service/SlotClaimsTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AppointmentStatus;
+import com.gerardo.appointments.domain.SlotClaim;
+import com.gerardo.appointments.repo.AppointmentRepo;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+class SlotClaimsTest extends MongoTestBase {
+  @Autowired MongoTemplate mongo;
+  @Autowired AppointmentRepo appts;
+  @Autowired SlotCache slotCache;
+  @Autowired AgendaVersions versions;
+
+  private final String proId = new ObjectId().toHexString();
+  private final Instant start = Instant.now().plus(2, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+  private final Instant end = start.plus(30, ChronoUnit.MINUTES);
+  private SlotClaims claims;
+
+  @BeforeEach
+  void setUp(){
+    mongo.remove(new Query(), Appointment.class);
+    mongo.remove(new Query(), SlotClaim.class);
+    // instancia propia: el barrido recuerda hasta dónde llegó
+    claims = new SlotClaims(mongo, appts, slotCache, versions, 5, false, 2, Duration.ofMinutes(5), Duration.ofDays(7), Duration.ofDays(366));
+  }
+
+  @Test
+  void seatsOfABookingThatNeverInsertedAreSweptAfterTheGrace(){
+    var orphan = new ObjectId().toHexString();
+    claims.claim(proId, orphan, start, end, 1);
+
+    assertEquals(0, claims.sweep(Instant.now()), "still in flight");
+    assertEquals(6, granules());
+
+    assertEquals(1, claims.sweep(Instant.now().plus(6, ChronoUnit.MINUTES)));
+    assertEquals(0, granules());
+    assertDoesNotThrow(() -> claims.claim(proId, new ObjectId().toHexString(), start, end, 1));
+  }
+
+  @Test
+  void seatsOfScheduledAppointmentsStayAndCancelledOnesGo(){
+    var kept = appts.insert(appointment(start, end, AppointmentStatus.SCHEDULED));
+    var cancelled = appts.insert(appointment(end, end.plus(30, ChronoUnit.MINUTES), AppointmentStatus.CANCELLED));
+    claims.claim(proId, kept.getId(), kept.getStartTs(), kept.getEndTs(), 1);
+    claims.claim(proId, cancelled.getId(), cancelled.getStartTs(), cancelled.getEndTs(), 1);
+
+    assertEquals(1, claims.sweep(Instant.now().plus(6, ChronoUnit.MINUTES)));
+    var occ = claims.occupancy(proId, start, end.plus(30, ChronoUnit.MINUTES));
+    assertEquals(1, occ.max(start.toEpochMilli(), end.toEpochMilli()));
+    assertEquals(0, occ.max(end.toEpochMilli(), end.plus(30, ChronoUnit.MINUTES).toEpochMilli()));
+  }
+
+  @Test
+  void backfillPagesThroughAndSkipsSeatsAlreadyCounted(){
+    var a = appts.insert(appointment(start, end, AppointmentStatus.SCHEDULED));
+    appts.insert(appointment(end, end.plus(15, ChronoUnit.MINUTES), AppointmentStatus.SCHEDULED));
+    appts.insert(appointment(end.plus(1, ChronoUnit.HOURS), end.plus(2, ChronoUnit.HOURS), AppointmentStatus.SCHEDULED));
+    claims.claim(proId, a.getId(), start, end, 1);
+
+    var backfilling = new SlotClaims(mongo, appts, slotCache, versions, 5, true, 2, Duration.ofMinutes(5), Duration.ofDays(7), Duration.ofDays(366));
+    backfilling.backfill();
+    backfilling.backfill();
+
+    var all = mongo.find(Query.query(where("professionalId").is(proId)), SlotClaim.class);
+    assertEquals(6 + 3 + 12, all.size());
+    all.forEach(c -> assertEquals(1, c.getCount(), c.getId()));
+  }
+
+  /** Past 2^31 granules the old int casts went negative; well before that the arrays alone would not fit. */
+  @Test
+  void rangesPastTheSpanCapAreRejected(){
+    var huge = start.plus(Duration.ofDays(366L * 30_000));
+    var ex = assertThrows(ResponseStatusException.class, () -> claims.occupancy(proId, start, huge));
+    assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+    assertThrows(ResponseStatusException.class, () -> claims.claim(proId, new ObjectId().toHexString(), start, start.plus(Duration.ofDays(400)), 1));
+    assertEquals(0, granules());
+
+    assertTrue(claims.fits(start, start.plus(Duration.ofDays(366))));
+    assertFalse(claims.fits(start, huge));
+    assertEquals(366 * 288, claims.occupancy(proId, start, start.plus(Duration.ofDays(366))).counts().length);
+  }
+
+  private long granules(){
+    return mongo.count(Query.query(where("professionalId").is(proId)), SlotClaim.class);
+  }
+
+  private Appointment appointment(Instant s, Instant e, AppointmentStatus status){
+    var a = new Appointment();
+    a.setProfessionalId(proId);
+    a.setPatientId("patient");
+    a.setStartTs(s);
+    a.setEndTs(e);
+    a.setStatus(status);
+    return a;
+  }
+}
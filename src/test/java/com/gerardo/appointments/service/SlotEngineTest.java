@@ -0,0 +1,204 @@
+// src/test/java/com/gerardo/appointments/service/SlotEngineTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.domain.Appointment;
+import com.gerardo.appointments.domain.AvailabilityBlock;
+import com.gerardo.appointments.domain.LocationType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link SlotEngine} against the per-slot scan it replaced: every OPEN block clipped to the range, stepped by the
+ * slot, each slot checked against every appointment ({@code end > s && start < e}). Blocks and appointments are taken
+ * in start order, as the engine does. One row per edge case; each row also runs the free-slot search.
+ */
+class SlotEngineTest {
+  private static final Instant D = Instant.parse("2030-01-07T00:00:00Z");
+
+  private record Case(String name, List<AvailabilityBlock> blocks, List<Appointment> busy, Instant from, Instant to, int slotMinutes) {}
+
+  private static final List<Case> CASES = List.of(
+      new Case("no blocks", List.of(), List.of(appt("a", at(0, 10, 0), at(0, 11, 0))), at(0, 0, 0), at(1, 0, 0), 30),
+      new Case("booking inside one slot",
+          List.of(open(at(0, 9, 0), at(0, 12, 0), null)), List.of(appt("a", at(0, 10, 5), at(0, 10, 20))), at(0, 0, 0), at(1, 0, 0), 30),
+      new Case("booking touching slot boundaries",
+          List.of(open(at(0, 9, 0), at(0, 12, 0), null)), List.of(appt("a", at(0, 10, 0), at(0, 10, 30))), at(0, 0, 0), at(1, 0, 0), 30),
+      new Case("booking straddling a boundary",
+          List.of(open(at(0, 9, 0), at(0, 12, 0), null)), List.of(appt("a", at(0, 10, 15), at(0, 10, 45))), at(0, 0, 0), at(1, 0, 0), 30),
+      new Case("block edges off the slot grid",
+          List.of(open(at(0, 9, 10), at(0, 10, 50), LocationType.PRIVATE)), List.of(appt("a", at(0, 10, 40), at(0, 11, 0))), at(0, 0, 0), at(1, 0, 0), 30),
+      new Case("range bounds clip the block",
+          List.of(open(at(0, 9, 0), at(0, 12, 0), null)), List.of(appt("a", at(0, 9, 0), at(0, 10, 0))), at(0, 9, 45), at(0, 11, 10), 30),
+      new Case("booking ending at the block start, one starting at its end",
+          List.of(open(at(0, 9, 0), at(0, 10, 0), null)),
+          List.of(appt("a", at(0, 8, 0), at(0, 9, 0)), appt("b", at(0, 10, 0), at(0, 11, 0))), at(0, 0, 0), at(1, 0, 0), 20),
+      new Case("block across midnight, multi-day range",
+          List.of(open(at(0, 22, 0), at(1, 2, 0), LocationType.PRIVATE)),
+          List.of(appt("a", at(0, 23, 30), at(1, 0, 30)), appt("b", at(1, 1, 0), at(1, 1, 15))), at(0, 0, 0), at(3, 0, 0), 60),
+      new Case("blocks out of order over days, closed and out-of-range ones",
+          List.of(open(at(2, 9, 0), at(2, 10, 0), null), closed(at(1, 9, 0), at(1, 12, 0)), open(at(0, 9, 0), at(0, 10, 0), LocationType.PRIVATE),
+                  open(at(1, 14, 0), at(1, 15, 0), LocationType.HOSPITAL), open(at(5, 9, 0), at(5, 10, 0), null)),
+          List.of(appt("a", at(2, 9, 30), at(2, 10, 0)), appt("b", at(1, 9, 0), at(1, 9, 30)), appt("c", at(0, 9, 15), at(0, 9, 45))),
+          at(0, 0, 0), at(3, 0, 0), 30),
+      new Case("long booking before short ones (prefix max of ends)",
+          List.of(open(at(0, 8, 0), at(0, 13, 0), null)),
+          List.of(appt("long", at(0, 7, 0), at(0, 11, 30)), appt("b", at(0, 9, 0), at(0, 9, 15)), appt("c", at(0, 12, 40), at(0, 12, 50))),
+          at(0, 0, 0), at(1, 0, 0), 30),
+      new Case("booking longer than the whole range",
+          List.of(open(at(0, 9, 0), at(0, 11, 0), null)), List.of(appt("a", at(-1, 0, 0), at(2, 0, 0))), at(0, 0, 0), at(1, 0, 0), 30),
+      new Case("overlapping bookings on one slot",
+          List.of(open(at(0, 9, 0), at(0, 11, 0), LocationType.PRIVATE)),
+          List.of(appt("a", at(0, 9, 0), at(0, 9, 30)), appt("b", at(0, 9, 0), at(0, 9, 30)), appt("c", at(0, 9, 10), at(0, 10, 10))),
+          at(0, 0, 0), at(1, 0, 0), 30),
+      new Case("zero-length bookings",
+          List.of(open(at(0, 9, 0), at(0, 11, 0), LocationType.PRIVATE)),
+          List.of(appt("edge", at(0, 10, 0), at(0, 10, 0)), appt("in", at(0, 9, 15), at(0, 9, 15)), appt("in2", at(0, 9, 15), at(0, 9, 15))),
+          at(0, 0, 0), at(1, 0, 0), 30),
+      new Case("zero-length block and block shorter than a slot",
+          List.of(open(at(0, 9, 0), at(0, 9, 0), null), open(at(0, 10, 0), at(0, 10, 20), null)), List.of(), at(0, 0, 0), at(1, 0, 0), 30),
+      new Case("empty range", List.of(open(at(0, 9, 0), at(0, 12, 0), null)), List.of(), at(0, 10, 0), at(0, 10, 0), 30),
+      new Case("bounds off the minute",
+          List.of(open(at(0, 9, 0).plusMillis(1500), at(0, 11, 0).minusMillis(7), null)),
+          List.of(appt("a", at(0, 9, 30).plusMillis(1500), at(0, 9, 30).plusMillis(1501))), at(0, 0, 0), at(1, 0, 0), 15));
+
+  @Test
+  void everySlotMatchesTheScanItReplaced(){
+    for (var c : CASES) {
+      var got = new ArrayList<String>();
+      var engine = SlotEngine.of(c.blocks(), c.busy(), c.from(), c.to());
+      engine.forEachSlot(c.slotMinutes() * 60_000L, (s, e, lt, hits, n) -> {
+        var ids = new ArrayList<String>();
+        for (int i = 0; i < n; i++) ids.add(engine.busy(hits[i]).getId());
+        got.add(slot(s, e, lt) + " " + ids);
+      });
+      assertEquals(scan(c), got, c.name());
+    }
+  }
+
+  @Test
+  void freeSlotsMatchTheScanForEveryCapacityAndCutoff(){
+    Map<String, ToIntFunction<LocationType>> capacities = Map.of(
+        "1", lt -> 1,
+        "2", lt -> 2,
+        "private 2", lt -> lt == LocationType.PRIVATE ? 2 : 1);
+    for (var c : CASES) for (var cap : capacities.entrySet()) for (var location : new LocationType[]{null, LocationType.PRIVATE}) {
+      for (var cutoff : List.of(Long.MAX_VALUE, at(0, 10, 0).toEpochMilli(), at(1, 0, 30).toEpochMilli())) {
+        var got = new ArrayList<String>();
+        SlotEngine.of(c.blocks(), c.busy(), c.from(), c.to())
+                  .forEachFreeBefore(c.slotMinutes() * 60_000L, location, cap.getValue(), () -> cutoff, (s, e, lt, hits, n) -> got.add(slot(s, e, lt)));
+        assertEquals(freeScan(c, location, cap.getValue(), cutoff), got,
+            c.name() + ", capacity " + cap.getKey() + ", location " + location + ", cutoff " + Instant.ofEpochMilli(cutoff));
+      }
+    }
+  }
+
+  // ---------- referencia: el recorrido por slot de antes ----------
+
+  private static List<String> scan(Case c){
+    var out = new ArrayList<String>();
+    var busy = byStart(c.busy());
+    forEachScanSlot(c, (s, e, lt) -> out.add(slot(s, e, lt) + " " + overlapping(busy, s, e).stream().map(Appointment::getId).toList()));
+    return out;
+  }
+
+  /** Free as booking checks it: capacity 1, no overlap at all; more, fewer than {@code cap} running at once. */
+  private static List<String> freeScan(Case c, LocationType location, ToIntFunction<LocationType> capacity, long cutoff){
+    var out = new ArrayList<String>();
+    var busy = byStart(c.busy());
+    for (var w : openByStart(c)) {
+      long ws = Math.max(w.getStartTs().toEpochMilli(), c.from().toEpochMilli());
+      if (ws >= cutoff) break;
+      var lt = location(w);
+      if (location != null && lt != location) continue;
+      int cap = capacity.applyAsInt(lt);
+      forEachScanSlot(c, w, (s, e, l) -> {
+        if (s >= cutoff) return;
+        var hits = overlapping(busy, s, e);
+        if (cap == 1 ? hits.isEmpty() : concurrent(hits, s, e) < cap) out.add(slot(s, e, l));
+      });
+    }
+    return out;
+  }
+
+  private interface Slot { void visit(long s, long e, LocationType lt); }
+
+  private static void forEachScanSlot(Case c, Slot visitor){
+    for (var w : openByStart(c)) forEachScanSlot(c, w, visitor);
+  }
+
+  private static void forEachScanSlot(Case c, AvailabilityBlock w, Slot visitor){
+    var slot = Duration.ofMinutes(c.slotMinutes());
+    var ws = w.getStartTs().isBefore(c.from()) ? c.from() : w.getStartTs();
+    var we = w.getEndTs().isAfter(c.to()) ? c.to() : w.getEndTs();
+    for (var cur = ws; cur.plus(slot).compareTo(we) <= 0; cur = cur.plus(slot)) {
+      visitor.visit(cur.toEpochMilli(), cur.plus(slot).toEpochMilli(), location(w));
+    }
+  }
+
+  private static List<Appointment> overlapping(List<Appointment> busy, long s, long e){
+    return busy.stream().filter(a -> a.getEndTs().toEpochMilli() > s && a.getStartTs().toEpochMilli() < e).toList();
+  }
+
+  /** Most appointments (clipped to the slot) covering any one instant of it. */
+  private static int concurrent(List<Appointment> hits, long s, long e){
+    int max = 0;
+    for (var p : hits) {
+      long at = Math.max(p.getStartTs().toEpochMilli(), s);
+      int n = 0;
+      for (var a : hits) {
+        if (Math.max(a.getStartTs().toEpochMilli(), s) <= at && at < Math.min(a.getEndTs().toEpochMilli(), e)) n++;
+      }
+      max = Math.max(max, n);
+    }
+    return max;
+  }
+
+  private static List<AvailabilityBlock> openByStart(Case c){
+    return c.blocks().stream().filter(AvailabilityBlock::isOpen).sorted(Comparator.comparing(AvailabilityBlock::getStartTs)).toList();
+  }
+
+  private static List<Appointment> byStart(List<Appointment> xs){
+    return xs.stream().sorted(Comparator.comparing(Appointment::getStartTs)).toList();
+  }
+
+  private static LocationType location(AvailabilityBlock w){
+    return w.getLocationType() == null ? LocationType.HOSPITAL : w.getLocationType();
+  }
+
+  // ---------- fixtures ----------
+
+  private static String slot(long s, long e, LocationType lt){
+    return Instant.ofEpochMilli(s) + "/" + Instant.ofEpochMilli(e) + " " + lt;
+  }
+
+  private static Instant at(int day, int hour, int minute){
+    return D.plus(Duration.ofDays(day).plusHours(hour).plusMinutes(minute));
+  }
+
+  private static AvailabilityBlock open(Instant s, Instant e, LocationType lt){
+    var b = new AvailabilityBlock();
+    b.setId("b-" + s + "-" + e); b.setProfessionalId("pro"); b.setStartTs(s); b.setEndTs(e); b.setOpen(true); b.setLocationType(lt);
+    return b;
+  }
+
+  private static AvailabilityBlock closed(Instant s, Instant e){
+    var b = open(s, e, null);
+    b.setOpen(false);
+    return b;
+  }
+
+  private static Appointment appt(String id, Instant s, Instant e){
+    var a = new Appointment();
+    a.setId(id); a.setProfessionalId("pro"); a.setPatientId("patient"); a.setStartTs(s); a.setEndTs(e);
+    return a;
+  }
+}
@@ -0,0 +1,82 @@
+// src/test/java/com/gerardo/appointments/service/SlotSearchServiceTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.domain.*;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlotSearchServiceTest extends MongoTestBase {
+  private static final int PROS = 20;
+
+  @Autowired MongoTemplate mongo;
+  @Autowired SlotSearchService search;
+  @Autowired AgendaIndex index;
+  @Autowired AppointmentService appointments;
+
+  private final String specialty = "search-" + new ObjectId().toHexString();
+
+  /** A huge limit is capped; the cold agendas of the specialty are read for the range but never enter the index. */
+  @Test
+  void wideSearchIsCappedAndLeavesTheAgendaIndexAlone(){
+    var from = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).plusDays(2);
+    var to = from.plusDays(1);
+    String hot = null;
+    for (int i = 0; i < PROS; i++) hot = professional();
+    index.scheduled(hot, from.toInstant(), to.toInstant());
+    var before = index.stats();
+
+    var found = search.earliest(specialty, null, from, to, 30, Integer.MAX_VALUE);
+
+    assertEquals(100, found.size());
+    assertEquals(PROS, new HashSet<>(found.stream().map(s -> s.getProfessionalId()).toList()).size());
+    var after = index.stats();
+    assertEquals(before.size(), after.size());
+    assertEquals(before.misses(), after.misses(), "search loaded agendas");
+    assertEquals(before.evictions(), after.evictions());
+    assertEquals(PROS - 1, after.bypasses() - before.bypasses());
+    assertEquals(1, after.hits() - before.hits());
+  }
+
+  /** Capacity 2: a slot with one booking is still offered, as by the slot views; with two it is not. */
+  @Test
+  void overbookingProfessionalsOfferSlotsUntilTheyAreFull(){
+    var from = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).plusDays(2).withHour(12);   // 9:00 en la zona de la clínica
+    var to = from.plusHours(2);
+    var pro = professional(Map.of(LocationType.PRIVATE, 2));
+
+    appointments.book(pro, "patient-1", from, from.plusMinutes(30));
+    var first = search.earliest(specialty, null, from, to, 30, 1);
+    assertEquals(from, first.get(0).getStartTs());
+
+    appointments.book(pro, "patient-2", from, from.plusMinutes(30));
+    var next = search.earliest(specialty, null, from, to, 30, 1);
+    assertEquals(from.plusMinutes(30), next.get(0).getStartTs());
+  }
+
+  private String professional(){
+    return professional(Map.of());
+  }
+
+  private String professional(Map<LocationType, Integer> capacity){
+    var p = new Professional();
+    p.setId(new ObjectId().toHexString());
+    p.setFullName("Dra. Búsqueda");
+    p.setSpecialty(specialty);
+    p.setAvailability(Arrays.stream(DayOfWeek.values())
+        .map(d -> new AvailabilitySlot(d, LocalTime.of(8, 0), LocalTime.of(20, 0), LocationType.PRIVATE, null)).toList());
+    p.setCapacity(capacity);
+    mongo.insert(p);
+    return p.getId();
+  }
+}
@@ -0,0 +1,148 @@
+// src/test/java/com/gerardo/appointments/service/SlotsServiceTest.java
+package com.gerardo.appointments.service;
+
+import com.gerardo.appointments.MongoTestBase;
+import com.gerardo.appointments.config.TimeConfig;
+import com.gerardo.appointments.domain.*;
+import com.gerardo.appointments.dto.SlotViewDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlotsServiceTest extends MongoTestBase {
+
+  @Autowired MongoTemplate mongo;
+  @Autowired SlotsService slots;
+  @Autowired MeterRegistry meters;
+  @Autowired TimeConfig time;
+  @Autowired AppointmentService appointments;
+
+  private final String patientId = new ObjectId().toHexString();
+
+  /**
+   * Half the professionals only have weekly hours (PRIVATE), the other half have them cut by an explicit HOSPITAL
+   * block. The location comes from the effective windows, and the reads per collection stay the same from 1 to
+   * 8 professionals and 1 to 80 appointments: one {@code $or} on the blocks, none once the agendas are loaded.
+   */
+  @Test
+  void patientViewLocatesByEffectiveWindowsWithAFixedNumberOfQueries(){
+    var zone = ZoneId.of(time.availabilityZone);
+    var first = LocalDate.now(zone).plusDays(2);
+    var from = OffsetDateTime.ofInstant(at(first, 0, zone), ZoneOffset.UTC);
+    var to = from.plusDays(11);
+    var collections = List.of("appointments", "availability_blocks", "professionals");
+
+    Map<String, Long> baseline = null;
+    for (int[] size : new int[][]{{1, 1}, {2, 6}, {8, 10}}) {
+      int pros = size[0], days = size[1];
+      var patient = new ObjectId().toHexString();
+      var hospital = new HashSet<String>();
+      var ids = new ArrayList<String>();
+      for (int p = 0; p < pros; p++) {
+        var pro = professional();
+        ids.add(pro);
+        if (p % 2 == 1) hospital.add(pro);
+        for (int i = 0; i < days; i++) {
+          var d = first.plusDays(i);
+          book(pro, patient, at(d, 10, zone));
+          if (!hospital.contains(pro)) continue;
+          var b = new AvailabilityBlock();
+          b.setProfessionalId(pro); b.setStartTs(at(d, 9, zone)); b.setEndTs(at(d, 11, zone));
+          b.setOpen(true); b.setLocationType(LocationType.HOSPITAL); b.setReason("guardia");
+          mongo.insert(b);
+        }
+      }
+
+      var before = finds(collections);
+      var view = slots.patientSlots(patient, from, to, 30);
+      var reads = delta(before, finds(collections));
+      assertEquals(pros * days, view.size());
+      for (var v : view) assertEquals(hospital.contains(v.getProfessionalId()) ? LocationType.HOSPITAL : LocationType.PRIVATE, v.getLocationType(), v.getStartTs().toString());
+      assertEquals(1, reads.get("availability_blocks"), "block reads with " + pros + " professionals");
+      if (baseline == null) baseline = reads;
+      assertEquals(baseline, reads, pros + " professionals, " + pros * days + " appointments");
+
+      // agendas ya cargadas (vista del profesional): las ventanas salen de memoria
+      for (var pro : ids) slots.professionalSlots(pro, from, to, 30, null);
+      before = finds(collections);
+      assertEquals(view.stream().map(SlotViewDTO::getLocationType).toList(),
+                   slots.patientSlots(patient, from, to, 30).stream().map(SlotViewDTO::getLocationType).toList());
+      assertEquals(0, delta(before, finds(collections)).get("availability_blocks"));
+    }
+  }
+
+  /**
+   * A view longer than {@code app.booking.max-claim-span} (a year): without overbooking the counters are not read
+   * at all, with overbooking they are read by chunks. Either way the whole range comes back, nothing is refused.
+   */
+  @Test
+  void slotViewsLongerThanTheClaimSpanStillWork(){
+    var zone = ZoneId.of(time.availabilityZone);
+    var first = LocalDate.now(zone).plusDays(1);
+    int days = 400;
+    var single = professional(LocalTime.of(10, 0), LocalTime.of(11, 0), Map.of());
+    var shared = professional(LocalTime.of(10, 0), LocalTime.of(11, 0), Map.of(LocationType.PRIVATE, 2));
+    var bookedAt = at(first.plusDays(380), 10, zone);
+    appointments.book(shared, patientId, OffsetDateTime.ofInstant(bookedAt, ZoneOffset.UTC), OffsetDateTime.ofInstant(bookedAt.plus(1, ChronoUnit.HOURS), ZoneOffset.UTC));
+    var from = OffsetDateTime.ofInstant(at(first, 0, zone), ZoneOffset.UTC);
+    var to = OffsetDateTime.ofInstant(at(first.plusDays(days), 0, zone), ZoneOffset.UTC);
+
+    assertEquals(days, slots.professionalSlots(single, from, to, 60, "available").size());
+    var view = slots.professionalSlots(shared, from, to, 60, null);
+    assertEquals(days, view.size());
+    for (var v : view) assertEquals(v.getStartTs().toInstant().equals(bookedAt) ? 1 : 2, v.getRemaining(), v.getStartTs().toString());
+  }
+
+  /** {@code find} commands the driver sent to each collection so far. */
+  private Map<String, Long> finds(List<String> collections){
+    var out = new HashMap<String, Long>();
+    for (var c : collections) {
+      out.put(c, meters.find("mongodb.driver.commands").tags("command", "find", "collection", c).timers()
+                       .stream().mapToLong(Timer::count).sum());
+    }
+    return out;
+  }
+
+  private static Map<String, Long> delta(Map<String, Long> before, Map<String, Long> after){
+    var out = new HashMap<String, Long>();
+    after.forEach((c, n) -> out.put(c, n - before.get(c)));
+    return out;
+  }
+
+  private String professional(){
+    return professional(LocalTime.of(8, 0), LocalTime.of(20, 0), Map.of());
+  }
+
+  private String professional(LocalTime opens, LocalTime closes, Map<LocationType, Integer> capacity){
+    var p = new Professional();
+    p.setId(new ObjectId().toHexString());
+    p.setFullName("Dra. Semanal");
+    p.setAvailability(Arrays.stream(DayOfWeek.values())
+        .map(d -> new AvailabilitySlot(d, opens, closes, LocationType.PRIVATE, null)).toList());
+    p.setCapacity(capacity);
+    mongo.insert(p);
+    return p.getId();
+  }
+
+  private void book(String proId, String patientId, Instant start){
+    var a = new Appointment();
+    a.setProfessionalId(proId); a.setPatientId(patientId);
+    a.setStartTs(start); a.setEndTs(start.plus(30, ChronoUnit.MINUTES));
+    a.setStatus(AppointmentStatus.SCHEDULED);
+    mongo.insert(a);
+  }
+
+  private static Instant at(LocalDate d, int hour, ZoneId zone){
+    return d.atTime(hour, 0).atZone(zone).toInstant();
+  }
+}
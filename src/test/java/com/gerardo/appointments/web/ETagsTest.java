@@ -0,0 +1,27 @@
+// src/test/java/com/gerardo/appointments/web/ETagsTest.java
+package com.gerardo.appointments.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ETagsTest {
+  private final OffsetDateTime from = OffsetDateTime.parse("2030-01-07T00:00:00Z"), to = from.plusDays(7);
+
+  /** "Aa" and "BB" share String.hashCode: under a 32-bit hash of the params the two queries got the same tag. */
+  @Test
+  void queriesThatCollidedUnderHashCodeGetDifferentTags(){
+    assertNotEquals(ETags.of(3, "json", from, to, 30, "Aa"), ETags.of(3, "json", from, to, 30, "BB"));
+  }
+
+  @Test
+  void paramBoundariesAndNullsAreKeptApart(){
+    assertNotEquals(ETags.of(3, "a,b", "c"), ETags.of(3, "a", "b,c"));
+    assertNotEquals(ETags.of(3, "json", null), ETags.of(3, "json", "null"));
+    assertNotEquals(ETags.of(3, "json", 30), ETags.of(4, "json", 30));
+    assertEquals(ETags.of(3, "json", from, to, 30, null), ETags.of(3, "json", from, to, 30, null));
+    assertTrue(ETags.of(3, "json").startsWith("\"v3-"));
+  }
+}